@@ -0,0 +1,220 @@
+package common;
+
+import common.enums.FileType;
+import org.openqa.selenium.By;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class BaselineStore extends Core {
+    private static final String DIRECTORY = "screenshot";
+    private static final String SUFFIX = ".baseline";
+    private static final String HASH_EXT = ".dhash";
+
+    private final Map<String, Long> hashes = new ConcurrentHashMap<>();
+    // Width and height of each baseline, kept with its hash so the perceptual shortcut never passes another size
+    private final Map<String, int[]> sizes = new ConcurrentHashMap<>();
+    // Tile signatures of the baselines read or saved in this run
+    private final Map<String, ImgTiles> tiles = new ConcurrentHashMap<>();
+    private final HammingIndex index = new HammingIndex();
+    private int hashThreshold = Integer.getInteger("baseline.hashThreshold", 0);
+    private long failureBudget = Long.getLong("baseline.failureBudget", Long.MAX_VALUE);
+
+    public BaselineStore() {
+        load();
+    }
+
+    /**
+     * Sets how many bits two perceptual hashes may differ and still count as the same image without a pixel diff
+     * The hash is a coarse luminance gradient that does not see small changes such as the digits of a price, so by
+     * default only identical hashes pass, and only for unmasked comparisons of the baseline size that allow some
+     * difference anyway
+     *
+     * @param hashThreshold Hamming distance 0 - 64, default 0, or -1 to always compare the pixels
+     */
+    public void setHashThreshold(int hashThreshold) {
+        this.hashThreshold = hashThreshold;
+    }
+
+    /**
+     * Sets how many pixels may change before a comparison stops and fails without scanning the rest of the image
+     *
+     * @param failureBudget Number of changed pixels that is allowed
+     */
+    public void setFailureBudget(long failureBudget) {
+        this.failureBudget = failureBudget;
+    }
+
+    /**
+     * Stores an image as the baseline for a test and locator, with its perceptual hash next to it
+     *
+     * @param testName Name of the test
+     * @param locator Locator the image was taken of, null for a full screenshot
+     * @param image Baseline image
+     */
+    public void save(String testName, By locator, BufferedImage image) throws IOException {
+        String key = getKey(testName, locator);
+        long hash = ImgHash.dHash(image);
+
+        ImageIO.write(image, FileType.PNG.fileName(), new File(getImagePath(key)));
+        Files.write(new File(getHashPath(key)).toPath(), (ImgHash.toHex(hash) + " " + image.getWidth() + "x"
+                + image.getHeight()).getBytes(StandardCharsets.US_ASCII));
+        sizes.put(key, new int[] {image.getWidth(), image.getHeight()});
+
+        tiles.put(key, ImgTiles.of(image));
+
+        // A new baseline replaces the old hash in the index as well, or lookups would find the old image
+        Long previous = hashes.put(key, hash);
+        if (previous != null) {
+            index.remove(previous, key);
+        }
+        index.add(hash, key);
+    }
+
+    /**
+     * Verifies an image against the stored baseline
+     * With a hash threshold set, images of the baseline size whose perceptual hash is within it pass without a pixel
+     * diff, see {@link #setHashThreshold(int)}
+     * If there is no baseline yet the image is stored as the new baseline
+     *
+     * @param testName Name of the test
+     * @param locator Locator the image was taken of, null for a full screenshot
+     * @param actual Image to verify
+     * @param maxDiffPercent Largest mean delta that still passes
+     *
+     * @return true if the image matches the baseline
+     */
+    public boolean matches(String testName, By locator, BufferedImage actual, double maxDiffPercent) throws IOException {
+        return matches(testName, locator, actual, maxDiffPercent, null);
+    }
+
+    /**
+     * Verifies the masked areas of an image against the stored baseline
+     * Dynamic content such as clocks, ads or avatars can be excluded so it does not fail the comparison
+     * The images are compared tile by tile, when every tile checksum matches the cached signature of the baseline the
+     * baseline file is not read at all, otherwise only the differing tiles are diffed until the failure budget is spent
+     *
+     * @param testName Name of the test
+     * @param locator Locator the image was taken of, null for a full screenshot
+     * @param actual Image to verify
+     * @param maxDiffPercent Largest mean delta over the compared pixels that still passes
+     * @param mask Areas to compare and ignore, null compares the whole image
+     *
+     * @return true if the image matches the baseline
+     */
+    public boolean matches(String testName, By locator, BufferedImage actual, double maxDiffPercent, DiffMask mask)
+            throws IOException {
+        String key = getKey(testName, locator);
+        Long baselineHash = hashes.get(key);
+
+        if (baselineHash == null) {
+            save(testName, locator, actual);
+            System.out.println("Baseline created: " + getImagePath(key));
+            return true;
+        }
+
+        ImgTiles baselineTiles = tiles.get(key);
+        ImgTiles actualTiles = ImgTiles.of(actual);
+
+        if (baselineTiles != null && baselineTiles.matchesLayout(actualTiles)
+                && baselineTiles.differingTiles(actualTiles).isEmpty()) {
+            return true;
+        }
+
+        // Perceptual shortcut, only where a small difference would pass the pixel diff as well
+        int[] size = sizes.get(key);
+        if (hashThreshold >= 0 && mask == null && maxDiffPercent > 0 && size != null
+                && size[0] == actual.getWidth() && size[1] == actual.getHeight()
+                && ImgHash.distance(baselineHash, ImgHash.dHash(actual)) <= hashThreshold) {
+            return true;
+        }
+
+        BufferedImage baseline = ImageIO.read(new File(getImagePath(key)));
+        if (baseline.getWidth() != actual.getWidth() || baseline.getHeight() != actual.getHeight()) {
+            return false;
+        }
+
+        if (baselineTiles == null) {
+            baselineTiles = ImgTiles.of(baseline);
+            tiles.put(key, baselineTiles);
+        }
+
+        // Own ImgDiff per comparison, the budget is a setting and tests may compare at the same time
+        ImgDiffResult result = new ImgDiff().setEarlyExit(failureBudget)
+                .diffTiled(baseline, baselineTiles, actual, actualTiles, mask);
+
+        return result.isComplete() && result.getMeanDelta() <= maxDiffPercent;
+    }
+
+    /**
+     * Finds the stored baselines that look most like an image, useful when triaging a failure
+     *
+     * @param image Image to look for
+     * @param count Number of baselines to return
+     *
+     * @return Closest baselines first
+     */
+    public List<HammingIndex.Match> nearest(BufferedImage image, int count) {
+        return index.nearest(ImgHash.dHash(image), count);
+    }
+
+    public String getImagePath(String testName, By locator) {
+        return getImagePath(getKey(testName, locator));
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    /** PRIVATE **/
+
+    private void load() {
+        File dir = new File(getFilePath(DIRECTORY, ""));
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX + HASH_EXT));
+
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            String key = name.substring(0, name.length() - SUFFIX.length() - HASH_EXT.length());
+
+            try {
+                // Hash and size, files written before the size was added only have the hash
+                String[] parts = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim().split(" ");
+                long hash = ImgHash.fromHex(parts[0]);
+                hashes.put(key, hash);
+                index.add(hash, key);
+
+                if (parts.length > 1) {
+                    String[] size = parts[1].split("x");
+                    sizes.put(key, new int[] {Integer.parseInt(size[0]), Integer.parseInt(size[1])});
+                }
+            } catch (IOException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                System.out.println("Skipping unreadable baseline hash '" + file + "'. " + e);
+            }
+        }
+    }
+
+    // Test name and locator as one file system safe name
+    private String getKey(String testName, By locator) {
+        String target = locator == null ? "full" : locator.toString();
+        return (testName + "_" + target).replaceAll("[^A-Za-z0-9._-]+", "_");
+    }
+
+    private String getImagePath(String key) {
+        return getFilePath(DIRECTORY, key + SUFFIX + FileType.PNG.getExt());
+    }
+
+    private String getHashPath(String key) {
+        return getFilePath(DIRECTORY, key + SUFFIX + HASH_EXT);
+    }
+}
@@ -0,0 +1,197 @@
+package common;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Areas of an image to compare (include) and to ignore (exclude), for example timestamps, ads and carousels
+ * Without includes the whole image is compared, excludes always win over includes
+ */
+public class DiffMask {
+    private final List<Rectangle> includes = new ArrayList<>();
+    private final List<Rectangle> excludes = new ArrayList<>();
+
+    public DiffMask include(Rectangle area) {
+        includes.add(new Rectangle(area));
+        return this;
+    }
+
+    public DiffMask exclude(Rectangle area) {
+        excludes.add(new Rectangle(area));
+        return this;
+    }
+
+    public List<Rectangle> getIncludes() {
+        return includes;
+    }
+
+    public List<Rectangle> getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * Moves every area, used when the image is a crop that does not start at the page origin
+     *
+     * @param dx Added to every x
+     * @param dy Added to every y
+     *
+     * @return New mask
+     */
+    public DiffMask translate(int dx, int dy) {
+        DiffMask mask = new DiffMask();
+        for (Rectangle r : includes) {
+            mask.include(new Rectangle(r.x + dx, r.y + dy, r.width, r.height));
+        }
+        for (Rectangle r : excludes) {
+            mask.exclude(new Rectangle(r.x + dx, r.y + dy, r.width, r.height));
+        }
+        return mask;
+    }
+
+    /**
+     * Scales every area, used when the areas were measured in CSS pixels and the image is in device pixels
+     * Areas grow to whole pixels, so an excluded element stays fully covered
+     *
+     * @param factor Device pixels per CSS pixel, window.devicePixelRatio
+     *
+     * @return New mask
+     */
+    public DiffMask scale(double factor) {
+        DiffMask mask = new DiffMask();
+        for (Rectangle r : includes) {
+            mask.include(scaled(r, factor));
+        }
+        for (Rectangle r : excludes) {
+            mask.exclude(scaled(r, factor));
+        }
+        return mask;
+    }
+
+    /**
+     * Resolves the mask for an image size into horizontal spans to scan
+     * Rows are grouped into bands where the same rectangles apply, so the spans are worked out once per band and not
+     * once per row
+     *
+     * @param width Image width
+     * @param height Image height
+     *
+     * @return Spans per band
+     */
+    Compiled compile(int width, int height) {
+        TreeSet<Integer> edges = new TreeSet<>();
+        edges.add(0);
+        edges.add(height);
+        for (Rectangle r : includes) {
+            addEdges(edges, r, height);
+        }
+        for (Rectangle r : excludes) {
+            addEdges(edges, r, height);
+        }
+
+        Integer[] rows = edges.toArray(new Integer[0]);
+        int[] bandStarts = new int[rows.length - 1];
+        int[][] spans = new int[rows.length - 1][];
+        long pixels = 0;
+
+        for (int band = 0; band < bandStarts.length; band++) {
+            int y = rows[band];
+            bandStarts[band] = y;
+            spans[band] = spans(y, width);
+
+            for (int i = 0; i < spans[band].length; i += 2) {
+                pixels += (long) (spans[band][i + 1] - spans[band][i]) * (rows[band + 1] - y);
+            }
+        }
+
+        return new Compiled(bandStarts, spans, pixels);
+    }
+
+    /** PRIVATE **/
+
+    private static Rectangle scaled(Rectangle r, double factor) {
+        int x = (int) Math.floor(r.x * factor);
+        int y = (int) Math.floor(r.y * factor);
+        return new Rectangle(x, y, (int) Math.ceil((r.x + r.width) * factor) - x,
+                (int) Math.ceil((r.y + r.height) * factor) - y);
+    }
+
+    private static void addEdges(TreeSet<Integer> edges, Rectangle r, int height) {
+        edges.add(Math.max(0, Math.min(height, r.y)));
+        edges.add(Math.max(0, Math.min(height, r.y + r.height)));
+    }
+
+    // Start and end (exclusive) pairs of the columns to scan on row y
+    private int[] spans(int y, int width) {
+        boolean[] scan = new boolean[width];
+
+        if (includes.isEmpty()) {
+            Arrays.fill(scan, true);
+        }
+        for (Rectangle r : includes) {
+            mark(scan, r, y, true);
+        }
+        for (Rectangle r : excludes) {
+            mark(scan, r, y, false);
+        }
+
+        List<Integer> spans = new ArrayList<>();
+        for (int x = 0; x < width; x++) {
+            if (scan[x] && (x == 0 || !scan[x - 1])) {
+                spans.add(x);
+            }
+            if (scan[x] && (x == width - 1 || !scan[x + 1])) {
+                spans.add(x + 1);
+            }
+        }
+
+        int[] result = new int[spans.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = spans.get(i);
+        }
+        return result;
+    }
+
+    private static void mark(boolean[] scan, Rectangle r, int y, boolean value) {
+        if (y < r.y || y >= r.y + r.height) {
+            return;
+        }
+        int from = Math.max(0, r.x);
+        int to = Math.min(scan.length, r.x + r.width);
+        if (from < to) {
+            Arrays.fill(scan, from, to, value);
+        }
+    }
+
+    static class Compiled {
+        private final int[] bandStarts;
+        private final int[][] spans;
+        private final long pixels;
+
+        Compiled(int[] bandStarts, int[][] spans, long pixels) {
+            this.bandStarts = bandStarts;
+            this.spans = spans;
+            this.pixels = pixels;
+        }
+
+        // Band that row y falls in
+        int band(int y) {
+            int index = Arrays.binarySearch(bandStarts, y);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        int[] spans(int band) {
+            return spans[band];
+        }
+
+        int bandEnd(int band, int height) {
+            return band + 1 < bandStarts.length ? bandStarts[band + 1] : height;
+        }
+
+        long pixels() {
+            return pixels;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package common;
+
+import common.enums.TestEnvironment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings of a test environment, loaded from environments.properties instead of being fixed in code
+ * Each line is NAME.key = value, for example STAGING.baseUrl = https://staging.example.com/, any name can be used so
+ * ad hoc environments such as LOCAL.baseUrl = http://localhost:8080/ need no code change
+ * The file is read from -Denvironments.file, otherwise environments.properties on the classpath or in the working
+ * directory, and -Denv.NAME.baseUrl overrides a single value
+ * The names of {@link TestEnvironment} fall back to their built in base URL when the file does not have them
+ */
+public final class EnvironmentProfile {
+    private static final String FILE = "environments.properties";
+
+    private static volatile Map<String, Map<String, String>> profiles;
+
+    private final String name;
+    private final Map<String, String> settings;
+
+    private EnvironmentProfile(String name, Map<String, String> settings) {
+        this.name = name;
+        this.settings = Collections.unmodifiableMap(settings);
+    }
+
+    /**
+     * Returns the profile of an environment
+     *
+     * @param name Environment name, for example STAGING
+     *
+     * @return Profile
+     *
+     * @throws IllegalArgumentException if the environment is neither configured nor a {@link TestEnvironment}
+     */
+    public static EnvironmentProfile get(String name) {
+        Map<String, String> settings = new HashMap<>();
+
+        for (TestEnvironment environment : TestEnvironment.values()) {
+            if (environment.name().equals(name)) {
+                settings.put("baseUrl", environment.getBaseURL());
+            }
+        }
+
+        Map<String, String> configured = getProfiles().get(name);
+        if (configured == null && settings.isEmpty()) {
+            throw new IllegalArgumentException("No environment '" + name + "' in " + FILE);
+        }
+        if (configured != null) {
+            settings.putAll(configured);
+        }
+
+        String override = System.getProperty("env." + name + ".baseUrl");
+        if (override != null) {
+            settings.put("baseUrl", override);
+        }
+
+        return new EnvironmentProfile(name, settings);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBaseUrl() {
+        return settings.getOrDefault("baseUrl", "");
+    }
+
+    /**
+     * Returns another setting of the environment
+     *
+     * @param key Key after the environment name
+     *
+     * @return Value, or null if it is not set
+     */
+    public String getSetting(String key) {
+        return settings.get(key);
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + getBaseUrl();
+    }
+
+    /** PRIVATE **/
+
+    private static Map<String, Map<String, String>> getProfiles() {
+        if (profiles == null) {
+            synchronized (EnvironmentProfile.class) {
+                if (profiles == null) {
+                    profiles = load();
+                }
+            }
+        }
+        return profiles;
+    }
+
+    private static Map<String, Map<String, String>> load() {
+        Properties properties = new Properties();
+        String path = System.getProperty("environments.file");
+
+        try {
+            InputStream in = null;
+            if (path != null) {
+                in = new FileInputStream(path);
+            } else if (EnvironmentProfile.class.getClassLoader().getResource(FILE) != null) {
+                in = EnvironmentProfile.class.getClassLoader().getResourceAsStream(FILE);
+            } else if (new File(System.getProperty("user.dir"), FILE).isFile()) {
+                in = new FileInputStream(new File(System.getProperty("user.dir"), FILE));
+            }
+
+            if (in != null) {
+                try (InputStream stream = in) {
+                    properties.load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read environment profiles. " + e);
+        }
+
+        Map<String, Map<String, String>> loaded = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.indexOf('.');
+            if (dot > 0) {
+                loaded.computeIfAbsent(key.substring(0, dot), k -> new HashMap<>())
+                        .put(key.substring(dot + 1), properties.getProperty(key).trim());
+            }
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,156 @@
+package common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BK-tree over 64 bit hashes, finds every stored hash within a Hamming distance without comparing against all of them
+ */
+public class HammingIndex {
+    private Node root;
+    private int size;
+
+    public synchronized void add(long hash, String key) {
+        size++;
+
+        if (root == null) {
+            root = new Node(hash, key);
+            return;
+        }
+
+        Node node = root;
+        while (true) {
+            int distance = ImgHash.distance(hash, node.hash);
+
+            if (distance == 0) {
+                node.keys.add(key);
+                return;
+            }
+            if (node.children[distance] == null) {
+                node.children[distance] = new Node(hash, key);
+                return;
+            }
+            node = node.children[distance];
+        }
+    }
+
+    /**
+     * Removes a key stored under a hash, its node stays in the tree to keep the paths to its children
+     *
+     * @param hash Hash the key was added with
+     * @param key Key
+     *
+     * @return true if the key was stored under the hash
+     */
+    public synchronized boolean remove(long hash, String key) {
+        Node node = root;
+
+        while (node != null) {
+            int distance = ImgHash.distance(hash, node.hash);
+
+            if (distance == 0) {
+                if (node.keys.remove(key)) {
+                    size--;
+                    return true;
+                }
+                return false;
+            }
+            node = node.children[distance];
+        }
+        return false;
+    }
+
+    /**
+     * Finds the keys of every hash that is at most maxDistance bits away
+     *
+     * @param hash Hash to look for
+     * @param maxDistance Largest Hamming distance to include
+     *
+     * @return Matches sorted by distance, closest first
+     */
+    public synchronized List<Match> within(long hash, int maxDistance) {
+        List<Match> matches = new ArrayList<>();
+
+        if (root == null) {
+            return matches;
+        }
+
+        List<Node> queue = new ArrayList<>();
+        queue.add(root);
+
+        while (!queue.isEmpty()) {
+            Node node = queue.remove(queue.size() - 1);
+            int distance = ImgHash.distance(hash, node.hash);
+
+            if (distance <= maxDistance) {
+                for (String key : node.keys) {
+                    matches.add(new Match(key, node.hash, distance));
+                }
+            }
+
+            // Triangle inequality: only children between distance - max and distance + max can hold matches
+            for (int d = Math.max(1, distance - maxDistance); d <= Math.min(64, distance + maxDistance); d++) {
+                if (node.children[d] != null) {
+                    queue.add(node.children[d]);
+                }
+            }
+        }
+
+        matches.sort((m1, m2) -> Integer.compare(m1.distance, m2.distance));
+        return matches;
+    }
+
+    /**
+     * Finds the keys of the closest stored hashes
+     *
+     * @param hash Hash to look for
+     * @param count Number of keys to return
+     *
+     * @return Up to count matches sorted by distance, closest first
+     */
+    public synchronized List<Match> nearest(long hash, int count) {
+        // Widen the radius until enough matches are found, most lookups stop after a few bits
+        for (int radius = 0; radius <= 64; radius = radius == 0 ? 2 : radius * 2) {
+            List<Match> matches = within(hash, Math.min(64, radius));
+            if (matches.size() >= count || radius >= 64) {
+                return matches.size() > count ? new ArrayList<>(matches.subList(0, count)) : matches;
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public static class Match {
+        private final String key;
+        private final long hash;
+        private final int distance;
+
+        Match(String key, long hash, int distance) {
+            this.key = key;
+            this.hash = hash;
+            this.distance = distance;
+        }
+
+        public String getKey() { return key; }
+
+        public long getHash() { return hash; }
+
+        public int getDistance() { return distance; }
+    }
+
+    /** PRIVATE **/
+
+    private static class Node {
+        private final long hash;
+        private final List<String> keys = new ArrayList<>(1);
+        private final Node[] children = new Node[65];
+
+        Node(long hash, String key) {
+            this.hash = hash;
+            this.keys.add(key);
+        }
+    }
+}
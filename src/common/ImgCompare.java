@@ -6,7 +6,8 @@ import java.io.File;
 import java.io.IOException;
 
 public class ImgCompare {
-    // Entire class pulled from the interwebs
+    private final ImgDiff imgDiff = new ImgDiff();
+
     public double compare(String location1, String location2){
         BufferedImage img1 = null;
         BufferedImage img2 = null;
@@ -18,33 +19,67 @@ public class ImgCompare {
         } catch (IOException e) {
             e.printStackTrace();
         }
-        int width1 = img1.getWidth(null);
-        int width2 = img2.getWidth(null);
-        int height1 = img1.getHeight(null);
-        int height2 = img2.getHeight(null);
-        if ((width1 != width2) || (height1 != height2)) {
-            System.err.println("Error: Images dimensions mismatch");
-            System.exit(1);
-        }
-        long diff = 0;
-        for (int y = 0; y < height1; y++) {
-            for (int x = 0; x < width1; x++) {
-                int rgb1 = img1.getRGB(x, y);
-                int rgb2 = img2.getRGB(x, y);
-                int r1 = (rgb1 >> 16) & 0xff;
-                int g1 = (rgb1 >>  8) & 0xff;
-                int b1 = (rgb1      ) & 0xff;
-                int r2 = (rgb2 >> 16) & 0xff;
-                int g2 = (rgb2 >>  8) & 0xff;
-                int b2 = (rgb2      ) & 0xff;
-                diff += Math.abs(r1 - r2);
-                diff += Math.abs(g1 - g2);
-                diff += Math.abs(b1 - b2);
-            }
-        }
-        double n = width1 * height1 * 3;
-        double p = diff / n / 255.0;
-        System.out.println("diff percent: " + (p * 100.0));
-        return p * 100.0;
+        return compare(img1, img2);
+    }
+
+    /**
+     * Compares two images of the same size
+     *
+     * @param img1 Baseline image
+     * @param img2 Image to verify
+     *
+     * @return Average difference of the colour channels in percent
+     *
+     * @throws IllegalArgumentException if the images do not have the same dimensions
+     */
+    public double compare(BufferedImage img1, BufferedImage img2) {
+        double p = diff(img1, img2).getMeanDelta();
+        System.out.println("diff percent: " + p);
+        return p;
+    }
+
+    /**
+     * Compares two images of the same size and returns the full result instead of only the percentage
+     *
+     * @param img1 Baseline image
+     * @param img2 Image to verify
+     *
+     * @return Mean and max delta, changed pixels and changed regions
+     *
+     * @see ImgDiff#diff(BufferedImage, BufferedImage)
+     */
+    public ImgDiffResult diff(BufferedImage img1, BufferedImage img2) {
+        return imgDiff.diff(img1, img2);
+    }
+
+    /**
+     * Compares only the masked areas of two images of the same size
+     *
+     * @param img1 Baseline image
+     * @param img2 Image to verify
+     * @param mask Areas to compare and ignore
+     *
+     * @return Mean and max delta over the compared pixels, changed pixels and changed regions
+     *
+     * @see ImgDiff#diff(BufferedImage, BufferedImage, DiffMask)
+     */
+    public ImgDiffResult diff(BufferedImage img1, BufferedImage img2, DiffMask mask) {
+        return imgDiff.diff(img1, img2, mask);
+    }
+
+    /**
+     * Compares two images of the same size tile by tile and stops once more pixels than the budget have changed
+     * Meant for long full page captures where most tiles are unchanged
+     *
+     * @param img1 Baseline image
+     * @param img2 Image to verify
+     * @param failureBudget Number of changed pixels after which the comparison stops, the result is then not complete
+     *
+     * @return Mean and max delta, changed pixels and changed regions
+     *
+     * @see ImgDiff#diffTiled(BufferedImage, ImgTiles, BufferedImage, DiffMask)
+     */
+    public ImgDiffResult diffTiled(BufferedImage img1, BufferedImage img2, long failureBudget) {
+        return new ImgDiff().setEarlyExit(failureBudget).diffTiled(img1, img2);
     }
 }
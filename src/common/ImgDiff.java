@@ -0,0 +1,455 @@
+package common;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ImgDiff {
+    // Changed pixels are grouped into cells of this size before they are merged into regions
+    private static final int CELL_SIZE = 16;
+
+    private final ForkJoinPool pool;
+    private int pixelTolerance = 0;
+    private long maxChangedPixels = Long.MAX_VALUE;
+
+    public ImgDiff() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ImgDiff(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Sets how much a pixel may differ before it is counted as changed
+     *
+     * @param pixelTolerance Summed difference of the red, green and blue channels, 0 - 765
+     *
+     * @return This ImgDiff
+     */
+    public ImgDiff setPixelTolerance(int pixelTolerance) {
+        this.pixelTolerance = pixelTolerance;
+        return this;
+    }
+
+    /**
+     * Stops the comparison as soon as more pixels than this have changed
+     * The result is then marked as not complete and only holds the pixels scanned so far
+     *
+     * @param maxChangedPixels Number of changed pixels that is allowed
+     *
+     * @return This ImgDiff
+     */
+    public ImgDiff setEarlyExit(long maxChangedPixels) {
+        this.maxChangedPixels = maxChangedPixels;
+        return this;
+    }
+
+    /**
+     * Compares two images of the same size by reading their backing arrays directly
+     * Rows are split across the fork join pool
+     *
+     * @param expected Baseline image
+     * @param actual Image to verify
+     *
+     * @return Mean and max delta, changed pixels and the changed regions
+     */
+    public ImgDiffResult diff(BufferedImage expected, BufferedImage actual) {
+        return diff(expected, actual, null);
+    }
+
+    /**
+     * Compares only the areas of two images that a mask includes and does not exclude
+     * Rows and columns outside the mask are never read
+     *
+     * @param expected Baseline image
+     * @param actual Image to verify
+     * @param mask Areas to compare and ignore, null compares the whole image
+     *
+     * @return Mean and max delta over the compared pixels, changed pixels and the changed regions
+     */
+    public ImgDiffResult diff(BufferedImage expected, BufferedImage actual, DiffMask mask) {
+        checkSize(expected, actual);
+
+        DiffMask.Compiled compiled = (mask == null ? new DiffMask() : mask)
+                .compile(expected.getWidth(), expected.getHeight());
+
+        return diff(expected, actual, compiled, compiled.pixels());
+    }
+
+    /** See documentation for: {@link #diffTiled(BufferedImage, ImgTiles, BufferedImage, DiffMask)} */
+    public ImgDiffResult diffTiled(BufferedImage expected, BufferedImage actual) {
+        return diffTiled(expected, ImgTiles.of(expected), actual, null);
+    }
+
+    /**
+     * Compares two images in two passes, first by their tile checksums and then pixel by pixel only inside the tiles
+     * whose checksums differ
+     * On long pages where most of the page is unchanged this reads a fraction of the pixels a full diff reads, and
+     * with an early exit set the scan stops as soon as the budget of changed pixels is spent
+     * The result is the same as {@link #diff(BufferedImage, BufferedImage, DiffMask)} would give
+     *
+     * @param expected Baseline image
+     * @param expectedTiles Signature of the baseline, kept with the baseline so it is only computed once
+     * @param actual Image to verify
+     * @param mask Areas to compare and ignore, null compares the whole image
+     *
+     * @return Mean and max delta over the compared pixels, changed pixels and the changed regions
+     */
+    public ImgDiffResult diffTiled(BufferedImage expected, ImgTiles expectedTiles, BufferedImage actual, DiffMask mask) {
+        return diffTiled(expected, expectedTiles, actual, ImgTiles.of(actual, expectedTiles.getTileSize()), mask);
+    }
+
+    /**
+     * See documentation for: {@link #diffTiled(BufferedImage, ImgTiles, BufferedImage, DiffMask)}
+     * Takes the signature of the actual image too, for callers that already computed it to skip reading the baseline
+     */
+    public ImgDiffResult diffTiled(BufferedImage expected, ImgTiles expectedTiles, BufferedImage actual,
+                                   ImgTiles actualTiles, DiffMask mask) {
+        checkSize(expected, actual);
+
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        DiffMask tileMask = new DiffMask();
+
+        for (Rectangle tile : expectedTiles.differingTiles(actualTiles)) {
+            if (mask == null || mask.getIncludes().isEmpty()) {
+                tileMask.include(tile);
+            } else {
+                for (Rectangle include : mask.getIncludes()) {
+                    Rectangle area = tile.intersection(include);
+                    if (!area.isEmpty()) {
+                        tileMask.include(area);
+                    }
+                }
+            }
+        }
+
+        // Means are still taken over every compared pixel, the skipped tiles only add zeros
+        long pixels = (mask == null ? new DiffMask() : mask).compile(width, height).pixels();
+
+        if (tileMask.getIncludes().isEmpty()) {
+            return new ImgDiffResult(width, height, 0, 0, 0, new ArrayList<>(), true);
+        }
+
+        if (mask != null) {
+            for (Rectangle exclude : mask.getExcludes()) {
+                tileMask.exclude(exclude);
+            }
+        }
+
+        return diff(expected, actual, tileMask.compile(width, height), pixels);
+    }
+
+    /** PRIVATE **/
+
+    private ImgDiffResult diff(BufferedImage expected, BufferedImage actual, DiffMask.Compiled compiled, long pixels) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        Pixels a = Pixels.of(expected);
+        Pixels b = Pixels.of(actual);
+
+        // Mixed layouts are rare (Robot gives int pixels, ImageIO gives byte pixels), convert them once
+        if (a.ints != null && b.ints == null) {
+            b = Pixels.of(toIntRgb(actual));
+        } else if (a.ints == null && b.ints != null) {
+            a = Pixels.of(toIntRgb(expected));
+        }
+
+        Scan scan = new Scan(a, b, width, height, compiled, pixelTolerance, maxChangedPixels);
+
+        if (height > 0) {
+            pool.invoke(new RowTask(scan, 0, height, rowsPerTask(height)));
+        }
+
+        double mean = pixels == 0 ? 0 : scan.diff.get() / (pixels * 3.0) / 255.0 * 100.0;
+        double max = scan.maxPixelDelta / 765.0 * 100.0;
+
+        return new ImgDiffResult(width, height, mean, max, scan.changed.get(), scan.regions(), !scan.stopped);
+    }
+
+    private static void checkSize(BufferedImage expected, BufferedImage actual) {
+        if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+            throw new IllegalArgumentException("Images dimensions mismatch: " + expected.getWidth() + "x"
+                    + expected.getHeight() + " and " + actual.getWidth() + "x" + actual.getHeight());
+        }
+    }
+
+    private int rowsPerTask(int height) {
+        int rows = Math.max(CELL_SIZE, height / (pool.getParallelism() * 4));
+        // Keep tasks on whole cell rows so no two tasks ever mark the same cell
+        return (rows + CELL_SIZE - 1) / CELL_SIZE * CELL_SIZE;
+    }
+
+    private static BufferedImage toIntRgb(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+
+    // Direct view of the pixel array behind an image, either packed ints or interleaved bytes
+    static class Pixels {
+        int[] ints;
+        byte[] bytes;
+        int offset;
+        int scanlineStride;
+        int pixelStride = 1;
+        int red;
+        int green;
+        int blue;
+
+        static Pixels of(BufferedImage image) {
+            Raster raster = image.getRaster();
+            SampleModel sm = raster.getSampleModel();
+            DataBuffer db = raster.getDataBuffer();
+            int type = image.getType();
+            Pixels p = new Pixels();
+
+            if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                    && db instanceof DataBufferInt && sm instanceof SinglePixelPackedSampleModel) {
+                p.ints = ((DataBufferInt) db).getData();
+                p.scanlineStride = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+            } else if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                    && db instanceof DataBufferByte && sm instanceof ComponentSampleModel) {
+                ComponentSampleModel csm = (ComponentSampleModel) sm;
+                int[] bandOffsets = csm.getBandOffsets();
+                p.bytes = ((DataBufferByte) db).getData();
+                p.scanlineStride = csm.getScanlineStride();
+                p.pixelStride = csm.getPixelStride();
+                p.red = bandOffsets[0];
+                p.green = bandOffsets[1];
+                p.blue = bandOffsets[2];
+            } else {
+                return of(toIntRgb(image));
+            }
+
+            // Sub images share the parent array, the translate points at their first pixel
+            p.offset = db.getOffset()
+                    - raster.getSampleModelTranslateY() * p.scanlineStride
+                    - raster.getSampleModelTranslateX() * p.pixelStride;
+
+            return p;
+        }
+
+        int rowStart(int y) {
+            return offset + y * scanlineStride;
+        }
+    }
+
+    // State shared by all row tasks of one comparison
+    static class Scan {
+        final Pixels a;
+        final Pixels b;
+        final int width;
+        final int height;
+        final DiffMask.Compiled mask;
+        final int tolerance;
+        final long limit;
+        final int cellsX;
+        final int cellsY;
+        final boolean[] cells;
+        final AtomicLong diff = new AtomicLong();
+        final AtomicLong changed = new AtomicLong();
+        volatile boolean stopped;
+        int maxPixelDelta;
+
+        Scan(Pixels a, Pixels b, int width, int height, DiffMask.Compiled mask, int tolerance, long limit) {
+            this.a = a;
+            this.b = b;
+            this.width = width;
+            this.height = height;
+            this.mask = mask;
+            this.tolerance = tolerance;
+            this.limit = limit;
+            this.cellsX = (width + CELL_SIZE - 1) / CELL_SIZE;
+            this.cellsY = (height + CELL_SIZE - 1) / CELL_SIZE;
+            this.cells = new boolean[cellsX * cellsY];
+        }
+
+        synchronized void merge(long rowsDiff, long rowsChanged, int rowsMax) {
+            diff.addAndGet(rowsDiff);
+            if (rowsMax > maxPixelDelta) {
+                maxPixelDelta = rowsMax;
+            }
+            if (changed.addAndGet(rowsChanged) > limit) {
+                stopped = true;
+            }
+        }
+
+        // Joins neighbouring changed cells and returns the pixel bounding box of each group
+        List<Rectangle> regions() {
+            List<Rectangle> regions = new ArrayList<>();
+            boolean[] seen = new boolean[cells.length];
+            int[] stack = new int[cells.length];
+
+            for (int start = 0; start < cells.length; start++) {
+                if (!cells[start] || seen[start]) {
+                    continue;
+                }
+
+                int minX = cellsX, minY = cellsY, maxX = -1, maxY = -1;
+                int size = 0;
+                stack[size++] = start;
+                seen[start] = true;
+
+                while (size > 0) {
+                    int cell = stack[--size];
+                    int cx = cell % cellsX;
+                    int cy = cell / cellsX;
+
+                    minX = Math.min(minX, cx);
+                    minY = Math.min(minY, cy);
+                    maxX = Math.max(maxX, cx);
+                    maxY = Math.max(maxY, cy);
+
+                    for (int ny = Math.max(0, cy - 1); ny <= Math.min(cellsY - 1, cy + 1); ny++) {
+                        for (int nx = Math.max(0, cx - 1); nx <= Math.min(cellsX - 1, cx + 1); nx++) {
+                            int next = ny * cellsX + nx;
+                            if (cells[next] && !seen[next]) {
+                                seen[next] = true;
+                                stack[size++] = next;
+                            }
+                        }
+                    }
+                }
+
+                int x = minX * CELL_SIZE;
+                int y = minY * CELL_SIZE;
+                regions.add(new Rectangle(x, y,
+                        Math.min(width, (maxX + 1) * CELL_SIZE) - x,
+                        Math.min(height, (maxY + 1) * CELL_SIZE) - y));
+            }
+
+            return regions;
+        }
+    }
+
+    static class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Scan scan;
+        private final int fromRow;
+        private final int toRow;
+        private final int rowsPerTask;
+        // Running totals of the row being scanned, fields so the span loops can share them
+        private long rowDiff;
+        private long rowChanged;
+        private int max;
+
+        RowTask(Scan scan, int fromRow, int toRow, int rowsPerTask) {
+            this.scan = scan;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.rowsPerTask = rowsPerTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow > rowsPerTask) {
+                int half = fromRow + ((toRow - fromRow) / 2 + rowsPerTask - 1) / rowsPerTask * rowsPerTask;
+                invokeAll(new RowTask(scan, fromRow, half, rowsPerTask), new RowTask(scan, half, toRow, rowsPerTask));
+                return;
+            }
+
+            long diff = 0;
+            long changed = 0;
+            int band = scan.mask.band(fromRow);
+            int bandEnd = scan.mask.bandEnd(band, scan.height);
+
+            for (int y = fromRow; y < toRow && !scan.stopped; y++) {
+                if (y >= bandEnd) {
+                    band = scan.mask.band(y);
+                    bandEnd = scan.mask.bandEnd(band, scan.height);
+                }
+
+                int[] spans = scan.mask.spans(band);
+                rowDiff = 0;
+                rowChanged = 0;
+
+                for (int i = 0; i < spans.length; i += 2) {
+                    if (scan.a.ints != null) {
+                        scanInts(y, spans[i], spans[i + 1]);
+                    } else {
+                        scanBytes(y, spans[i], spans[i + 1]);
+                    }
+                }
+
+                diff += rowDiff;
+                changed += rowChanged;
+
+                // With an early exit set, publish every changed row so the other tasks can stop in time
+                if (rowChanged > 0 && scan.limit != Long.MAX_VALUE) {
+                    scan.merge(diff, changed, max);
+                    diff = 0;
+                    changed = 0;
+                }
+            }
+
+            scan.merge(diff, changed, max);
+        }
+
+        private void scanInts(int y, int fromX, int toX) {
+            int[] pa = scan.a.ints;
+            int[] pb = scan.b.ints;
+            int ia = scan.a.rowStart(y);
+            int ib = scan.b.rowStart(y);
+            int cellRow = (y / CELL_SIZE) * scan.cellsX;
+
+            for (int x = fromX; x < toX; x++) {
+                int rgb1 = pa[ia + x];
+                int rgb2 = pb[ib + x];
+                if (rgb1 == rgb2) {
+                    continue;
+                }
+                int delta = Math.abs(((rgb1 >> 16) & 0xff) - ((rgb2 >> 16) & 0xff))
+                        + Math.abs(((rgb1 >> 8) & 0xff) - ((rgb2 >> 8) & 0xff))
+                        + Math.abs((rgb1 & 0xff) - (rgb2 & 0xff));
+                count(delta, cellRow + x / CELL_SIZE);
+            }
+        }
+
+        private void scanBytes(int y, int fromX, int toX) {
+            Pixels a = scan.a;
+            Pixels b = scan.b;
+            byte[] pa = a.bytes;
+            byte[] pb = b.bytes;
+            int ia = a.rowStart(y) + fromX * a.pixelStride;
+            int ib = b.rowStart(y) + fromX * b.pixelStride;
+            int cellRow = (y / CELL_SIZE) * scan.cellsX;
+
+            for (int x = fromX; x < toX; x++, ia += a.pixelStride, ib += b.pixelStride) {
+                int delta = Math.abs((pa[ia + a.red] & 0xff) - (pb[ib + b.red] & 0xff))
+                        + Math.abs((pa[ia + a.green] & 0xff) - (pb[ib + b.green] & 0xff))
+                        + Math.abs((pa[ia + a.blue] & 0xff) - (pb[ib + b.blue] & 0xff));
+                if (delta != 0) {
+                    count(delta, cellRow + x / CELL_SIZE);
+                }
+            }
+        }
+
+        private void count(int delta, int cell) {
+            rowDiff += delta;
+            if (delta > max) {
+                max = delta;
+            }
+            if (delta > scan.tolerance) {
+                rowChanged++;
+                scan.cells[cell] = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package common;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Times {@link ImgDiff} against the per-pixel getRGB loop ImgCompare used before, on 1080p and 4K screenshots
+ * Usage: java common.ImgDiffBenchmark [iterations]
+ * Each size is compared twice, identical and with a changed block, and the mean delta of both engines is checked to be
+ * the same so a faster engine cannot hide a wrong result
+ */
+public class ImgDiffBenchmark {
+    private static final int WARMUP = 3;
+    private static final int[][] SIZES = {{1920, 1080}, {3840, 2160}};
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        ImgDiff imgDiff = new ImgDiff();
+
+        for (int[] size : SIZES) {
+            BufferedImage expected = screenshot(size[0], size[1], BufferedImage.TYPE_INT_RGB);
+            BufferedImage identical = copy(expected, BufferedImage.TYPE_INT_RGB);
+            BufferedImage changed = copy(expected, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = changed.createGraphics();
+            graphics.setColor(Color.RED);
+            graphics.fillRect(size[0] / 3, size[1] / 3, size[0] / 10, size[1] / 20);
+            graphics.dispose();
+
+            // PNG screenshots are read as 3 byte BGR, so time the byte path as well
+            BufferedImage expectedBgr = copy(expected, BufferedImage.TYPE_3BYTE_BGR);
+            BufferedImage changedBgr = copy(changed, BufferedImage.TYPE_3BYTE_BGR);
+
+            String label = size[0] + "x" + size[1];
+            run(label + " identical", expected, identical, imgDiff, iterations);
+            run(label + " changed", expected, changed, imgDiff, iterations);
+            run(label + " changed BGR", expectedBgr, changedBgr, imgDiff, iterations);
+        }
+    }
+
+    /**
+     * The per-pixel loop ImgCompare ran before {@link ImgDiff}, kept as the reference for speed and result
+     *
+     * @param img1 Baseline image
+     * @param img2 Image to verify
+     *
+     * @return Average difference of the colour channels in percent
+     */
+    public static double referenceDiff(BufferedImage img1, BufferedImage img2) {
+        int width1 = img1.getWidth(null);
+        int height1 = img1.getHeight(null);
+        long diff = 0;
+        for (int y = 0; y < height1; y++) {
+            for (int x = 0; x < width1; x++) {
+                int rgb1 = img1.getRGB(x, y);
+                int rgb2 = img2.getRGB(x, y);
+                int r1 = (rgb1 >> 16) & 0xff;
+                int g1 = (rgb1 >>  8) & 0xff;
+                int b1 = (rgb1      ) & 0xff;
+                int r2 = (rgb2 >> 16) & 0xff;
+                int g2 = (rgb2 >>  8) & 0xff;
+                int b2 = (rgb2      ) & 0xff;
+                diff += Math.abs(r1 - r2);
+                diff += Math.abs(g1 - g2);
+                diff += Math.abs(b1 - b2);
+            }
+        }
+        double n = width1 * height1 * 3;
+        double p = diff / n / 255.0;
+        return p * 100.0;
+    }
+
+    /** PRIVATE **/
+
+    private static void run(String label, BufferedImage expected, BufferedImage actual, ImgDiff imgDiff,
+                            int iterations) {
+        double reference = 0;
+        double mean = 0;
+
+        for (int i = 0; i < WARMUP; i++) {
+            reference = referenceDiff(expected, actual);
+            mean = imgDiff.diff(expected, actual).getMeanDelta();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            reference = referenceDiff(expected, actual);
+        }
+        double referenceMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            mean = imgDiff.diff(expected, actual).getMeanDelta();
+        }
+        double diffMillis = (System.nanoTime() - start) / 1e6 / iterations;
+
+        if (Math.abs(reference - mean) > 1e-9) {
+            throw new IllegalStateException(label + ": ImgDiff returned " + mean + ", the reference " + reference);
+        }
+
+        System.out.println(String.format("%-24s reference %8.2f ms   ImgDiff %8.2f ms   %5.1fx   diff percent %.4f",
+                label, referenceMillis, diffMillis, referenceMillis / diffMillis, mean));
+    }
+
+    // Noise over a few flat blocks, closer to a rendered page than a single colour
+    private static BufferedImage screenshot(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Random random = new Random(42);
+        Graphics2D graphics = image.createGraphics();
+
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+        for (int i = 0; i < 200; i++) {
+            graphics.setColor(new Color(random.nextInt(0x1000000)));
+            graphics.fillRect(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(300),
+                    10 + random.nextInt(80));
+        }
+        graphics.dispose();
+
+        for (int i = 0; i < width * height / 50; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0x1000000));
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image, int type) {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D graphics = copy.createGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        graphics.dispose();
+        return copy;
+    }
+}
@@ -0,0 +1,52 @@
+package common;
+
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.List;
+
+public class ImgDiffResult {
+    private final int width;
+    private final int height;
+    private final double meanDelta;
+    private final double maxDelta;
+    private final long changedPixels;
+    private final List<Rectangle> regions;
+    private final boolean complete;
+
+    ImgDiffResult(int width, int height, double meanDelta, double maxDelta, long changedPixels,
+                  List<Rectangle> regions, boolean complete) {
+        this.width = width;
+        this.height = height;
+        this.meanDelta = meanDelta;
+        this.maxDelta = maxDelta;
+        this.changedPixels = changedPixels;
+        this.regions = Collections.unmodifiableList(regions);
+        this.complete = complete;
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    /** Average channel difference over the compared pixels in percent, the same value ImgCompare has always returned */
+    public double getMeanDelta() { return meanDelta; }
+
+    /** Difference of the single most changed pixel in percent */
+    public double getMaxDelta() { return maxDelta; }
+
+    public long getChangedPixels() { return changedPixels; }
+
+    /** Bounding boxes of the changed areas, in image coordinates */
+    public List<Rectangle> getRegions() { return regions; }
+
+    /** False when the comparison stopped early because the changed pixel limit was exceeded */
+    public boolean isComplete() { return complete; }
+
+    public boolean isIdentical() { return complete && changedPixels == 0; }
+
+    @Override
+    public String toString() {
+        return "diff percent: " + meanDelta + ", max: " + maxDelta + ", changed pixels: " + changedPixels
+                + ", regions: " + regions.size() + (complete ? "" : " (stopped early)");
+    }
+}
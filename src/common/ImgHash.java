@@ -0,0 +1,86 @@
+package common;
+
+import java.awt.image.BufferedImage;
+
+public class ImgHash {
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    /**
+     * Computes a 64 bit difference hash (dHash) of an image
+     * The image is reduced to 9x8 blocks of average luminance and each bit tells if a block is brighter than its
+     * right neighbour, so small rendering noise and scaling leave the hash unchanged
+     *
+     * @param image Image to hash
+     *
+     * @return 64 bit perceptual hash
+     */
+    public static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[HASH_WIDTH * HASH_HEIGHT];
+        long[] counts = new long[HASH_WIDTH * HASH_HEIGHT];
+        int[] column = new int[width];
+
+        for (int x = 0; x < width; x++) {
+            column[x] = (int) ((long) x * HASH_WIDTH / width);
+        }
+
+        ImgDiff.Pixels pixels = ImgDiff.Pixels.of(image);
+
+        for (int y = 0; y < height; y++) {
+            int block = (int) ((long) y * HASH_HEIGHT / height) * HASH_WIDTH;
+            int i = pixels.rowStart(y);
+
+            for (int x = 0; x < width; x++, i += pixels.pixelStride) {
+                int r, g, b;
+                if (pixels.ints != null) {
+                    int rgb = pixels.ints[i];
+                    r = (rgb >> 16) & 0xff;
+                    g = (rgb >> 8) & 0xff;
+                    b = rgb & 0xff;
+                } else {
+                    r = pixels.bytes[i + pixels.red] & 0xff;
+                    g = pixels.bytes[i + pixels.green] & 0xff;
+                    b = pixels.bytes[i + pixels.blue] & 0xff;
+                }
+                sums[block + column[x]] += r * 299 + g * 587 + b * 114;
+                counts[block + column[x]]++;
+            }
+        }
+
+        long hash = 0;
+        for (int y = 0; y < HASH_HEIGHT; y++) {
+            for (int x = 0; x < HASH_WIDTH - 1; x++) {
+                int left = y * HASH_WIDTH + x;
+                hash <<= 1;
+                // Compare averages without dividing: left / countLeft > right / countRight
+                if (sums[left] * Math.max(1, counts[left + 1]) > sums[left + 1] * Math.max(1, counts[left])) {
+                    hash |= 1;
+                }
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Number of bits that differ between two hashes, 0 means the images look the same
+     *
+     * @param hash1 First hash
+     * @param hash2 Second hash
+     *
+     * @return Hamming distance 0 - 64
+     */
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+    public static String toHex(long hash) {
+        return String.format("%016x", hash);
+    }
+
+    public static long fromHex(String hex) {
+        return Long.parseUnsignedLong(hex.trim(), 16);
+    }
+}
@@ -0,0 +1,149 @@
+package common;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Coarse signature of an image: a grid of tiles with a 64 bit checksum of the colour of every pixel in the tile
+ * Two images can be compared tile by tile from their signatures alone, so identical tiles never have to be diffed
+ * The checksum only covers red, green and blue, so the same picture gives the same signature in any image layout
+ */
+public final class ImgTiles {
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesX;
+    private final int tilesY;
+    private final long[] checksums;
+
+    private ImgTiles(int width, int height, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesX = (width + tileSize - 1) / tileSize;
+        this.tilesY = (height + tileSize - 1) / tileSize;
+        this.checksums = new long[tilesX * tilesY];
+    }
+
+    /** See documentation for: {@link #of(BufferedImage, int)} */
+    public static ImgTiles of(BufferedImage image) {
+        return of(image, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Computes the tile checksums of an image, rows of tiles are spread over the common fork join pool
+     *
+     * @param image Image
+     * @param tileSize Width and height of a tile in pixels
+     *
+     * @return Signature of the image
+     */
+    public static ImgTiles of(BufferedImage image, int tileSize) {
+        if (tileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be positive: " + tileSize);
+        }
+
+        ImgTiles tiles = new ImgTiles(image.getWidth(), image.getHeight(), tileSize);
+        ImgDiff.Pixels pixels = ImgDiff.Pixels.of(image);
+
+        IntStream.range(0, tiles.tilesY).parallel().forEach(tileY -> tiles.checksumRow(pixels, tileY));
+
+        return tiles;
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+
+    public int getTileSize() { return tileSize; }
+
+    public int getTileCount() { return checksums.length; }
+
+    /**
+     * Checks that two signatures cover images of the same size with the same tiles, so they can be compared
+     *
+     * @param other Other signature
+     *
+     * @return true if the signatures line up tile for tile
+     */
+    public boolean matchesLayout(ImgTiles other) {
+        return width == other.width && height == other.height && tileSize == other.tileSize;
+    }
+
+    /**
+     * Returns the tiles whose checksum differs from the same tile in another signature
+     *
+     * @param other Signature of an image with the same layout
+     *
+     * @return Areas of the differing tiles in image coordinates, clipped to the image, top to bottom
+     *
+     * @throws IllegalArgumentException if the signatures do not have the same layout
+     */
+    public List<Rectangle> differingTiles(ImgTiles other) {
+        if (!matchesLayout(other)) {
+            throw new IllegalArgumentException("Tile layouts mismatch: " + width + "x" + height + "/" + tileSize
+                    + " and " + other.width + "x" + other.height + "/" + other.tileSize);
+        }
+
+        List<Rectangle> tiles = new ArrayList<>();
+
+        for (int i = 0; i < checksums.length; i++) {
+            if (checksums[i] != other.checksums[i]) {
+                int x = (i % tilesX) * tileSize;
+                int y = (i / tilesX) * tileSize;
+                tiles.add(new Rectangle(x, y, Math.min(tileSize, width - x), Math.min(tileSize, height - y)));
+            }
+        }
+
+        return tiles;
+    }
+
+    /** PRIVATE **/
+
+    private void checksumRow(ImgDiff.Pixels pixels, int tileY) {
+        int first = tileY * tilesX;
+        int fromRow = tileY * tileSize;
+        int toRow = Math.min(height, fromRow + tileSize);
+
+        for (int tileX = 0; tileX < tilesX; tileX++) {
+            checksums[first + tileX] = FNV_OFFSET;
+        }
+
+        // Row by row over the whole tile row, so the pixel array is read in order
+        for (int y = fromRow; y < toRow; y++) {
+            int start = pixels.rowStart(y);
+
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                int fromX = tileX * tileSize;
+                int toX = Math.min(width, fromX + tileSize);
+                long h = checksums[first + tileX];
+
+                if (pixels.ints != null) {
+                    int[] ints = pixels.ints;
+                    for (int x = start + fromX, end = start + toX; x < end; x++) {
+                        h = (h ^ (ints[x] & 0xffffff)) * FNV_PRIME;
+                    }
+                } else {
+                    byte[] bytes = pixels.bytes;
+                    int stride = pixels.pixelStride;
+                    for (int p = start + fromX * stride, end = start + toX * stride; p < end; p += stride) {
+                        int rgb = (bytes[p + pixels.red] & 0xff) << 16
+                                | (bytes[p + pixels.green] & 0xff) << 8
+                                | (bytes[p + pixels.blue] & 0xff);
+                        h = (h ^ rgb) * FNV_PRIME;
+                    }
+                }
+
+                checksums[first + tileX] = h;
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package common;
+
+import java.util.regex.Pattern;
+
+/**
+ * The JavaScript the framework runs in the page, kept in one place so drivers without a JavaScript engine, such as
+ * the snapshot driver, can answer a script by comparing it with these constants instead of guessing from its text
+ * Scripts built from a value come as a method with a pattern next to it that matches what the method builds
+ */
+public final class PageScripts {
+    // Same rules as WebElement.isDisplayed, run in the browser so a whole list is checked in one round trip
+    private static final String DISPLAYED_FUNCTION =
+            "function displayed(e) {" +
+            "  if (!(e.offsetWidth || e.offsetHeight || e.getClientRects().length)) return false;" +
+            "  var s = window.getComputedStyle(e);" +
+            "  return s.visibility !== 'hidden' && s.opacity !== '0';" +
+            "}";
+    private static final String ATTRIBUTE_FUNCTION =
+            "function attribute(e, name) {" +
+            "  var p = e[name];" +
+            "  if (p !== undefined && p !== null && typeof p !== 'object' && typeof p !== 'function')" +
+            " return String(p);" +
+            "  return e.getAttribute(name);" +
+            "}";
+
+    /** Displayed elements of the list in arguments[0] */
+    public static final String FIND_DISPLAYED = DISPLAYED_FUNCTION + ATTRIBUTE_FUNCTION +
+            "return Array.prototype.filter.call(arguments[0], displayed);";
+
+    /** First displayed element of the list in arguments[0] whose attribute arguments[1] is arguments[2], or null */
+    public static final String FIND_DISPLAYED_BY_ATTRIBUTE = DISPLAYED_FUNCTION + ATTRIBUTE_FUNCTION +
+            "var list = arguments[0];" +
+            "for (var i = 0; i < list.length; i++) {" +
+            "  if (displayed(list[i]) && attribute(list[i], arguments[1]) === arguments[2]) return list[i];" +
+            "}" +
+            "return null;";
+
+    /** Attribute arguments[1] of every displayed element of the list in arguments[0] */
+    public static final String DISPLAYED_ATTRIBUTES = DISPLAYED_FUNCTION + ATTRIBUTE_FUNCTION +
+            "var name = arguments[1];" +
+            "return Array.prototype.filter.call(arguments[0], displayed)" +
+            "  .map(function (e) { return attribute(e, name); });";
+
+    /** Page x, y, width and height of every element of the list in arguments[0], same origin as getLocation */
+    public static final String RECTANGLES =
+            "return Array.prototype.map.call(arguments[0], function (e) {" +
+            "  var r = e.getBoundingClientRect();" +
+            "  return [Math.round(r.left + window.pageXOffset), Math.round(r.top + window.pageYOffset)," +
+            "          Math.round(r.width), Math.round(r.height)];" +
+            "});";
+
+    /** Viewport rectangle of the element in arguments[0] */
+    public static final String RECTANGLE = "return arguments[0].getBoundingClientRect()";
+
+    /** Device pixels per CSS pixel */
+    public static final String DEVICE_PIXEL_RATIO = "return window.devicePixelRatio || 1;";
+
+    /** Scroll offset, viewport size and document size in CSS pixels */
+    public static final String PAGE_METRICS =
+            "var d = document.documentElement, b = document.body || d;" +
+            "return [window.pageXOffset, window.pageYOffset, window.innerWidth, window.innerHeight," +
+            "        Math.max(d.scrollWidth, b.scrollWidth), Math.max(d.scrollHeight, b.scrollHeight)];";
+
+    /** Scrolls the window to arguments[0], arguments[1] and returns the offset it got to */
+    public static final String SCROLL_TO =
+            "window.scrollTo(arguments[0], arguments[1]);" +
+            "return [window.pageXOffset, window.pageYOffset];";
+
+    public static final String SCROLL_TO_TOP = "window.scrollTo(0, 0);";
+    public static final String SCROLL_INTO_VIEW = "arguments[0].scrollIntoView(true);";
+    public static final String CLICK = "arguments[0].click();";
+    public static final String PARENT = "return arguments[0].parentNode;";
+    public static final String MOUSE_OVER = "jQuery(\"arguments[0]\").mouseover();";
+    public static final String READY_STATE = "return document.readyState";
+
+    /** Every localStorage item as a map */
+    public static final String READ_STORAGE =
+            "var items = {};" +
+            "for (var i = 0; i < window.localStorage.length; i++) {" +
+            "  var key = window.localStorage.key(i);" +
+            "  items[key] = window.localStorage.getItem(key);" +
+            "}" +
+            "return items;";
+
+    /** Sets every item of the map in arguments[0] in localStorage */
+    public static final String WRITE_STORAGE =
+            "var items = arguments[0];" +
+            "for (var key in items) { window.localStorage.setItem(key, items[key]); }";
+
+    public static final String CLEAR_STORAGE = "window.localStorage.clear(); window.sessionStorage.clear();";
+
+    /**
+     * Asynchronous, resolves with the first element matching mode arguments[0] and value arguments[1], displayed if
+     * arguments[2] is true, as soon as it shows up, or with null after arguments[3] milliseconds
+     * Listens for DOM mutations instead of asking from the outside
+     */
+    public static final String WAIT_FOR_ELEMENT =
+            "var mode = arguments[0], value = arguments[1], visible = arguments[2], timeout = arguments[3];" +
+            "var done = arguments[arguments.length - 1];" +
+            "function first() {" +
+            "  switch (mode) {" +
+            "    case 'id': return document.getElementById(value);" +
+            "    case 'name': return document.getElementsByName(value)[0] || null;" +
+            "    case 'class': return document.getElementsByClassName(value)[0] || null;" +
+            "    case 'tag': return document.getElementsByTagName(value)[0] || null;" +
+            "    case 'css': return document.querySelector(value);" +
+            "    case 'xpath': return document.evaluate(value, document, null," +
+            "        XPathResult.FIRST_ORDERED_NODE_TYPE, null).singleNodeValue;" +
+            "  }" +
+            "  return null;" +
+            "}" +
+            DISPLAYED_FUNCTION +
+            "function check() {" +
+            "  var e = first();" +
+            "  return e && (!visible || displayed(e)) ? e : null;" +
+            "}" +
+            "var found = check();" +
+            "if (found) { done(found); return; }" +
+            "var finished = false, observer, interval, timer;" +
+            "function finish(e) {" +
+            "  if (finished) return;" +
+            "  finished = true; observer.disconnect(); clearInterval(interval); clearTimeout(timer); done(e);" +
+            "}" +
+            "observer = new MutationObserver(function () { var e = check(); if (e) finish(e); });" +
+            "observer.observe(document.documentElement || document," +
+            " {childList: true, subtree: true, attributes: true});" +
+            // CSS transitions and layout changes do not mutate the DOM, a cheap in-page check catches those
+            "interval = setInterval(function () { var e = check(); if (e) finish(e); }, 100);" +
+            "timer = setTimeout(function () { finish(null); }, timeout);";
+
+    /** Asynchronous, resolves on the load event, or after arguments[0] milliseconds, with whether the page loaded */
+    public static final String WAIT_FOR_READY =
+            "var timeout = arguments[0], done = arguments[arguments.length - 1], finished = false;" +
+            "function finish() { if (!finished) { finished = true; done(document.readyState === 'complete'); } }" +
+            "if (document.readyState === 'complete') { finish(); return; }" +
+            "window.addEventListener('load', finish);" +
+            "setTimeout(finish, timeout);";
+
+    /** Asynchronous, resolves once the DOM did not change for arguments[0] milliseconds, or after arguments[1] */
+    public static final String WAIT_FOR_QUIET =
+            "var quiet = arguments[0], timeout = arguments[1], done = arguments[arguments.length - 1];" +
+            "var finished = false, quietTimer, maxTimer, observer;" +
+            "function finish() {" +
+            "  if (finished) return;" +
+            "  finished = true; observer.disconnect(); clearTimeout(quietTimer); clearTimeout(maxTimer); done(true);" +
+            "}" +
+            "observer = new MutationObserver(function () {" +
+            " clearTimeout(quietTimer); quietTimer = setTimeout(finish, quiet); });" +
+            "observer.observe(document.documentElement || document," +
+            "    {childList: true, subtree: true, attributes: true, characterData: true});" +
+            "quietTimer = setTimeout(finish, quiet);" +
+            "maxTimer = setTimeout(finish, timeout);";
+
+    /** Matches what {@link #setValue(String)} builds, group 1 is the value */
+    public static final Pattern SET_VALUE = Pattern.compile("arguments\\[0\\]\\.value='(.*)';", Pattern.DOTALL);
+
+    /** Matches what {@link #scrollBy(int)} builds */
+    public static final Pattern SCROLL_BY = Pattern.compile("window\\.scrollBy\\(0,-?\\d+\\)");
+
+    /** Matches what {@link #border(String)} builds */
+    public static final Pattern BORDER = Pattern.compile("arguments\\[0\\]\\.style\\.border='3px solid [^']*'");
+
+    private PageScripts() {
+    }
+
+    /**
+     * Sets the value of the element in arguments[0] without typing
+     *
+     * @param text Value, put in the script as it is
+     *
+     * @return Script
+     */
+    public static String setValue(String text) {
+        return "arguments[0].value='" + text + "';";
+    }
+
+    /**
+     * Scrolls the window down
+     *
+     * @param pixels CSS pixels to scroll, negative scrolls up
+     *
+     * @return Script
+     */
+    public static String scrollBy(int pixels) {
+        return "window.scrollBy(0," + pixels + ")";
+    }
+
+    /**
+     * Gives the element in arguments[0] a border
+     *
+     * @param colour CSS colour of the border
+     *
+     * @return Script
+     */
+    public static String border(String colour) {
+        return "arguments[0].style.border='3px solid " + colour + "'";
+    }
+}
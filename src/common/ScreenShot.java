@@ -1,68 +1,186 @@
 package common;
 
 import org.openqa.selenium.*;
+import org.openqa.selenium.Dimension;
 import org.openqa.selenium.Point;
+import common.artifacts.ArtifactWriter;
+import common.artifacts.ScreenshotStore;
+import common.capture.CaptureBackend;
 import common.enums.*;
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 public class ScreenShot extends Core {
+    private static final String DIRECTORY = "screenshot";
+
     private WebDriver driver;
+    private CaptureBackend backend;
+    private SavePolicy savePolicy = SavePolicy.valueOf(System.getProperty("screenshot.save", "ON_FAILURE"));
+    private int padding = Integer.getInteger("screenshot.padding", 100);
+    // Format of kept screenshots, files from takeFullScreenshot and takePartialScreenshot are always PNG
+    private FileType keepFileType = FileType.valueOf(System.getProperty("screenshot.format", "PNG"));
+    private ArtifactWriter artifactWriter = ArtifactWriter.getDefault();
+    // Kept screenshots go to the deduplicating store unless -Dscreenshot.dedupe=false
+    private boolean dedupe = !"false".equals(System.getProperty("screenshot.dedupe"));
 
     public ScreenShot(WebDriver driver) {
         this.driver = driver;
     }
 
-    public String takeFullScreenshot(String testName) throws IOException, AWTException {
-        // Takes a screenshot of entire screen and then returns the full filepath so that the image can be used for testing.
-        FileType filetype = FileType.PNG;
-        Robot robot = new Robot();
+    public ScreenShot(WebDriver driver, CaptureBackend backend) {
+        this.driver = driver;
+        this.backend = backend;
+    }
 
-        String fullpath = getScreenshotName(testName, filetype);
+    public void setDedupe(boolean dedupe) {
+        this.dedupe = dedupe;
+    }
 
-        BufferedImage fullImg = robot.createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
+    public void setKeepFileType(FileType keepFileType) {
+        this.keepFileType = keepFileType;
+    }
 
-        ImageIO.write(fullImg, filetype.fileName(), new File(fullpath));
+    public void setSavePolicy(SavePolicy savePolicy) {
+        this.savePolicy = savePolicy;
+    }
 
-        System.out.println("Screenshot path: " + fullpath);
+    /**
+     * Sets the extra height below an element that partial screenshots include, 0 captures only the element
+     *
+     * @param padding Extra height in pixels
+     */
+    public void setPadding(int padding) {
+        this.padding = padding;
+    }
 
-        return fullpath;
+    /**
+     * Captures the screen and hands it to the artifact writer, the test thread does not wait for the file
+     *
+     * @param testName Name used as prefix of the file
+     *
+     * @return Full filepath the screenshot is written to, use {@link ArtifactWriter#drain} or {@link #keep} when the
+     *         file is needed straight away
+     */
+    public String takeFullScreenshot(String testName) throws IOException, AWTException {
+        // Takes a screenshot of entire screen and then returns the full filepath so that the image can be used for testing.
+        return write(captureFullScreen(), testName);
     }
 
+    /**
+     * Captures the area of an element and hands it to the artifact writer, the test thread does not wait for the file
+     *
+     * @param testName Name used as prefix of the file
+     * @param locator Locator
+     *
+     * @return Full filepath the screenshot is written to, see {@link #takeFullScreenshot(String)}
+     */
     public String takePartialScreenshot(String testName, By locator) throws IOException, AWTException {
         // Takes a screenshot of partial screen and then returns the full filepath so that the image can be used for testing.
-        FileType filetype = FileType.PNG;
-        Robot robot = new Robot();
+        return write(capturePartialScreen(locator), testName);
+    }
 
-        String fullpath = getScreenshotName(testName, filetype);
+    /**
+     * Captures what is visible without writing it to disk, the browser viewport or with -Dscreenshot.backend=ROBOT
+     * the entire screen
+     * The image can be given straight to {@link ImgCompare#compare(BufferedImage, BufferedImage)}
+     *
+     * @return Captured image
+     */
+    public BufferedImage captureFullScreen() throws AWTException {
+        return getBackend().captureViewport();
+    }
 
-        BufferedImage fullImg = robot.createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
+    /**
+     * Captures the whole page without writing it to disk, scrolling and stitching when it is longer than the viewport
+     *
+     * @return Captured image
+     */
+    public BufferedImage captureFullPage() throws AWTException {
+        return getBackend().captureFullPage();
+    }
 
+    /**
+     * Captures the area of an element without writing it to disk
+     *
+     * @param locator Locator
+     *
+     * @return Captured image
+     */
+    public BufferedImage capturePartialScreen(By locator) throws AWTException {
         // Cropping area to only take screenshot on Locator position.
         WebElement we = driver.findElement(locator);
         Point point = we.getLocation();
+        Dimension size = we.getSize();
 
-        int elementWidth = we.getSize().getWidth();
-        int elementHeight = we.getSize().getHeight()+100;
+        return getBackend().captureArea(new Rectangle(point.getX(), point.getY(), size.getWidth(),
+                size.getHeight() + padding));
+    }
 
-        BufferedImage elementScreenshot = fullImg.getSubimage(point.getX(), point.getY(), elementWidth, elementHeight);
+    /**
+     * Hands a captured image to the artifact writer, the test thread never waits for the disk
+     * The format is set with -Dscreenshot.format=PNG|QOI and defaults to PNG
+     * Captures go to the content addressed {@link ScreenshotStore}, so a capture with the same pixels as one stored
+     * before is not written again
+     *
+     * @param image Captured image
+     * @param testName Name used as prefix of the file
+     *
+     * @return Future holding the full filepath once the file is written, or null if the writer dropped it
+     */
+    public Future<String> keep(BufferedImage image, String testName) {
+        if (dedupe) {
+            return ScreenshotStore.getDefault().put(testName, image);
+        }
+        return artifactWriter.writeImage(image, DIRECTORY, testName, keepFileType);
+    }
 
-        ImageIO.write(elementScreenshot, filetype.fileName(), new File(fullpath));
+    /**
+     * Writes a captured image on a background thread if the save policy wants to keep it
+     * The policy is set with -Dscreenshot.save=NEVER|ON_FAILURE|ALWAYS and defaults to ON_FAILURE
+     *
+     * @param image Captured image
+     * @param testName Name used as prefix of the file
+     * @param failed Whether the check that used the image failed
+     *
+     * @return Future holding the full filepath, or null if the image was not kept
+     */
+    public Future<String> keep(BufferedImage image, String testName, boolean failed) {
+        if (!savePolicy.keep(failed)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return keep(image, testName);
+    }
+
+    /** PRIVATE **/
+
+    // Created on first use, so the Robot backend only needs a display once something is captured
+    private CaptureBackend getBackend() throws AWTException {
+        if (backend == null) {
+            backend = CaptureBackend.create(driver);
+        }
+        return backend;
+    }
+
+    // Queued like every other artifact, the file is moved in place once complete so it is never read half written
+    private String write(BufferedImage image, String testName) {
+        FileType filetype = FileType.PNG;
+
+        String fullpath = getScreenshotName(testName, filetype);
+
+        artifactWriter.queueImage(image, fullpath, filetype);
 
         System.out.println("Screenshot path: " + fullpath);
 
         return fullpath;
     }
 
-    /** PRIVATE **/
-
-    // Helper method to get filepath for screenshot with png extension.
+    // Helper method to get a unique filepath for a screenshot, parallel tests can take several in the same second
     private String getScreenshotName(String testName, FileType filetype) {
-        String file = testName + "_" + getTimestamp() + filetype.getExt();
-        return getFilePath("screenshot", file);
+        String file = artifactWriter.uniqueName(testName, filetype.getExt());
+        return getFilePath(DIRECTORY, file);
     }
 }
@@ -3,22 +3,78 @@ package common;
 import common.enums.*;
 
 import java.util.List;
+import java.util.Random;
 
 public class TestData extends Core {
-    private TestEnvironment testEnvironment;
+    private static volatile Long runSeed;
+
+    private EnvironmentProfile environment;
+    private Random random;
 
     public TestData(TestEnvironment testEnvironment) {
-        this.testEnvironment = testEnvironment;
+        this(testEnvironment, new Random().nextLong());
+    }
+
+    /**
+     * @param testEnvironment Test environment
+     * @param seed Seed of the random data, the same seed gives the same data, so a test fanned out to several browsers
+     *             works with the same data on each of them
+     */
+    public TestData(TestEnvironment testEnvironment, long seed) {
+        this(EnvironmentProfile.get(testEnvironment.name()), seed);
+    }
+
+    /**
+     * @param environment Environment profile, see {@link EnvironmentProfile}
+     * @param seed Seed of the random data
+     */
+    public TestData(EnvironmentProfile environment, long seed) {
+        this.environment = environment;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Returns the seed of this run, random per JVM unless it is given with -Dtestdata.seed
+     * It is printed on first use, so the data of a failed run can be generated again
+     *
+     * @return Run seed
+     */
+    public static long getRunSeed() {
+        if (runSeed == null) {
+            synchronized (TestData.class) {
+                if (runSeed == null) {
+                    Long seed = Long.getLong("testdata.seed");
+                    runSeed = seed != null ? seed : new Random().nextLong();
+                    System.out.println("Test data seed: " + runSeed + ", rerun with -Dtestdata.seed=" + runSeed);
+                }
+            }
+        }
+        return runSeed;
+    }
+
+    /**
+     * Returns the seed of one test in this run, different every run but the same for every browser and environment
+     * the test is fanned out to
+     *
+     * @param test Name of the test
+     *
+     * @return Seed for {@link #TestData(EnvironmentProfile, long)}
+     */
+    public static long seedOf(String test) {
+        return getRunSeed() * 31 + test.hashCode();
     }
 
     public String getTestEnvironmentURL() {
-        return testEnvironment.getBaseURL();
+        return environment.getBaseUrl();
+    }
+
+    public EnvironmentProfile getEnvironment() {
+        return environment;
     }
 
     // PRIVATE
 
     private String getRandomString(List<String> list) {
-        int random = (int)(Math.random()*list.size());
-        return list.get(random);
+        return list.get(random.nextInt(list.size()));
     }
 }
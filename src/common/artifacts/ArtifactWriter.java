@@ -0,0 +1,323 @@
+package common.artifacts;
+
+import common.Core;
+import common.enums.FileType;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes screenshots and other test artifacts on background threads
+ * Work goes into a bounded queue served by a few worker threads. When the queue is full the artifact is dropped and
+ * counted instead of blocking the test, so a slow disk can never slow the tests down
+ * Queue size and workers are set with -Dartifacts.queue=64 and -Dartifacts.workers=2, the PNG compression level with
+ * -Dartifacts.pngCompression=0-9 where 0 is fastest and 9 is smallest
+ * The workers are daemon threads, so queued artifacts are drained with {@link #drain} after the run and, for runs
+ * outside ParallelCategories, by a shutdown hook, each waiting at most -Dartifacts.drainSeconds=30
+ */
+public class ArtifactWriter extends Core {
+    private static final ArtifactWriter DEFAULT = new ArtifactWriter(
+            Integer.getInteger("artifacts.workers", 2),
+            Integer.getInteger("artifacts.queue", 64),
+            Integer.getInteger("artifacts.pngCompression", -1));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> DEFAULT.drain(), "artifact-writer-drain"));
+    }
+
+    // Sets runs apart that write to the same directory, the counter sets artifacts of one run apart
+    private static final String RUN_ID = UUID.randomUUID().toString().substring(0, 8);
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private final ThreadPoolExecutor executor;
+    private final int pngCompression;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicInteger maxQueued = new AtomicInteger();
+    // Artifacts submitted and not yet written, failed or dropped, guarded by itself for drain()
+    private final AtomicLong unfinished = new AtomicLong();
+
+    /**
+     * @param workers Number of writer threads
+     * @param queueSize Number of artifacts that may wait for a writer
+     * @param pngCompression zlib level 0 - 9, or -1 for the ImageIO default
+     */
+    public ArtifactWriter(int workers, int queueSize, int pngCompression) {
+        AtomicInteger count = new AtomicInteger();
+
+        this.pngCompression = pngCompression;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "artifact-writer-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> drop((Task) runnable));
+    }
+
+    /**
+     * Returns the writer shared by all tests
+     *
+     * @return Shared writer
+     */
+    public static ArtifactWriter getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Queues an image to be written, the image must not be changed after it is handed over
+     *
+     * @param image Image to write
+     * @param directory Directory under the working directory
+     * @param prefix Name the unique file name starts with, usually the test name
+     * @param fileType Image format
+     *
+     * @return Future holding the full filepath once written, or null if the artifact was dropped
+     */
+    public Future<String> writeImage(BufferedImage image, String directory, String prefix, FileType fileType) {
+        return queueImage(image, getFilePath(directory, uniqueName(prefix, fileType.getExt())), fileType);
+    }
+
+    /**
+     * Queues an image to be written to a given path, the image must not be changed after it is handed over
+     * The file is written next to the path and moved in place once complete, so readers never see half a file
+     *
+     * @param image Image to write
+     * @param path Full filepath
+     * @param fileType Image format
+     *
+     * @return Future holding the full filepath once written, or null if the artifact was dropped or failed
+     */
+    public CompletableFuture<String> queueImage(BufferedImage image, String path, FileType fileType) {
+        return submit(path, () -> {
+            File partial = new File(path + "." + sequence.incrementAndGet() + ".partial");
+            writeImage(image, partial.getPath(), fileType);
+            Files.move(partial.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        });
+    }
+
+    /**
+     * Queues a text artifact such as a page source or a log to be written as UTF-8
+     *
+     * @param text Text to write
+     * @param directory Directory under the working directory
+     * @param prefix Name the unique file name starts with, usually the test name
+     * @param extension File extension including the dot
+     *
+     * @return Future holding the full filepath once written, or null if the artifact was dropped
+     */
+    public Future<String> writeText(String text, String directory, String prefix, String extension) {
+        String path = getFilePath(directory, uniqueName(prefix, extension));
+
+        return submit(path, () -> Files.write(new File(path).toPath(), text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Queues any other write, such as appending to a file a store keeps next to its artifacts
+     *
+     * @param path Full filepath, reported when the write fails or is dropped
+     * @param write Write to run on a writer thread
+     *
+     * @return Future holding the full filepath once written, or null if the write was dropped or failed
+     */
+    public CompletableFuture<String> queue(String path, Write write) {
+        return submit(path, write);
+    }
+
+    /**
+     * Writes an image on the calling thread, for callers that need the file straight away
+     *
+     * @param image Image to write
+     * @param path Full filepath
+     * @param fileType Image format
+     */
+    public void writeImage(BufferedImage image, String path, FileType fileType) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16)) {
+            if (fileType == FileType.QOI) {
+                QoiEncoder.write(image, out);
+            } else {
+                writePng(image, out);
+            }
+        }
+    }
+
+    /**
+     * Builds a file name that no other artifact of this or any other run gets, whatever the clock resolution
+     *
+     * @param prefix Name the file name starts with
+     * @param extension File extension including the dot
+     *
+     * @return File name without directory
+     */
+    public String uniqueName(String prefix, String extension) {
+        return prefix + "_" + getTimestamp() + "_" + RUN_ID + "-" + sequence.incrementAndGet() + extension;
+    }
+
+    /**
+     * Waits until every queued artifact is written, failed or dropped, for at most -Dartifacts.drainSeconds=30
+     * Called after the run, the writer threads are daemons and would otherwise die with queued artifacts at exit
+     *
+     * @return Number of artifacts still not written when the wait ended, 0 if all are done
+     */
+    public long drain() {
+        long deadline = System.currentTimeMillis() + Long.getLong("artifacts.drainSeconds", 30) * 1000;
+
+        synchronized (unfinished) {
+            long left;
+            while ((left = unfinished.get()) > 0 && System.currentTimeMillis() < deadline) {
+                try {
+                    unfinished.wait(Math.max(1, deadline - System.currentTimeMillis()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            left = unfinished.get();
+
+            if (left > 0) {
+                System.out.println("Artifact writer still had " + left + " artifacts unwritten after the drain, they are"
+                        + " lost");
+            }
+            if (dropped.get() > 0) {
+                System.out.println("Artifact writer dropped " + dropped.get() + " artifacts, the queue was full");
+            }
+            return left;
+        }
+    }
+
+    public long getSubmitted() { return submitted.get(); }
+
+    public long getWritten() { return written.get(); }
+
+    /** Artifacts thrown away because the queue was full */
+    public long getDropped() { return dropped.get(); }
+
+    public long getFailed() { return failed.get(); }
+
+    /** Artifacts waiting for a writer right now */
+    public int getQueued() { return executor.getQueue().size(); }
+
+    /** Most artifacts that were waiting at the same time */
+    public int getMaxQueued() { return maxQueued.get(); }
+
+    public double getMeanWriteMillis() {
+        long count = written.get();
+        return count == 0 ? 0 : writeNanos.get() / (double) count / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "artifacts submitted: " + getSubmitted() + ", written: " + getWritten() + ", dropped: " + getDropped()
+                + ", failed: " + getFailed() + ", queued: " + getQueued() + ", max queued: " + getMaxQueued()
+                + ", mean write ms: " + String.format("%.1f", getMeanWriteMillis());
+    }
+
+    /** Write that runs on a writer thread */
+    public interface Write {
+        void run() throws IOException;
+    }
+
+    /** PRIVATE **/
+
+    // Queued write that completes its future however it ends, also when it is dropped
+    private class Task implements Runnable {
+        final String path;
+        final Write write;
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        Task(String path, Write write) {
+            this.path = path;
+            this.write = write;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                write.run();
+                writeNanos.addAndGet(System.nanoTime() - start);
+                written.incrementAndGet();
+                future.complete(path);
+            } catch (IOException | RuntimeException e) {
+                failed.incrementAndGet();
+                System.out.println("Failed to write artifact '" + path + "'. " + e);
+                future.complete(null);
+            } finally {
+                finish();
+            }
+        }
+    }
+
+    private void finish() {
+        synchronized (unfinished) {
+            if (unfinished.decrementAndGet() == 0) {
+                unfinished.notifyAll();
+            }
+        }
+    }
+
+    private CompletableFuture<String> submit(String path, Write write) {
+        Task task = new Task(path, write);
+
+        submitted.incrementAndGet();
+        unfinished.incrementAndGet();
+        executor.execute(task);
+        maxQueued.accumulateAndGet(executor.getQueue().size(), Math::max);
+
+        return task.future;
+    }
+
+    private void drop(Task task) {
+        dropped.incrementAndGet();
+        System.out.println("Artifact queue full, dropped '" + task.path + "'");
+        task.future.complete(null);
+        finish();
+    }
+
+    private void writePng(BufferedImage image, OutputStream out) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(FileType.PNG.fileName());
+        ImageWriter writer = writers.next();
+
+        // In memory, ImageIO would otherwise buffer through a temporary file
+        try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+
+            // Older JDKs cannot set the PNG compression and keep their default level
+            if (pngCompression >= 0 && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(1f - Math.min(9, pngCompression) / 9f);
+            }
+
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
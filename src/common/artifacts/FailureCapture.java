@@ -0,0 +1,103 @@
+package common.artifacts;
+
+import common.ScreenShot;
+import common.enums.FileType;
+import common.metrics.RecentSteps;
+import common.metrics.StepRecorder;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.logging.LogEntry;
+import org.openqa.selenium.logging.LogType;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Captures what a failed test left behind: a screenshot, the DOM, the browser console and the last page steps
+ * Nothing happens until a test fails. The browser is read and the files are written on the test thread, so the
+ * artifacts of a failure can neither be dropped by a full {@link ArtifactWriter} queue nor be lost when the run ends
+ * right after, failures are rare enough that passing tests never pay for it
+ * Files go to the failures directory, or the one set with -Dfailure.directory, and -Dfailure.capture=false turns it off
+ */
+public class FailureCapture {
+    private static final String DIRECTORY = System.getProperty("failure.directory", "failures");
+
+    private final ArtifactWriter artifactWriter;
+
+    public FailureCapture() {
+        this(ArtifactWriter.getDefault());
+    }
+
+    public FailureCapture(ArtifactWriter artifactWriter) {
+        this.artifactWriter = artifactWriter;
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty("failure.capture"));
+    }
+
+    /**
+     * Captures the state of a failed test and writes it
+     * Each part is captured on its own, a browser that can no longer take a screenshot still gives its DOM and logs
+     *
+     * @param driver Driver of the failed test, or null if the test failed before it had one
+     * @param testName Name used as prefix of the files
+     * @param failure What the test failed with
+     */
+    public void capture(WebDriver driver, String testName, Throwable failure) {
+        String prefix = testName.replaceAll("[^A-Za-z0-9._@\\[\\]-]", "_");
+        RecentSteps steps = StepRecorder.getRecentSteps();
+
+        String separator = System.lineSeparator();
+        writeText(failure + separator + separator + steps.format(), prefix + "_steps", ".txt");
+
+        if (driver != null) {
+            captureBrowser(driver, prefix);
+        }
+
+        System.out.println("Failure artifacts: " + artifactWriter.getFilePath(DIRECTORY, prefix + "_*"));
+    }
+
+    /** PRIVATE **/
+
+    private void captureBrowser(WebDriver driver, String prefix) {
+        try {
+            BufferedImage image = new ScreenShot(driver).captureFullScreen();
+            artifactWriter.writeImage(image, artifactWriter.getFilePath(DIRECTORY,
+                    artifactWriter.uniqueName(prefix, FileType.PNG.getExt())), FileType.PNG);
+        } catch (Exception e) {
+            System.out.println("Failed to capture failure screenshot. " + e);
+        }
+
+        try {
+            String url = driver.getCurrentUrl();
+            String dom = "<!-- " + url + " -->" + System.lineSeparator() + driver.getPageSource();
+            writeText(dom, prefix + "_dom", ".html");
+        } catch (WebDriverException e) {
+            System.out.println("Failed to capture failure DOM. " + e);
+        }
+
+        try {
+            StringBuilder log = new StringBuilder();
+            for (LogEntry entry : driver.manage().logs().get(LogType.BROWSER)) {
+                log.append(entry).append(System.lineSeparator());
+            }
+            writeText(log.toString(), prefix + "_console", ".log");
+        } catch (WebDriverException | UnsupportedOperationException e) {
+            // Not every browser hands out its console, Firefox for one does not
+        }
+    }
+
+    private void writeText(String text, String prefix, String extension) {
+        String path = artifactWriter.getFilePath(DIRECTORY, artifactWriter.uniqueName(prefix, extension));
+
+        try {
+            Files.write(new File(path).toPath(), text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.out.println("Failed to write failure artifact '" + path + "'. " + e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package common.artifacts;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes images in the lossless QOI format, see https://qoiformat.org/qoi-specification.pdf
+ * A single pass over the pixels with no compression library, which makes it much cheaper than PNG for large captures
+ */
+public final class QoiEncoder {
+    private static final int OP_INDEX = 0x00;
+    private static final int OP_DIFF = 0x40;
+    private static final int OP_LUMA = 0x80;
+    private static final int OP_RUN = 0xc0;
+    private static final int OP_RGB = 0xfe;
+    private static final int OP_RGBA = 0xff;
+    private static final int MAX_RUN = 62;
+    private static final byte[] END = {0, 0, 0, 0, 0, 0, 0, 1};
+
+    private QoiEncoder() {}
+
+    /**
+     * Writes an image as QOI, with an alpha channel only if the image has one
+     * The stream is not closed and should be buffered, the encoder writes byte by byte
+     *
+     * @param image Image to encode
+     * @param out Stream to write to
+     */
+    public static void write(BufferedImage image, OutputStream out) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+
+        out.write(new byte[] {'q', 'o', 'i', 'f'});
+        writeInt(out, width);
+        writeInt(out, height);
+        out.write(alpha ? 4 : 3);
+        out.write(0);
+
+        int[] index = new int[64];
+        int[] row = new int[width];
+        int previous = 0xff000000;
+        int run = 0;
+
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+
+            for (int x = 0; x < width; x++) {
+                int pixel = alpha ? row[x] : row[x] | 0xff000000;
+
+                if (pixel == previous) {
+                    run++;
+                    if (run == MAX_RUN) {
+                        out.write(OP_RUN | (run - 1));
+                        run = 0;
+                    }
+                    continue;
+                }
+
+                if (run > 0) {
+                    out.write(OP_RUN | (run - 1));
+                    run = 0;
+                }
+
+                int r = (pixel >> 16) & 0xff;
+                int g = (pixel >> 8) & 0xff;
+                int b = pixel & 0xff;
+                int a = pixel >>> 24;
+                int hash = (r * 3 + g * 5 + b * 7 + a * 11) & 63;
+
+                if (index[hash] == pixel) {
+                    out.write(OP_INDEX | hash);
+                } else {
+                    index[hash] = pixel;
+
+                    if (a == previous >>> 24) {
+                        int dr = (byte) (r - ((previous >> 16) & 0xff));
+                        int dg = (byte) (g - ((previous >> 8) & 0xff));
+                        int db = (byte) (b - (previous & 0xff));
+                        int drg = dr - dg;
+                        int dbg = db - dg;
+
+                        if (dr >= -2 && dr <= 1 && dg >= -2 && dg <= 1 && db >= -2 && db <= 1) {
+                            out.write(OP_DIFF | (dr + 2) << 4 | (dg + 2) << 2 | (db + 2));
+                        } else if (dg >= -32 && dg <= 31 && drg >= -8 && drg <= 7 && dbg >= -8 && dbg <= 7) {
+                            out.write(OP_LUMA | (dg + 32));
+                            out.write((drg + 8) << 4 | (dbg + 8));
+                        } else {
+                            out.write(OP_RGB);
+                            out.write(r);
+                            out.write(g);
+                            out.write(b);
+                        }
+                    } else {
+                        out.write(OP_RGBA);
+                        out.write(r);
+                        out.write(g);
+                        out.write(b);
+                        out.write(a);
+                    }
+                }
+
+                previous = pixel;
+            }
+        }
+
+        if (run > 0) {
+            out.write(OP_RUN | (run - 1));
+        }
+        out.write(END);
+    }
+
+    /** PRIVATE **/
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,358 @@
+package common.artifacts;
+
+import common.Core;
+import common.enums.FileType;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Content addressed screenshot storage
+ * Every capture is keyed by the xxHash64 of its pixels and stored once as screenshot/cas/ab/abcdef....ext, so the same
+ * capture taken by every run costs a hash and a manifest line instead of a file
+ * A capture is listed in the manifest once its file is written, captures the writer dropped are not listed
+ * The manifest maps test and time to hash, one line per capture, and is appended to so it loads in a single read
+ * New lines are buffered and appended by the {@link ArtifactWriter}, so a capture never waits for the manifest file
+ * Retention keeps the last -Dscreenshot.keepPerTest=10 captures of every test and then evicts the least recently used
+ * files until the store is below -Dscreenshot.maxStoreMB=1024
+ */
+public class ScreenshotStore extends Core {
+    private static final String DIRECTORY = "screenshot" + File.separator + "cas";
+    private static final String MANIFEST = "manifest.csv";
+
+    private static volatile ScreenshotStore shared;
+
+    private final ArtifactWriter artifactWriter;
+    private final FileType fileType;
+    private final int keepPerTest = Integer.getInteger("screenshot.keepPerTest", 10);
+    private final long maxBytes = Long.getLong("screenshot.maxStoreMB", 1024) * 1024 * 1024;
+
+    private final List<Entry> entries = new ArrayList<>();
+    // Hashes with a stored file or a write on its way, and the last time each was captured
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+    // Manifest lines not written yet, the file itself is only touched while holding manifestLock
+    private final Queue<String> unwritten = new ConcurrentLinkedQueue<>();
+    private final Object manifestLock = new Object();
+    private final AtomicBoolean appendQueued = new AtomicBoolean();
+
+    public ScreenshotStore(ArtifactWriter artifactWriter, FileType fileType) {
+        this.artifactWriter = artifactWriter;
+        this.fileType = fileType;
+        load();
+    }
+
+    /**
+     * Returns the store shared by all tests, loaded on first use
+     *
+     * @return Shared store
+     */
+    public static ScreenshotStore getDefault() {
+        if (shared == null) {
+            synchronized (ScreenshotStore.class) {
+                if (shared == null) {
+                    shared = new ScreenshotStore(ArtifactWriter.getDefault(),
+                            FileType.valueOf(System.getProperty("screenshot.format", "PNG")));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Checks whether the shared store was used in this run, without loading it
+     *
+     * @return true if {@link #getDefault()} has been called
+     */
+    public static boolean isLoaded() {
+        return shared != null;
+    }
+
+    /**
+     * Stores a capture for a test, the pixels are only written if no capture with the same pixels is stored yet
+     *
+     * @param testName Name of the test
+     * @param image Captured image, must not be changed after it is handed over
+     *
+     * @return Future holding the full filepath of the stored capture, or null if the writer dropped it
+     */
+    public Future<String> put(String testName, BufferedImage image) {
+        String hash = String.format("%016x", XxHash64.hashPixels(image));
+        String path = getBlobPath(hash);
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(testName, now, hash);
+
+        if (lastUsed.put(hash, now) != null) {
+            CompletableFuture<String> writing = pending.get(hash);
+            if (writing != null) {
+                writing.thenAccept(result -> appendIfStored(result, entry));
+                return writing;
+            }
+            if (new File(path).exists()) {
+                appendEntry(entry);
+                return CompletableFuture.completedFuture(path);
+            }
+        }
+
+        // Two tests capturing the same new image at the same moment may both write it, the last move wins
+        CompletableFuture<String> written = artifactWriter.queueImage(image, path, fileType);
+        pending.put(hash, written);
+        written.whenComplete((result, e) -> {
+            pending.remove(hash, written);
+            if (result == null) {
+                lastUsed.remove(hash);
+            }
+            appendIfStored(result, entry);
+        });
+
+        return written;
+    }
+
+    /**
+     * Returns the stored captures of a test
+     *
+     * @param testName Name of the test
+     *
+     * @return Captures oldest first
+     */
+    public synchronized List<Entry> history(String testName) {
+        List<Entry> history = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (entry.test.equals(testName)) {
+                history.add(entry);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * Returns the file a capture is stored in
+     *
+     * @param entry Capture
+     *
+     * @return Full filepath
+     */
+    public String getPath(Entry entry) {
+        return getBlobPath(entry.hash);
+    }
+
+    /**
+     * Applies the retention policy: keeps the last captures of every test, then drops the least recently captured
+     * files until the store fits its size limit, and finally rewrites the manifest without the dropped captures
+     * The rewrite also writes the manifest lines still waiting for the artifact writer
+     */
+    public synchronized void evict() throws IOException {
+        Map<String, List<Entry>> byTest = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            byTest.computeIfAbsent(entry.test, k -> new ArrayList<>()).add(entry);
+        }
+
+        List<Entry> kept = new ArrayList<>();
+        for (List<Entry> history : byTest.values()) {
+            kept.addAll(history.subList(Math.max(0, history.size() - keepPerTest), history.size()));
+        }
+
+        // Size of every file still referenced, least recently captured first
+        Map<String, Long> sizes = new HashMap<>();
+        for (Entry entry : kept) {
+            sizes.computeIfAbsent(entry.hash, hash -> new File(getBlobPath(hash)).length());
+        }
+        List<String> hashes = new ArrayList<>(sizes.keySet());
+        hashes.sort(Comparator.comparing(hash -> lastUsed.getOrDefault(hash, 0L)));
+
+        long total = 0;
+        for (long size : sizes.values()) {
+            total += size;
+        }
+
+        Set<String> evicted = new HashSet<>();
+        for (String hash : hashes) {
+            if (total <= maxBytes) {
+                break;
+            }
+            total -= sizes.get(hash);
+            evicted.add(hash);
+        }
+        kept.removeIf(entry -> evicted.contains(entry.hash));
+
+        Set<String> live = new HashSet<>();
+        for (Entry entry : kept) {
+            live.add(entry.hash);
+        }
+        deleteUnreferenced(live);
+
+        entries.clear();
+        entries.addAll(kept);
+        lastUsed.keySet().retainAll(live);
+
+        // The rewrite holds every entry, so buffered lines are dropped instead of appended after it
+        synchronized (manifestLock) {
+            unwritten.clear();
+            writeManifest();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** One capture of a test */
+    public static class Entry {
+        private final String test;
+        private final long time;
+        private final String hash;
+
+        Entry(String test, long time, String hash) {
+            this.test = test;
+            this.time = time;
+            this.hash = hash;
+        }
+
+        public String getTest() { return test; }
+
+        public long getTime() { return time; }
+
+        public String getHash() { return hash; }
+
+        String toCsv() {
+            return test.replace(",", "_") + "," + time + "," + hash;
+        }
+
+        static Entry fromCsv(String line) {
+            String[] values = line.split(",");
+            return new Entry(values[0], Long.parseLong(values[1]), values[2]);
+        }
+    }
+
+    /** PRIVATE **/
+
+    private void load() {
+        File manifest = new File(getFilePath(DIRECTORY, MANIFEST));
+
+        if (!manifest.exists()) {
+            return;
+        }
+
+        try {
+            for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    Entry entry = Entry.fromCsv(line);
+                    entries.add(entry);
+                    lastUsed.merge(entry.hash, entry.time, Math::max);
+                } catch (RuntimeException e) {
+                    System.out.println("Skipping unreadable manifest line '" + line + "'. " + e);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read screenshot manifest. " + e);
+        }
+    }
+
+    // A capture whose file was dropped or failed is not listed, the manifest only points at files that exist
+    private void appendIfStored(String path, Entry entry) {
+        if (path != null) {
+            appendEntry(entry);
+        }
+    }
+
+    private void appendEntry(Entry entry) {
+        // Both under the store lock, so evict() rewrites either with the line or before it is buffered
+        synchronized (this) {
+            entries.add(entry);
+            unwritten.add(entry.toCsv());
+        }
+
+        // One append at a time in the queue, it takes every line buffered by the time it runs
+        if (appendQueued.compareAndSet(false, true)) {
+            artifactWriter.queue(getFilePath(DIRECTORY, MANIFEST), this::appendManifest)
+                    .whenComplete((result, e) -> {
+                        if (result == null) {
+                            appendQueued.set(false);
+                        }
+                    });
+        }
+    }
+
+    private void appendManifest() throws IOException {
+        appendQueued.set(false);
+
+        synchronized (manifestLock) {
+            List<String> lines = new ArrayList<>();
+            for (String line = unwritten.poll(); line != null; line = unwritten.poll()) {
+                lines.add(line);
+            }
+
+            if (!lines.isEmpty()) {
+                Files.write(new File(getFilePath(DIRECTORY, MANIFEST)).toPath(), lines, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        File manifest = new File(getFilePath(DIRECTORY, MANIFEST));
+        File partial = new File(manifest.getPath() + ".partial");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(partial.toPath(), StandardCharsets.UTF_8)) {
+            for (Entry entry : entries) {
+                writer.write(entry.toCsv());
+                writer.newLine();
+            }
+        }
+
+        Files.move(partial.toPath(), manifest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteUnreferenced(Set<String> live) {
+        File[] dirs = new File(getFilePath(DIRECTORY, "")).listFiles(File::isDirectory);
+
+        if (dirs == null) {
+            return;
+        }
+
+        for (File dir : dirs) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                String name = file.getName();
+                int dot = name.indexOf('.');
+                String hash = dot < 0 ? name : name.substring(0, dot);
+
+                if (!live.contains(hash) && !name.endsWith(".partial") && !file.delete()) {
+                    System.out.println("Failed to delete evicted screenshot '" + file + "'");
+                }
+            }
+        }
+    }
+
+    // Two levels so no single directory ends up with every file
+    private String getBlobPath(String hash) {
+        return getFilePath(DIRECTORY + File.separator + hash.substring(0, 2), hash + fileType.getExt());
+    }
+}
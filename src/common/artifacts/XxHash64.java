@@ -0,0 +1,133 @@
+package common.artifacts;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Streaming xxHash64 over 64 bit words, see https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md
+ * Gives the same value as xxHash64 of the words written as little endian bytes
+ */
+public final class XxHash64 {
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    // Words of a stripe that is not complete yet
+    private final long[] pending = new long[4];
+    private int pendingCount;
+    private long length;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+    }
+
+    /**
+     * Hashes the colour of every pixel of an image, together with its size
+     * Two pixels go into each word, so the image layout does not matter, only the picture
+     *
+     * @param image Image
+     *
+     * @return 64 bit hash
+     */
+    public static long hashPixels(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] row = new int[width];
+        XxHash64 hash = new XxHash64();
+
+        hash.update((long) width << 32 | height);
+
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+
+            int x = 0;
+            for (; x + 1 < width; x += 2) {
+                hash.update((row[x] & 0xffffffL) | (row[x + 1] & 0xffffffL) << 32);
+            }
+            if (x < width) {
+                hash.update(row[x] & 0xffffffL);
+            }
+        }
+
+        return hash.digest();
+    }
+
+    /**
+     * Adds a word to the hash
+     *
+     * @param word Next 8 bytes of input
+     */
+    public void update(long word) {
+        pending[pendingCount++] = word;
+        length += 8;
+
+        if (pendingCount == 4) {
+            v1 = round(v1, pending[0]);
+            v2 = round(v2, pending[1]);
+            v3 = round(v3, pending[2]);
+            v4 = round(v4, pending[3]);
+            pendingCount = 0;
+        }
+    }
+
+    /**
+     * Returns the hash of the words added so far, more words can still be added afterwards
+     *
+     * @return 64 bit hash
+     */
+    public long digest() {
+        long h;
+
+        if (length >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+
+        h += length;
+
+        for (int i = 0; i < pendingCount; i++) {
+            h ^= round(0, pending[i]);
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+
+        return h;
+    }
+
+    /** PRIVATE **/
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long merge(long h, long v) {
+        h ^= round(0, v);
+        return h * PRIME1 + PRIME4;
+    }
+}
@@ -0,0 +1,50 @@
+package common.capture;
+
+import common.enums.CaptureMode;
+import org.openqa.selenium.WebDriver;
+
+import java.awt.AWTException;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * Source of the images ScreenShot works with
+ */
+public interface CaptureBackend {
+
+    /**
+     * Captures what is currently visible
+     *
+     * @return Captured image
+     */
+    BufferedImage captureViewport();
+
+    /**
+     * Captures the whole page, including the parts that are scrolled out of view where the backend can reach them
+     *
+     * @return Captured image
+     */
+    BufferedImage captureFullPage();
+
+    /**
+     * Captures an area of the page
+     *
+     * @param area Area in page coordinates, the same as WebElement.getLocation and getSize
+     *
+     * @return Captured image of the area, clipped to what the backend can capture
+     */
+    BufferedImage captureArea(Rectangle area);
+
+    /**
+     * Creates the backend chosen with -Dscreenshot.backend=DRIVER|ROBOT, DRIVER by default
+     *
+     * @param driver Driver of the session to capture
+     *
+     * @return New backend
+     */
+    static CaptureBackend create(WebDriver driver) throws AWTException {
+        CaptureMode mode = CaptureMode.valueOf(System.getProperty("screenshot.backend", "DRIVER"));
+
+        return mode == CaptureMode.ROBOT ? new RobotCapture() : new DriverCapture(driver);
+    }
+}
@@ -0,0 +1,19 @@
+package common.capture;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+final class Crop {
+
+    private Crop() {}
+
+    // Part of the image inside the area, at least one pixel so callers always get an image back
+    static BufferedImage clip(BufferedImage image, Rectangle area) {
+        int x = Math.max(0, Math.min(area.x, image.getWidth() - 1));
+        int y = Math.max(0, Math.min(area.y, image.getHeight() - 1));
+        int width = Math.max(1, Math.min(area.width, image.getWidth() - x));
+        int height = Math.max(1, Math.min(area.height, image.getHeight() - y));
+
+        return image.getSubimage(x, y, width, height);
+    }
+}
@@ -0,0 +1,126 @@
+package common.capture;
+
+import common.PageScripts;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * Captures the browser viewport through WebDriver screenshots
+ * Works headless without a display, and every session captures its own browser so tests can capture in parallel
+ * Pages longer than the viewport are captured by scrolling one viewport at a time and stitching the captures
+ */
+public class DriverCapture implements CaptureBackend {
+    // Stop stitching pages taller than this, a runaway infinite scroll page would otherwise never end
+    private final int maxPageHeight = Integer.getInteger("screenshot.maxPageHeight", 32000);
+
+    private final WebDriver driver;
+
+    public DriverCapture(WebDriver driver) {
+        this.driver = driver;
+    }
+
+    @Override
+    public BufferedImage captureViewport() {
+        return ((TakesScreenshot) driver).getScreenshotAs(PngImage.IMAGE);
+    }
+
+    @Override
+    public BufferedImage captureFullPage() {
+        int[] metrics = metrics();
+        int scrollX = metrics[0];
+        int scrollY = metrics[1];
+        int viewportHeight = Math.max(1, metrics[3]);
+        int pageHeight = Math.min(metrics[5], maxPageHeight);
+
+        if (pageHeight <= viewportHeight) {
+            return captureViewport();
+        }
+
+        try {
+            int[] offset = scrollTo(scrollX, 0);
+            BufferedImage first = captureViewport();
+
+            // Screenshots are in device pixels, work out the ratio from the capture instead of trusting devicePixelRatio
+            double scale = first.getHeight() / (double) viewportHeight;
+            BufferedImage page = new BufferedImage(first.getWidth(), (int) Math.round(pageHeight * scale),
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = page.createGraphics();
+
+            try {
+                g.drawImage(first, 0, (int) Math.round(offset[1] * scale), null);
+
+                for (int y = viewportHeight; y < pageHeight; y += viewportHeight) {
+                    // The browser stops at the bottom of the page, the last capture overlaps the one before it
+                    offset = scrollTo(scrollX, y);
+                    g.drawImage(captureViewport(), 0, (int) Math.round(offset[1] * scale), null);
+                }
+            } finally {
+                g.dispose();
+            }
+
+            return page;
+        } finally {
+            scrollTo(scrollX, scrollY);
+        }
+    }
+
+    @Override
+    public BufferedImage captureArea(Rectangle area) {
+        int[] metrics = metrics();
+        int scrollX = metrics[0];
+        int scrollY = metrics[1];
+
+        if (area.height > metrics[3]) {
+            BufferedImage page = captureFullPage();
+            double scale = page.getHeight() / (double) Math.max(1, Math.min(metrics[5], maxPageHeight));
+
+            Rectangle inPage = new Rectangle(area.x - scrollX, area.y, area.width, area.height);
+
+            return Crop.clip(page, scaled(inPage, scale));
+        }
+
+        try {
+            // Bring the top of the area into view, the browser keeps the offset inside the page
+            int[] offset = scrollTo(scrollX, area.y);
+            BufferedImage viewport = captureViewport();
+            double scale = viewport.getHeight() / (double) Math.max(1, metrics[3]);
+            Rectangle inViewport = new Rectangle(area.x - offset[0], area.y - offset[1], area.width, area.height);
+
+            return Crop.clip(viewport, scaled(inViewport, scale));
+        } finally {
+            scrollTo(scrollX, scrollY);
+        }
+    }
+
+    /** PRIVATE **/
+
+    private int[] metrics() {
+        return toInts(((JavascriptExecutor) driver).executeScript(PageScripts.PAGE_METRICS));
+    }
+
+    private int[] scrollTo(int x, int y) {
+        return toInts(((JavascriptExecutor) driver).executeScript(PageScripts.SCROLL_TO, x, y));
+    }
+
+    private static int[] toInts(Object value) {
+        List<?> list = (List<?>) value;
+        int[] ints = new int[list.size()];
+
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = (int) Math.round(((Number) list.get(i)).doubleValue());
+        }
+
+        return ints;
+    }
+
+    private static Rectangle scaled(Rectangle area, double scale) {
+        return new Rectangle((int) Math.round(area.x * scale), (int) Math.round(area.y * scale),
+                (int) Math.round(area.width * scale), (int) Math.round(area.height * scale));
+    }
+}
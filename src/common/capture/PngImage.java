@@ -0,0 +1,91 @@
+package common.capture;
+
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.WebDriverException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+
+/**
+ * Screenshot output type that decodes the PNG straight into a BufferedImage
+ * The base64 text the driver returns is read through a decoding stream, so the decoded PNG bytes are never held in a
+ * separate array, and ImageIO reads from memory instead of its default temporary file cache
+ */
+public final class PngImage implements OutputType<BufferedImage> {
+    public static final PngImage IMAGE = new PngImage();
+
+    private PngImage() {}
+
+    @Override
+    public BufferedImage convertFromBase64Png(String base64Png) {
+        // The MIME decoder skips line breaks, which some drivers put in long base64 values
+        return read(Base64.getMimeDecoder().wrap(new CharSequenceInputStream(base64Png)));
+    }
+
+    @Override
+    public BufferedImage convertFromPngBytes(byte[] png) {
+        return read(new ByteArrayInputStream(png));
+    }
+
+    @Override
+    public String toString() {
+        return "OutputType.IMAGE";
+    }
+
+    /** PRIVATE **/
+
+    private static BufferedImage read(InputStream in) {
+        // ImageIO closes the image stream itself once the image is read
+        try (InputStream source = in) {
+            BufferedImage image = ImageIO.read(new MemoryCacheImageInputStream(source));
+            if (image == null) {
+                throw new WebDriverException("Screenshot is not a readable PNG");
+            }
+            return image;
+        } catch (IOException e) {
+            throw new WebDriverException("Failed to decode screenshot", e);
+        }
+    }
+
+    // Reads the characters of a base64 string as bytes without copying the string
+    private static class CharSequenceInputStream extends InputStream {
+        private final CharSequence chars;
+        private int position;
+
+        CharSequenceInputStream(CharSequence chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read() {
+            return position < chars.length() ? chars.charAt(position++) & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int remaining = chars.length() - position;
+            if (length == 0) {
+                return 0;
+            }
+            if (remaining <= 0) {
+                return -1;
+            }
+
+            int count = Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) chars.charAt(position++);
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chars.length() - position;
+        }
+    }
+}
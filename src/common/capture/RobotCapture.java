@@ -0,0 +1,38 @@
+package common.capture;
+
+import java.awt.AWTException;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+
+/**
+ * Captures the desktop with java.awt.Robot
+ * Needs a display, sees whatever window is on top and cannot tell parallel sessions apart, so it is only useful when a
+ * single visible browser runs on a desktop
+ */
+public class RobotCapture implements CaptureBackend {
+    private final Robot robot;
+
+    public RobotCapture() throws AWTException {
+        robot = new Robot();
+    }
+
+    @Override
+    public BufferedImage captureViewport() {
+        return robot.createScreenCapture(new Rectangle(Toolkit.getDefaultToolkit().getScreenSize()));
+    }
+
+    /** The desktop cannot be scrolled, so this is the same as {@link #captureViewport()} */
+    @Override
+    public BufferedImage captureFullPage() {
+        return captureViewport();
+    }
+
+    @Override
+    public BufferedImage captureArea(Rectangle area) {
+        BufferedImage screen = captureViewport();
+
+        return Crop.clip(screen, area);
+    }
+}
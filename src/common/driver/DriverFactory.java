@@ -0,0 +1,152 @@
+package common.driver;
+
+import common.enums.Browser;
+import common.network.LocalProxy;
+import common.snapshot.SnapshotDriver;
+import org.openqa.selenium.Proxy;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.firefox.FirefoxDriver;
+import org.openqa.selenium.firefox.FirefoxOptions;
+import org.openqa.selenium.ie.InternetExplorerDriver;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.safari.SafariDriver;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class DriverFactory {
+    private static final String osName = System.getProperty("os.name").toUpperCase();
+    private static final Map<Browser, DriverProvider> providers = new EnumMap<>(Browser.class);
+
+    static {
+        providers.put(Browser.CHROME, DriverFactory::createChrome);
+        providers.put(Browser.FIREFOX, DriverFactory::createFirefox);
+        // todo actions broken in safari? investigate
+        providers.put(Browser.SAFARI, profile -> new SafariDriver());
+        providers.put(Browser.IEXPLORER, profile -> new InternetExplorerDriver());
+        providers.put(Browser.SNAPSHOT, profile -> new SnapshotDriver(profile.getWindowWidth(), profile.getWindowHeight()));
+    }
+
+    /**
+     * Replaces how the driver for a browser is created, for example to use a remote grid
+     *
+     * @param browser Browser
+     * @param provider Creates the driver from a profile
+     */
+    public static synchronized void register(Browser browser, DriverProvider provider) {
+        providers.put(browser, provider);
+    }
+
+    /**
+     * Creates a new driver session for a browser
+     *
+     * @param browser Browser
+     * @param profile Headless mode, content to turn off and window size
+     *
+     * @return New WebDriver
+     */
+    public static WebDriver create(Browser browser, DriverProfile profile) {
+        DriverProvider provider;
+        synchronized (DriverFactory.class) {
+            provider = providers.get(browser);
+        }
+
+        if (provider == null) {
+            throw new IllegalArgumentException("No driver provider registered for " + browser);
+        }
+
+        WebDriver driver = provider.create(profile);
+        driver.manage().timeouts().pageLoadTimeout(profile.getPageLoadTimeoutInSeconds(), TimeUnit.SECONDS);
+
+        return driver;
+    }
+
+    /** PRIVATE **/
+
+    private static WebDriver createChrome(DriverProfile profile) {
+        if(isMac()) System.setProperty("webdriver.chrome.driver", "./lib/chromedriver-osx");
+        if(isWindows()) System.setProperty("webdriver.chrome.driver", "./lib/chromedriver-win.exe");
+        if(isNix()) System.setProperty("webdriver.chrome.driver", "./lib/chromedriver-nix");
+
+        ChromeOptions options = new ChromeOptions();
+        options.setCapability(CapabilityType.ACCEPT_SSL_CERTS, true);
+        options.setCapability("nativeEvents", true);
+        options.setHeadless(profile.isHeadless());
+        options.addArguments("--window-size=" + profile.getWindowWidth() + "," + profile.getWindowHeight());
+
+        Map<String, Object> prefs = new HashMap<>();
+
+        prefs.put("credentials_enable_service", false);
+        prefs.put("profile.password_manager_enabled", false);
+
+        if (profile.isDisableImages()) {
+            prefs.put("profile.managed_default_content_settings.images", 2);
+        }
+        if (profile.isDisableFonts()) {
+            options.addArguments("--disable-remote-fonts");
+        }
+        if (profile.isDisableExtensions()) {
+            options.addArguments("--disable-extensions");
+        }
+
+        options.setExperimentalOption("prefs", prefs);
+
+        Proxy proxy = createProxy(profile);
+        if (proxy != null) {
+            options.setProxy(proxy);
+        }
+
+        return new ChromeDriver(options);
+    }
+
+    private static WebDriver createFirefox(DriverProfile profile) {
+        // todo let us use this when actions is not broken in driver anymore
+        FirefoxOptions options = new FirefoxOptions();
+        options.setCapability(CapabilityType.ACCEPT_SSL_CERTS, true);
+        options.setHeadless(profile.isHeadless());
+        options.addArguments("--width=" + profile.getWindowWidth(), "--height=" + profile.getWindowHeight());
+
+        if (profile.isDisableImages()) {
+            options.addPreference("permissions.default.image", 2);
+        }
+        if (profile.isDisableFonts()) {
+            options.addPreference("gfx.downloadable_fonts.enabled", false);
+        }
+        if (profile.isDisableExtensions()) {
+            options.addPreference("extensions.enabledScopes", 0);
+        }
+
+        Proxy proxy = createProxy(profile);
+        if (proxy != null) {
+            options.setProxy(proxy);
+        }
+
+        return new FirefoxDriver(options);
+    }
+
+    // Sessions of the same profile share one local proxy
+    private static Proxy createProxy(DriverProfile profile) {
+        if (!profile.getNetwork().isActive()) {
+            return null;
+        }
+
+        String address = LocalProxy.forProfile(profile.getNetwork()).getAddress();
+        return new Proxy().setHttpProxy(address).setSslProxy(address);
+    }
+
+    private static boolean isMac() {
+        return osName.contains("MAC");
+    }
+
+    private static boolean isWindows() {
+        return osName.contains("WIN");
+    }
+
+    private static boolean isNix() {
+        return osName.contains("NIX") || osName.contains("NUX") || osName.contains("AIX");
+    }
+}
@@ -0,0 +1,200 @@
+package common.driver;
+
+import common.PageScripts;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+public class DriverPool {
+    private final Supplier<WebDriver> factory;
+    private final int maxUses;
+    private final Semaphore permits;
+    private final BlockingDeque<Session> idle = new LinkedBlockingDeque<>();
+    private final Map<WebDriver, Session> leased = new ConcurrentHashMap<>();
+
+    /**
+     * Keeps a number of warm WebDriver sessions that are leased to one test at a time
+     *
+     * @param factory Creates a new session when the pool has no idle healthy one
+     * @param size Maximum number of sessions alive at the same time
+     * @param maxUses Number of leases before a session is quit and replaced
+     */
+    public DriverPool(Supplier<WebDriver> factory, int size, int maxUses) {
+        this.factory = factory;
+        this.maxUses = maxUses;
+        this.permits = new Semaphore(size, true);
+    }
+
+    /**
+     * Leases a session, blocking until one is free. The session must be handed back with {@link #release(WebDriver)}
+     *
+     * @return WebDriver that is only used by the caller until released
+     */
+    public WebDriver lease() {
+        return lease(false);
+    }
+
+    /**
+     * Leases a newly started session instead of a warm one, for a rerun that should not inherit anything from the
+     * session its failed attempt used. An idle session is quit in its place, so the pool does not grow
+     *
+     * @return WebDriver that is only used by the caller until released
+     */
+    public WebDriver leaseFresh() {
+        return lease(true);
+    }
+
+    /**
+     * Hands a leased session back. The session is reset so the next test starts clean, or quit if it has been used
+     * too many times or can no longer be reset
+     *
+     * @param driver WebDriver returned by {@link #lease()}
+     */
+    public void release(WebDriver driver) {
+        Session session = leased.remove(driver);
+
+        if (session == null) {
+            return;
+        }
+
+        try {
+            if (session.uses >= maxUses || !session.reset()) {
+                session.quit();
+            } else {
+                idle.offerFirst(session);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Hands a leased session back and quits it, for sessions that are known to be broken
+     *
+     * @param driver WebDriver returned by {@link #lease()}
+     */
+    public void discard(WebDriver driver) {
+        Session session = leased.remove(driver);
+
+        if (session == null) {
+            return;
+        }
+
+        try {
+            session.quit();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Quits every session, both idle and leased */
+    public void shutdown() {
+        List<Session> sessions = new ArrayList<>(leased.values());
+        leased.clear();
+        idle.drainTo(sessions);
+
+        for (Session session : sessions) {
+            session.quit();
+        }
+    }
+
+    /** PRIVATE **/
+
+    private WebDriver lease(boolean fresh) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebDriverException("Interrupted while waiting for a pooled driver", e);
+        }
+
+        try {
+            Session session = idle.pollFirst();
+
+            while (session != null && (fresh || !session.isHealthy())) {
+                session.quit();
+                session = fresh ? null : idle.pollFirst();
+            }
+
+            if (session == null) {
+                session = new Session(factory.get());
+            }
+
+            session.uses++;
+            leased.put(session.driver, session);
+
+            return session.driver;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static class Session {
+        private final WebDriver driver;
+        private int uses;
+
+        Session(WebDriver driver) {
+            this.driver = driver;
+        }
+
+        boolean isHealthy() {
+            try {
+                driver.getWindowHandle();
+                return true;
+            } catch (WebDriverException e) {
+                return false;
+            }
+        }
+
+        // Closes every window but the first and clears cookies and storage, returns false if the session is broken
+        boolean reset() {
+            try {
+                List<String> handles = new ArrayList<>(driver.getWindowHandles());
+
+                for (int i = 1; i < handles.size(); i++) {
+                    driver.switchTo().window(handles.get(i));
+                    driver.close();
+                }
+                driver.switchTo().window(handles.get(0));
+
+                driver.manage().deleteAllCookies();
+                clearStorage();
+                driver.get("about:blank");
+
+                return true;
+            } catch (WebDriverException | IndexOutOfBoundsException e) {
+                return false;
+            }
+        }
+
+        void quit() {
+            try {
+                driver.quit();
+            } catch (WebDriverException e) {
+                System.out.println("Failed to quit pooled driver. " + e);
+            }
+        }
+
+        private void clearStorage() {
+            if (!(driver instanceof JavascriptExecutor)) {
+                return;
+            }
+
+            try {
+                ((JavascriptExecutor) driver).executeScript(PageScripts.CLEAR_STORAGE);
+            } catch (WebDriverException e) {
+                // Pages without an origin (about:blank, data:) do not allow access to storage
+            }
+        }
+    }
+}
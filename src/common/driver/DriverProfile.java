@@ -0,0 +1,94 @@
+package common.driver;
+
+import common.network.NetworkProfile;
+
+public class DriverProfile {
+    private boolean headless = true;
+    private boolean disableImages;
+    private boolean disableFonts;
+    private boolean disableExtensions;
+    private int windowWidth = 1920;
+    private int windowHeight = 1080;
+    private int pageLoadTimeoutInSeconds = 60;
+    private NetworkProfile network = new NetworkProfile();
+
+    /**
+     * Reads the profile from system properties
+     * -Dheadless (default true), -Ddriver.disableImages, -Ddriver.disableFonts, -Ddriver.disableExtensions,
+     * -Ddriver.lean to turn on all three, -Ddriver.windowSize=1920x1080 and the network.* properties of
+     * {@link NetworkProfile#fromSystemProperties()}
+     *
+     * @return Driver profile
+     */
+    public static DriverProfile fromSystemProperties() {
+        boolean lean = Boolean.getBoolean("driver.lean");
+        DriverProfile profile = new DriverProfile()
+                .setHeadless(!"false".equalsIgnoreCase(System.getProperty("headless")))
+                .setDisableImages(lean || Boolean.getBoolean("driver.disableImages"))
+                .setDisableFonts(lean || Boolean.getBoolean("driver.disableFonts"))
+                .setDisableExtensions(lean || Boolean.getBoolean("driver.disableExtensions"))
+                .setNetwork(NetworkProfile.fromSystemProperties());
+
+        String size = System.getProperty("driver.windowSize");
+        if (size != null && size.matches("\\d+x\\d+")) {
+            String[] parts = size.split("x");
+            profile.setWindowSize(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        }
+
+        return profile;
+    }
+
+    public boolean isHeadless() { return headless; }
+
+    public DriverProfile setHeadless(boolean headless) {
+        this.headless = headless;
+        return this;
+    }
+
+    public boolean isDisableImages() { return disableImages; }
+
+    public DriverProfile setDisableImages(boolean disableImages) {
+        this.disableImages = disableImages;
+        return this;
+    }
+
+    public boolean isDisableFonts() { return disableFonts; }
+
+    public DriverProfile setDisableFonts(boolean disableFonts) {
+        this.disableFonts = disableFonts;
+        return this;
+    }
+
+    public boolean isDisableExtensions() { return disableExtensions; }
+
+    public DriverProfile setDisableExtensions(boolean disableExtensions) {
+        this.disableExtensions = disableExtensions;
+        return this;
+    }
+
+    public int getWindowWidth() { return windowWidth; }
+
+    public int getWindowHeight() { return windowHeight; }
+
+    // Headless browsers start with a small window, screenshots need the same size every run
+    public DriverProfile setWindowSize(int width, int height) {
+        this.windowWidth = width;
+        this.windowHeight = height;
+        return this;
+    }
+
+    public int getPageLoadTimeoutInSeconds() { return pageLoadTimeoutInSeconds; }
+
+    public DriverProfile setPageLoadTimeoutInSeconds(int pageLoadTimeoutInSeconds) {
+        this.pageLoadTimeoutInSeconds = pageLoadTimeoutInSeconds;
+        return this;
+    }
+
+    public NetworkProfile getNetwork() { return network; }
+
+    // Blocked, cached and throttled requests, sessions go through a local proxy when the profile is active
+    public DriverProfile setNetwork(NetworkProfile network) {
+        this.network = network;
+        return this;
+    }
+}
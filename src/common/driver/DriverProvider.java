@@ -0,0 +1,7 @@
+package common.driver;
+
+import org.openqa.selenium.WebDriver;
+
+public interface DriverProvider {
+    WebDriver create(DriverProfile profile);
+}
@@ -0,0 +1,74 @@
+package common.driver;
+
+import common.PageScripts;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cookies and localStorage of an authenticated session, so later sessions can skip the login page
+ */
+public class SessionSnapshot {
+    private final String origin;
+    private final Set<Cookie> cookies;
+    private final Map<String, String> localStorage;
+
+    private SessionSnapshot(String origin, Set<Cookie> cookies, Map<String, String> localStorage) {
+        this.origin = origin;
+        this.cookies = cookies;
+        this.localStorage = localStorage;
+    }
+
+    /**
+     * Takes the cookies and localStorage of the page the driver is on
+     *
+     * @param driver WebDriver that has logged in
+     *
+     * @return Snapshot that can be restored into other sessions
+     */
+    @SuppressWarnings("unchecked")
+    public static SessionSnapshot take(WebDriver driver) {
+        URI uri = URI.create(driver.getCurrentUrl());
+        String origin = uri.getScheme() + "://" + uri.getAuthority();
+
+        Map<String, String> storage = new HashMap<>();
+        if (driver instanceof JavascriptExecutor) {
+            Object items = ((JavascriptExecutor) driver).executeScript(PageScripts.READ_STORAGE);
+            if (items instanceof Map) {
+                for (Map.Entry<String, Object> item : ((Map<String, Object>) items).entrySet()) {
+                    storage.put(item.getKey(), String.valueOf(item.getValue()));
+                }
+            }
+        }
+
+        return new SessionSnapshot(origin, new LinkedHashSet<>(driver.manage().getCookies()), storage);
+    }
+
+    /**
+     * Restores the snapshot into another session
+     * Cookies can only be set on their own domain, so this opens a small resource on the origin first
+     *
+     * @param driver WebDriver to restore into
+     */
+    public void restore(WebDriver driver) {
+        driver.get(origin + "/favicon.ico");
+
+        for (Cookie cookie : cookies) {
+            driver.manage().addCookie(cookie);
+        }
+
+        if (!localStorage.isEmpty() && driver instanceof JavascriptExecutor) {
+            ((JavascriptExecutor) driver).executeScript(PageScripts.WRITE_STORAGE, localStorage);
+        }
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+}
@@ -4,7 +4,9 @@ public enum Browser {
     CHROME,
     FIREFOX,
     SAFARI,
-    IEXPLORER;
+    IEXPLORER,
+    // Replays saved pages from the snapshots directory, no browser and no network
+    SNAPSHOT;
 
     Browser() {}
 }
@@ -0,0 +1,10 @@
+package common.enums;
+
+public enum CaptureMode {
+    // Browser screenshots through WebDriver, needs no display and works per session
+    DRIVER,
+    // Desktop screenshots through java.awt.Robot, needs a display and sees everything on the screen
+    ROBOT;
+
+    CaptureMode() {}
+}
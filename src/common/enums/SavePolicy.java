@@ -0,0 +1,13 @@
+package common.enums;
+
+public enum SavePolicy {
+    NEVER,
+    ON_FAILURE,
+    ALWAYS;
+
+    SavePolicy() {}
+
+    public boolean keep(boolean failed) {
+        return this == ALWAYS || (this == ON_FAILURE && failed);
+    }
+}
@@ -0,0 +1,206 @@
+package common.locators;
+
+import common.snapshot.CssToXPath;
+import org.openqa.selenium.By;
+
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Locators declared in a properties file instead of in code, parsed once at startup
+ * Each line is Page.name = type:value, for example LoginPage.username = id:username, with the types id, name, class,
+ * tag, css, xpath, link and partialLink
+ * The file is read from -Dlocators.file, otherwise locators.properties on the classpath or in the working directory
+ * Equal locators are interned, so every page that uses the same locator shares one By
+ */
+public final class LocatorCatalog {
+    private static final String FILE = "locators.properties";
+    private static final Map<String, By> interned = new ConcurrentHashMap<>();
+
+    private static volatile LocatorCatalog shared;
+
+    private final Map<String, By> locators;
+
+    private LocatorCatalog(Map<String, By> locators) {
+        this.locators = Collections.unmodifiableMap(locators);
+    }
+
+    /**
+     * Returns the catalog loaded from the default locations, loaded on first use
+     *
+     * @return Shared catalog, empty if there is no locator file
+     *
+     * @throws IllegalArgumentException if a locator in the file cannot be parsed
+     */
+    public static LocatorCatalog getDefault() {
+        if (shared == null) {
+            synchronized (LocatorCatalog.class) {
+                if (shared == null) {
+                    shared = loadDefault();
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Parses a catalog
+     *
+     * @param in Properties in UTF-8
+     *
+     * @return Catalog in key order
+     *
+     * @throws IllegalArgumentException if a locator cannot be parsed, naming every broken key
+     */
+    public static LocatorCatalog load(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+        Map<String, By> locators = new LinkedHashMap<>();
+        StringBuilder errors = new StringBuilder();
+
+        for (Map.Entry<String, String> entry : new TreeMap<>(toMap(properties)).entrySet()) {
+            try {
+                locators.put(entry.getKey(), parse(entry.getValue()));
+            } catch (IllegalArgumentException e) {
+                errors.append("\n  ").append(entry.getKey()).append(": ").append(e.getMessage());
+            }
+        }
+
+        if (errors.length() > 0) {
+            throw new IllegalArgumentException("Broken locators in catalog:" + errors);
+        }
+        return new LocatorCatalog(locators);
+    }
+
+    /**
+     * Parses a single type:value locator, equal locators give the same By instance
+     *
+     * @param spec Locator such as css:#login or xpath://button
+     *
+     * @return Locator
+     *
+     * @throws IllegalArgumentException if the type is unknown, the value is empty or not a valid selector
+     */
+    public static By parse(String spec) {
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Locator '" + spec + "' has no type, use type:value");
+        }
+
+        String type = spec.substring(0, colon).trim();
+        String value = spec.substring(colon + 1).trim();
+
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Locator '" + spec + "' has no value");
+        }
+
+        return interned.computeIfAbsent(type + ":" + value, key -> {
+            checkSyntax(type, value);
+            return create(type, value);
+        });
+    }
+
+    /**
+     * Returns a locator
+     *
+     * @param key Page.name
+     *
+     * @return Locator
+     *
+     * @throws IllegalArgumentException if the catalog has no such locator
+     */
+    public By get(String key) {
+        By locator = locators.get(key);
+        if (locator == null) {
+            throw new IllegalArgumentException("No locator '" + key + "' in catalog");
+        }
+        return locator;
+    }
+
+    /** Every locator by Page.name key, in key order */
+    public Map<String, By> getLocators() {
+        return locators;
+    }
+
+    /** PRIVATE **/
+
+    private static LocatorCatalog loadDefault() {
+        String path = System.getProperty("locators.file");
+
+        try {
+            if (path != null) {
+                try (InputStream in = new FileInputStream(path)) {
+                    return load(in);
+                }
+            }
+
+            InputStream resource = LocatorCatalog.class.getClassLoader().getResourceAsStream(FILE);
+            if (resource != null) {
+                try (InputStream in = resource) {
+                    return load(in);
+                }
+            }
+
+            File file = new File(System.getProperty("user.dir"), FILE);
+            if (file.isFile()) {
+                try (InputStream in = new FileInputStream(file)) {
+                    return load(in);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to read locator catalog. " + e);
+        }
+
+        return new LocatorCatalog(Collections.emptyMap());
+    }
+
+    private static By create(String type, String value) {
+        switch (type) {
+            case "id": return By.id(value);
+            case "name": return By.name(value);
+            case "class": return By.className(value);
+            case "tag": return By.tagName(value);
+            case "css": return By.cssSelector(value);
+            case "xpath": return By.xpath(value);
+            case "link": return By.linkText(value);
+            case "partialLink": return By.partialLinkText(value);
+            default: throw new IllegalArgumentException("Unknown locator type '" + type + "'");
+        }
+    }
+
+    // Selectors are compiled once here, so a syntax error fails at startup and not at the first lookup
+    private static void checkSyntax(String type, String value) {
+        try {
+            if (type.equals("css")) {
+                CssToXPath.translate(value);
+            } else if (type.equals("xpath")) {
+                XPathFactory.newInstance().newXPath().compile(value);
+            }
+        } catch (UnsupportedOperationException e) {
+            // Valid, only not something the offline translation understands
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("Invalid XPath '" + value + "'", e);
+        }
+    }
+
+    private static Map<String, String> toMap(Properties properties) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            map.put(name, properties.getProperty(name));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,208 @@
+package common.metrics;
+
+import common.Core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timeouts learnt from how long each wait took in earlier runs, turned on with -Dtimeouts.adaptive=true
+ * The timeout of a wait is a high percentile of its recent durations plus a margin, never more than the timeout the
+ * page asked for, so a broken locator fails after a few seconds instead of the full budget
+ * Durations are kept per wait and locator in report/timeouts.properties or the file set with -Dtimeouts.file
+ *
+ * -Dtimeouts.percentile=99 percentile of the recent durations
+ * -Dtimeouts.marginMillis=1000 added on top of the percentile
+ * -Dtimeouts.minMillis=2000 shortest timeout ever used
+ * -Dtimeouts.minSamples=20 durations needed before a wait is adapted
+ * -Dtimeouts.samples=200 most recent durations kept per wait
+ */
+public class AdaptiveTimeouts {
+    private static final boolean enabled = Boolean.getBoolean("timeouts.adaptive");
+
+    private static volatile AdaptiveTimeouts shared;
+
+    private final double percentile = Double.parseDouble(System.getProperty("timeouts.percentile", "99"));
+    private final long marginMillis = Long.getLong("timeouts.marginMillis", 1000);
+    private final long minMillis = Long.getLong("timeouts.minMillis", 2000);
+    private final int minSamples = Integer.getInteger("timeouts.minSamples", 20);
+    private final int maxSamples = Math.max(1, Integer.getInteger("timeouts.samples", 200));
+
+    private final File file;
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+    private final Set<String> timedOut = ConcurrentHashMap.newKeySet();
+
+    public AdaptiveTimeouts(File file) {
+        this.file = file;
+        load();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the timeouts shared by all pages, loaded on first use
+     *
+     * @return Shared timeouts
+     */
+    public static AdaptiveTimeouts getDefault() {
+        if (shared == null) {
+            synchronized (AdaptiveTimeouts.class) {
+                if (shared == null) {
+                    shared = new AdaptiveTimeouts(new File(System.getProperty("timeouts.file",
+                            new Core().getFilePath("report", "timeouts.properties"))));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /** true if {@link #getDefault()} has been used, so there is something to save */
+    public static boolean isLoaded() {
+        return shared != null;
+    }
+
+    /**
+     * Returns the timeout to use for a wait
+     *
+     * @param key Wait and locator, for example "visible By.id: login"
+     * @param requestedMillis Timeout the page asked for, the upper limit
+     *
+     * @return Learnt timeout, or the requested one while there are too few durations
+     */
+    public long getTimeoutMillis(String key, long requestedMillis) {
+        Samples s = samples.get(key);
+
+        if (s == null) {
+            return requestedMillis;
+        }
+
+        long learnt = s.getTimeoutMillis();
+        return learnt < 0 ? requestedMillis : Math.min(requestedMillis, Math.max(minMillis, learnt));
+    }
+
+    /**
+     * Records how long a wait took until it was satisfied
+     *
+     * @param key Wait and locator
+     * @param millis Duration
+     */
+    public void record(String key, long millis) {
+        samples.computeIfAbsent(key, k -> new Samples(maxSamples)).add(millis);
+    }
+
+    /**
+     * Records a wait that timed out on a learnt timeout, at most once per wait and run
+     * The timeout counts as a duration, so a page that became slower raises the percentile over the next runs instead of
+     * failing on every run, while waits that are expected to time out, such as checks that something is gone, add one
+     * duration per run at most
+     *
+     * @param key Wait and locator
+     * @param millis Time waited
+     */
+    public void recordTimeout(String key, long millis) {
+        if (timedOut.add(key)) {
+            record(key, millis);
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Samples> entry : new TreeMap<>(samples).entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            properties.store(out, "Recent wait durations in milliseconds, oldest first");
+        }
+    }
+
+    /** PRIVATE **/
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.out.println("Failed to read wait durations '" + file + "'. " + e);
+            return;
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            Samples s = new Samples(maxSamples);
+            for (String value : properties.getProperty(key).trim().split("\\s+")) {
+                try {
+                    s.add(Long.parseLong(value));
+                } catch (NumberFormatException e) {
+                    // Skip broken values, the wait then has one duration less
+                }
+            }
+            samples.put(key, s);
+        }
+    }
+
+    // Ring of the most recent durations of one wait, the timeout is computed again only after a change
+    private class Samples {
+        private final long[] values;
+        private int size;
+        private int next;
+        private long timeout = -1;
+        private boolean changed;
+
+        Samples(int capacity) {
+            values = new long[capacity];
+        }
+
+        synchronized void add(long millis) {
+            values[next] = millis;
+            next = (next + 1) % values.length;
+            size = Math.min(size + 1, values.length);
+            changed = true;
+        }
+
+        synchronized long getTimeoutMillis() {
+            if (changed) {
+                changed = false;
+
+                if (size < minSamples) {
+                    timeout = -1;
+                } else {
+                    long[] sorted = Arrays.copyOf(values, size);
+                    Arrays.sort(sorted);
+                    int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+                    timeout = sorted[Math.max(0, Math.min(size - 1, index))] + marginMillis;
+                }
+            }
+            return timeout;
+        }
+
+        @Override
+        public synchronized String toString() {
+            StringBuilder text = new StringBuilder();
+            int start = size < values.length ? 0 : next;
+
+            for (int i = 0; i < size; i++) {
+                text.append(i > 0 ? " " : "").append(values[(start + i) % values.length]);
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package common.metrics;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The last steps of one thread in a fixed ring, kept so a failing test can show what it did just before it failed
+ * Adding a step only stores into preallocated arrays, nothing is allocated until the steps are formatted
+ * Not thread safe, every thread has its own, see {@link StepRecorder#getRecentSteps()}
+ */
+public class RecentSteps {
+    private final String[] steps;
+    private final Object[] locators;
+    private final long[] endedMillis;
+    private final long[] nanos;
+
+    private int next;
+    private int size;
+
+    /**
+     * @param capacity Number of steps kept, older ones are overwritten
+     */
+    public RecentSteps(int capacity) {
+        steps = new String[capacity];
+        locators = new Object[capacity];
+        endedMillis = new long[capacity];
+        nanos = new long[capacity];
+    }
+
+    /**
+     * Adds a finished step, overwriting the oldest one when the ring is full
+     *
+     * @param step Name of the step
+     * @param locator Locator the step worked on, or null
+     * @param stepNanos Time the step took
+     */
+    public void add(String step, Object locator, long stepNanos) {
+        if (steps.length == 0) {
+            return;
+        }
+
+        steps[next] = step;
+        locators[next] = locator;
+        endedMillis[next] = System.currentTimeMillis();
+        nanos[next] = stepNanos;
+
+        next = (next + 1) % steps.length;
+        size = Math.min(size + 1, steps.length);
+    }
+
+    /** Forgets every step, the arrays are kept */
+    public void clear() {
+        for (int i = 0; i < locators.length; i++) {
+            locators[i] = null;
+        }
+        next = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the steps oldest first, one per line with the time it ended, how long it took, its name and locator
+     *
+     * @return Steps, empty if there are none
+     */
+    public String format() {
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS");
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < size; i++) {
+            int index = (next - size + i + steps.length) % steps.length;
+            text.append(time.format(new Date(endedMillis[index])))
+                    .append(String.format("%10.1f ms  ", nanos[index] / 1e6))
+                    .append(steps[index]);
+            if (locators[index] != null) {
+                text.append("  ").append(locators[index]);
+            }
+            text.append(System.lineSeparator());
+        }
+        return text.toString();
+    }
+}
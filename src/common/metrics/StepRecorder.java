@@ -0,0 +1,151 @@
+package common.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the latency of every page step, tagged by step name, locator and the test running on the current thread
+ * Steps nest, a click waits for its element through another step, only the outermost step of a thread is recorded so
+ * wait time is not counted twice, see {@link #enter()}
+ * Turned off with -Dsteps.record=false
+ * The last -Dsteps.recent=20 outermost steps of each thread are also kept on their own, see {@link #getRecentSteps()}
+ */
+public class StepRecorder {
+    private static final boolean enabled = !"false".equalsIgnoreCase(System.getProperty("steps.record"));
+    // Step, then locator, then test, looked up level by level so recording allocates no key
+    private static final Map<String, Map<Object, Map<String, LatencyHistogram>>> histograms = new ConcurrentHashMap<>();
+    private static final Object NO_LOCATOR = new Object();
+    private static final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private static final ThreadLocal<String> currentTest = new ThreadLocal<>();
+    private static final int recentCapacity = Math.max(0, Integer.getInteger("steps.recent", 20));
+    private static final ThreadLocal<RecentSteps> recent = ThreadLocal.withInitial(() -> new RecentSteps(recentCapacity));
+
+    /**
+     * Tags every step recorded on this thread with a test name until it is changed or cleared
+     * Setting a test also starts its recent steps afresh, clearing it keeps them for a failure report
+     *
+     * @param testName Name of the test, null to clear
+     */
+    public static void setTest(String testName) {
+        if (testName == null) {
+            currentTest.remove();
+        } else {
+            currentTest.set(testName);
+            recent.get().clear();
+        }
+    }
+
+    /**
+     * Returns the last steps recorded on this thread since the current test started
+     *
+     * @return Steps of this thread, oldest first when formatted
+     */
+    public static RecentSteps getRecentSteps() {
+        return recent.get();
+    }
+
+    public static String getTest() {
+        String test = currentTest.get();
+        return test == null ? "" : test;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a step on this thread, every call must be followed by {@link #exit()} when the step ends
+     *
+     * @return true if no other step of this thread is running, only such outermost steps should be recorded
+     */
+    public static boolean enter() {
+        return depth.get()[0]++ == 0;
+    }
+
+    /** Ends the step started with {@link #enter()} */
+    public static void exit() {
+        depth.get()[0]--;
+    }
+
+    /**
+     * Records the time one step took
+     *
+     * @param step Name of the step, usually the BasePage method
+     * @param locator Locator the step worked on, or null
+     * @param nanos Time the step took
+     */
+    public static void record(String step, Object locator, long nanos) {
+        recent.get().add(step, locator, nanos);
+
+        if (!enabled) {
+            return;
+        }
+
+        Map<Object, Map<String, LatencyHistogram>> byLocator = histograms.get(step);
+        if (byLocator == null) {
+            byLocator = histograms.computeIfAbsent(step, k -> new ConcurrentHashMap<>());
+        }
+
+        Object locatorKey = locator == null ? NO_LOCATOR : locator;
+        Map<String, LatencyHistogram> byTest = byLocator.get(locatorKey);
+        if (byTest == null) {
+            byTest = byLocator.computeIfAbsent(locatorKey, k -> new ConcurrentHashMap<>());
+        }
+
+        String test = getTest();
+        LatencyHistogram histogram = byTest.get(test);
+        if (histogram == null) {
+            histogram = byTest.computeIfAbsent(test, k -> new LatencyHistogram());
+        }
+
+        histogram.record(nanos);
+    }
+
+    /**
+     * Returns every step, locator and test combination recorded so far
+     *
+     * @return List of entries in no particular order
+     */
+    public static List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<>();
+
+        for (Map.Entry<String, Map<Object, Map<String, LatencyHistogram>>> step : histograms.entrySet()) {
+            for (Map.Entry<Object, Map<String, LatencyHistogram>> locator : step.getValue().entrySet()) {
+                String name = locator.getKey() == NO_LOCATOR ? "" : locator.getKey().toString();
+                for (Map.Entry<String, LatencyHistogram> test : locator.getValue().entrySet()) {
+                    entries.add(new Entry(step.getKey(), name, test.getKey(), test.getValue()));
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    public static void reset() {
+        histograms.clear();
+    }
+
+    public static class Entry {
+        private final String step;
+        private final String locator;
+        private final String test;
+        private final LatencyHistogram histogram;
+
+        Entry(String step, String locator, String test, LatencyHistogram histogram) {
+            this.step = step;
+            this.locator = locator;
+            this.test = test;
+            this.histogram = histogram;
+        }
+
+        public String getStep() { return step; }
+
+        public String getLocator() { return locator; }
+
+        public String getTest() { return test; }
+
+        public LatencyHistogram getHistogram() { return histogram; }
+    }
+}
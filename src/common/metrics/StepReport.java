@@ -0,0 +1,127 @@
+package common.metrics;
+
+import common.Core;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class StepReport extends Core {
+    private static final String DIRECTORY = "report";
+    private static final int SLOWEST_LOCATORS = 20;
+
+    /**
+     * Writes everything {@link StepRecorder} has collected as a JSON and a CSV file in the report directory
+     * The CSV has one row per step, locator and test, the JSON also lists the slowest locators over all steps
+     *
+     * @param suiteName Name used as prefix of the files
+     *
+     * @return Full filepath of the JSON report
+     */
+    public String write(String suiteName) throws IOException {
+        List<StepRecorder.Entry> entries = StepRecorder.snapshot();
+        entries.sort(Comparator.comparingLong((StepRecorder.Entry e) -> e.getHistogram().getTotalNanos()).reversed());
+
+        String name = suiteName + "_steps_" + getTimestamp();
+        String jsonPath = getFilePath(DIRECTORY, name + ".json");
+
+        writeCsv(getFilePath(DIRECTORY, name + ".csv"), entries);
+        writeJson(jsonPath, suiteName, entries);
+
+        System.out.println("Step report path: " + jsonPath);
+
+        return jsonPath;
+    }
+
+    /** PRIVATE **/
+
+    private void writeCsv(String path, List<StepRecorder.Entry> entries) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            out.println("step,locator,test,count,mean_ms,p50_ms,p95_ms,p99_ms,max_ms,total_ms");
+            for (StepRecorder.Entry entry : entries) {
+                LatencyHistogram h = entry.getHistogram();
+                out.println(csv(entry.getStep()) + "," + csv(entry.getLocator()) + "," + csv(entry.getTest()) + ","
+                        + h.getCount() + "," + number(h.getMeanMillis()) + "," + number(h.getPercentileMillis(50)) + ","
+                        + number(h.getPercentileMillis(95)) + "," + number(h.getPercentileMillis(99)) + ","
+                        + number(h.getMaxNanos() / 1e6) + "," + number(h.getTotalNanos() / 1e6));
+            }
+        }
+    }
+
+    private void writeJson(String path, String suiteName, List<StepRecorder.Entry> entries) throws IOException {
+        // Merge every step and test per locator so the slowest locators stand out
+        Map<String, LatencyHistogram> locators = new LinkedHashMap<>();
+        for (StepRecorder.Entry entry : entries) {
+            if (!entry.getLocator().isEmpty()) {
+                locators.computeIfAbsent(entry.getLocator(), l -> new LatencyHistogram()).add(entry.getHistogram());
+            }
+        }
+        List<Map.Entry<String, LatencyHistogram>> slowest = new ArrayList<>(locators.entrySet());
+        slowest.sort(Comparator.comparingDouble((Map.Entry<String, LatencyHistogram> e) ->
+                e.getValue().getPercentileMillis(95)).reversed());
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.println("  \"suite\": " + json(suiteName) + ",");
+            out.println("  \"slowestLocators\": [");
+            for (int i = 0; i < Math.min(SLOWEST_LOCATORS, slowest.size()); i++) {
+                Map.Entry<String, LatencyHistogram> entry = slowest.get(i);
+                out.print("    {\"locator\": " + json(entry.getKey()) + ", " + stats(entry.getValue()) + "}");
+                out.println(i + 1 < Math.min(SLOWEST_LOCATORS, slowest.size()) ? "," : "");
+            }
+            out.println("  ],");
+            out.println("  \"steps\": [");
+            for (int i = 0; i < entries.size(); i++) {
+                StepRecorder.Entry entry = entries.get(i);
+                out.print("    {\"step\": " + json(entry.getStep()) + ", \"locator\": " + json(entry.getLocator())
+                        + ", \"test\": " + json(entry.getTest()) + ", " + stats(entry.getHistogram()) + "}");
+                out.println(i + 1 < entries.size() ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    private static String stats(LatencyHistogram h) {
+        return "\"count\": " + h.getCount() + ", \"meanMs\": " + number(h.getMeanMillis())
+                + ", \"p50Ms\": " + number(h.getPercentileMillis(50)) + ", \"p95Ms\": " + number(h.getPercentileMillis(95))
+                + ", \"p99Ms\": " + number(h.getPercentileMillis(99)) + ", \"maxMs\": " + number(h.getMaxNanos() / 1e6)
+                + ", \"totalMs\": " + number(h.getTotalNanos() / 1e6);
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String csv(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String json(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
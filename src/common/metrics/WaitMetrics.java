@@ -0,0 +1,69 @@
+package common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count, mean and max time of every kind of wait PageWait runs, with its timeouts and polling fallbacks
+ * Printed after the suite by ParallelCategories
+ */
+public class WaitMetrics {
+    private static final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Records how long one wait took
+     *
+     * @param waitName Kind of wait, for example "visible"
+     * @param nanos Time spent waiting
+     * @param satisfied false if the wait timed out
+     * @param polled true if the wait fell back to polling
+     */
+    public static void record(String waitName, long nanos, boolean satisfied, boolean polled) {
+        Stats s = stats.computeIfAbsent(waitName, name -> new Stats());
+        s.count.increment();
+        s.totalNanos.add(nanos);
+        s.maxNanos.accumulate(nanos);
+        if (!satisfied) {
+            s.timeouts.increment();
+        }
+        if (polled) {
+            s.polled.increment();
+        }
+    }
+
+    public static void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Returns one line per kind of wait with count, mean, max, timeouts and polling fallbacks
+     *
+     * @return Report sorted by wait name
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+
+        for (Map.Entry<String, Stats> entry : new TreeMap<>(stats).entrySet()) {
+            Stats s = entry.getValue();
+            long count = s.count.sum();
+            report.append(String.format("%-12s count=%d mean=%.1fms max=%.1fms timeouts=%d polled=%d%n",
+                    entry.getKey(), count, count == 0 ? 0 : s.totalNanos.sum() / 1e6 / count,
+                    s.maxNanos.get() / 1e6, s.timeouts.sum(), s.polled.sum()));
+        }
+
+        return report.toString();
+    }
+
+    /** PRIVATE **/
+
+    private static class Stats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder polled = new LongAdder();
+    }
+}
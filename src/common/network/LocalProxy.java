@@ -0,0 +1,544 @@
+package common.network;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP proxy on the loopback interface that puts a {@link NetworkProfile} in place for the browsers using it
+ * Plain HTTP requests are blocked, answered from the cache or forwarded, HTTPS is tunnelled with CONNECT and can only be
+ * blocked by host and throttled, the proxy does not decrypt it
+ * Cached responses follow their Cache-Control and Expires headers and are revalidated with ETag or Last-Modified once
+ * stale
+ * Every connection carries one request and is closed after the response, browsers open a new one for the next request
+ */
+public class LocalProxy implements Closeable {
+    private static final Map<NetworkProfile, LocalProxy> started = new ConcurrentHashMap<>();
+    private static final int SOCKET_TIMEOUT_MILLIS = 60000;
+    private static final AtomicInteger threads = new AtomicInteger();
+    private static final Pattern MAX_AGE = Pattern.compile("(?:s-maxage|max-age)\\s*=\\s*(\\d+)");
+    // Stored responses without freshness headers are only served in the run that stored them
+    private static final long RUN_STARTED = System.currentTimeMillis();
+
+    private final NetworkProfile profile;
+    private final ServerSocket server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "local-proxy-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder tunnelled = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+
+    public LocalProxy(NetworkProfile profile) throws IOException {
+        this.profile = profile;
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::accept);
+    }
+
+    /**
+     * Returns the proxy of a profile, started on first use and shared by every session with that profile
+     *
+     * @param profile Network profile
+     *
+     * @return Running proxy
+     */
+    public static LocalProxy forProfile(NetworkProfile profile) {
+        return started.computeIfAbsent(profile, p -> {
+            try {
+                return new LocalProxy(p);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to start local proxy", e);
+            }
+        });
+    }
+
+    /** Every proxy started with {@link #forProfile(NetworkProfile)} */
+    public static Collection<LocalProxy> getStarted() {
+        return started.values();
+    }
+
+    /** Address to give the browser as its HTTP and SSL proxy */
+    public String getAddress() {
+        return server.getInetAddress().getHostAddress() + ":" + server.getLocalPort();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public long getForwarded() { return forwarded.sum(); }
+
+    public long getTunnelled() { return tunnelled.sum(); }
+
+    public long getBlocked() { return blocked.sum(); }
+
+    public long getCacheHits() { return cacheHits.sum(); }
+
+    /** Stale cached responses the server confirmed with 304 Not Modified */
+    public long getRevalidated() { return revalidated.sum(); }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "Local proxy " + getAddress() + ": forwarded=" + getForwarded() + " tunnelled=" + getTunnelled()
+                + " blocked=" + getBlocked() + " cacheHits=" + getCacheHits() + " revalidated=" + getRevalidated();
+    }
+
+    /** PRIVATE **/
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Socket client = server.accept();
+                executor.execute(() -> handle(client));
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try (Socket socket = client) {
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+
+            String requestLine = readLine(in);
+            if (requestLine == null || requestLine.isEmpty()) {
+                return;
+            }
+
+            String[] request = requestLine.split(" ");
+            List<String> headers = readHeaders(in);
+
+            if (request.length < 2) {
+                respond(socket, "400 Bad Request");
+            } else if (request[0].equals("CONNECT")) {
+                tunnel(socket, in, request[1]);
+            } else {
+                forward(socket, in, request[0], request[1], headers);
+            }
+        } catch (IOException e) {
+            // The browser or the server went away, the browser reports the failed request itself
+        }
+    }
+
+    private void forward(Socket client, InputStream in, String method, String url, List<String> headers)
+            throws IOException {
+        if (profile.isBlocked(url)) {
+            blocked.increment();
+            respond(client, "204 No Content");
+            return;
+        }
+
+        long contentLength = 0;
+        boolean chunked = false;
+        for (String header : headers) {
+            String name = headerName(header);
+            if (name.equals("content-length")) {
+                try {
+                    contentLength = Long.parseLong(headerValue(header));
+                } catch (NumberFormatException e) {
+                    respond(client, "400 Bad Request");
+                    return;
+                }
+            } else if (name.equals("transfer-encoding")) {
+                chunked = headerValue(header).toLowerCase(Locale.ROOT).contains("chunked");
+            }
+        }
+
+        boolean cacheable = method.equals("GET") && profile.isCacheable(url);
+        Path cached = cacheable ? cachePath(url) : null;
+        byte[] stored = cached != null && Files.isRegularFile(cached) ? Files.readAllBytes(cached) : null;
+
+        if (stored != null && isFresh(stored, Files.getLastModifiedTime(cached).toMillis())) {
+            cacheHits.increment();
+            send(stored, client.getOutputStream());
+            return;
+        }
+
+        URI uri = URI.create(url);
+        if (uri.getHost() == null) {
+            respond(client, "400 Bad Request");
+            return;
+        }
+
+        delay();
+        forwarded.increment();
+
+        try (Socket server = new Socket(uri.getHost(), uri.getPort() < 0 ? 80 : uri.getPort())) {
+            server.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            OutputStream out = server.getOutputStream();
+
+            StringBuilder head = new StringBuilder();
+            head.append(method).append(' ').append(uri.getRawPath() == null || uri.getRawPath().isEmpty()
+                    ? "/" : uri.getRawPath());
+            if (uri.getRawQuery() != null) {
+                head.append('?').append(uri.getRawQuery());
+            }
+            head.append(" HTTP/1.1\r\n");
+
+            for (String header : headers) {
+                String name = headerName(header);
+                boolean conditional = name.equals("if-none-match") || name.equals("if-modified-since");
+                if (!name.equals("connection") && !name.equals("proxy-connection") && !name.equals("keep-alive")
+                        && !(stored != null && conditional)) {
+                    head.append(header).append("\r\n");
+                }
+            }
+
+            // A stale copy is revalidated with its own validators, the browser gets the full response either way
+            String etag = stored != null ? storedHeader(stored, "etag") : null;
+            String lastModified = stored != null ? storedHeader(stored, "last-modified") : null;
+            if (etag != null) {
+                head.append("If-None-Match: ").append(etag).append("\r\n");
+            }
+            if (lastModified != null) {
+                head.append("If-Modified-Since: ").append(lastModified).append("\r\n");
+            }
+            head.append("Connection: close\r\n\r\n");
+
+            out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (chunked) {
+                copyChunked(in, out);
+            } else {
+                copy(in, out, contentLength, false);
+            }
+            out.flush();
+
+            if (cached == null) {
+                copy(server.getInputStream(), client.getOutputStream(), -1, true);
+                return;
+            }
+
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            copy(server.getInputStream(), response, -1, false);
+            byte[] bytes = response.toByteArray();
+
+            if (stored != null && (etag != null || lastModified != null) && status(bytes) == 304) {
+                // Still current, it counts as fresh from now on
+                Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                revalidated.increment();
+                send(stored, client.getOutputStream());
+                return;
+            }
+
+            if (isCacheable(bytes)) {
+                store(cached, bytes);
+            }
+            send(bytes, client.getOutputStream());
+        }
+    }
+
+    private void tunnel(Socket client, InputStream in, String authority) throws IOException {
+        int colon = authority.lastIndexOf(':');
+        String host = colon < 0 ? authority : authority.substring(0, colon);
+        int port = colon < 0 ? 443 : Integer.parseInt(authority.substring(colon + 1));
+
+        if (profile.isBlocked("https://" + host + "/")) {
+            blocked.increment();
+            respond(client, "403 Forbidden");
+            return;
+        }
+
+        delay();
+        tunnelled.increment();
+
+        try (Socket server = new Socket(host, port)) {
+            client.getOutputStream().write("HTTP/1.1 200 Connection Established\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1));
+            client.getOutputStream().flush();
+
+            // Browser to server on another thread, server to browser on this one, closing either ends both
+            executor.execute(() -> {
+                try {
+                    copy(in, server.getOutputStream(), -1, false);
+                } catch (IOException e) {
+                    // Closed by the other direction
+                } finally {
+                    closeQuietly(server);
+                }
+            });
+            copy(server.getInputStream(), client.getOutputStream(), -1, true);
+        }
+    }
+
+    // Copies a chunked request body as it is, chunk by chunk up to the last chunk and its trailers
+    private void copyChunked(InputStream in, OutputStream out) throws IOException {
+        while (true) {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) {
+                throw new IOException("Chunked request body ended early");
+            }
+            out.write((sizeLine + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+            int extension = sizeLine.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((extension < 0 ? sizeLine : sizeLine.substring(0, extension)).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid chunk size '" + sizeLine + "'", e);
+            }
+
+            if (size == 0) {
+                for (String trailer = readLine(in); trailer != null && !trailer.isEmpty(); trailer = readLine(in)) {
+                    out.write((trailer + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                }
+                out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                return;
+            }
+
+            copy(in, out, size, false);
+            readLine(in);
+            out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    // Copies length bytes, or everything up to the end of the stream when length is negative
+    private void copy(InputStream in, OutputStream out, long length, boolean throttled) throws IOException {
+        byte[] buffer = new byte[16384];
+        long start = System.nanoTime();
+        long total = 0;
+
+        while (length < 0 || total < length) {
+            int n = in.read(buffer, 0, length < 0 ? buffer.length : (int) Math.min(buffer.length, length - total));
+            if (n < 0) {
+                break;
+            }
+
+            out.write(buffer, 0, n);
+            total += n;
+
+            if (throttled) {
+                out.flush();
+                profile.throttle(start, total);
+            }
+        }
+        out.flush();
+    }
+
+    private void send(byte[] response, OutputStream out) throws IOException {
+        if (profile.getBytesPerSecond() <= 0) {
+            out.write(response);
+            out.flush();
+            return;
+        }
+
+        copy(new ByteArrayInputStream(response), out, -1, true);
+    }
+
+    private void delay() {
+        if (profile.getLatencyMillis() <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(profile.getLatencyMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Only complete 200 responses the server allows to be stored
+    private static boolean isCacheable(byte[] response) {
+        int end = indexOf(response, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        if (end < 0) {
+            return false;
+        }
+
+        String head = new String(response, 0, end, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ROOT);
+        return (head.startsWith("http/1.1 200") || head.startsWith("http/1.0 200"))
+                && !head.contains("no-store") && !head.contains("cache-control: private");
+    }
+
+    // Cache-Control max-age or s-maxage, or else Expires, decide how long after it was stored or last revalidated a
+    // response is served without asking the server. One without any of them is only served in the run that stored it,
+    // so a deploy between runs is always seen, and no-cache always asks the server
+    private static boolean isFresh(byte[] response, long storedMillis) {
+        long age = System.currentTimeMillis() - storedMillis;
+        String cacheControl = storedHeader(response, "cache-control");
+
+        if (cacheControl != null) {
+            String directives = cacheControl.toLowerCase(Locale.ROOT);
+            if (directives.contains("no-cache")) {
+                return false;
+            }
+
+            Matcher maxAge = MAX_AGE.matcher(directives);
+            if (maxAge.find()) {
+                return age < Long.parseLong(maxAge.group(1)) * 1000;
+            }
+        }
+
+        String expires = storedHeader(response, "expires");
+        if (expires != null) {
+            try {
+                String date = storedHeader(response, "date");
+                long from = date != null ? parseDate(date) : storedMillis;
+                return age < parseDate(expires) - from;
+            } catch (DateTimeParseException e) {
+                // Invalid dates such as Expires: 0 mean already expired
+                return false;
+            }
+        }
+
+        return storedMillis >= RUN_STARTED;
+    }
+
+    private static long parseDate(String date) {
+        return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+    }
+
+    // Value of a header of a stored response, or null
+    private static String storedHeader(byte[] response, String name) {
+        int end = indexOf(response, "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        String[] lines = new String(response, 0, Math.max(0, end), StandardCharsets.ISO_8859_1).split("\r\n");
+
+        for (int i = 1; i < lines.length; i++) {
+            if (headerName(lines[i]).equals(name)) {
+                return headerValue(lines[i]);
+            }
+        }
+        return null;
+    }
+
+    // Status code of a response, or -1 if it has no valid status line
+    private static int status(byte[] response) {
+        String statusLine = new String(response, 0, Math.min(response.length, 16), StandardCharsets.ISO_8859_1);
+        String[] parts = statusLine.split(" ");
+
+        try {
+            return parts.length > 1 ? Integer.parseInt(parts[1].trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String headerName(String header) {
+        return header.substring(0, Math.max(0, header.indexOf(':'))).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String headerValue(String header) {
+        return header.substring(header.indexOf(':') + 1).trim();
+    }
+
+    // Keyed by -Dnetwork.cacheKey as well as the URL, so environments or builds that share a host can be kept apart
+    private Path cachePath(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest((profile.getCacheKey() + " " + url).getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return Paths.get(profile.getCacheDirectory(), name + ".http");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    // Written next to its place and moved in, so a browser on another session never reads half a response
+    private static void store(Path path, byte[] bytes) {
+        try {
+            Files.createDirectories(path.getParent());
+            Path partial = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".partial");
+            Files.write(partial, bytes);
+            Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("Failed to cache response '" + path + "'. " + e);
+        }
+    }
+
+    private static void respond(Socket client, String status) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private static List<String> readHeaders(InputStream in) throws IOException {
+        List<String> headers = new ArrayList<>();
+
+        for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+            headers.add(line);
+        }
+        return headers;
+    }
+
+    // One header line without its line break, or null at the end of the stream
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString("ISO-8859-1");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString("ISO-8859-1");
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        for (int i = 0; i <= bytes.length - target.length; i++) {
+            int j = 0;
+            while (j < target.length && bytes[i + j] == target[j]) {
+                j++;
+            }
+            if (j == target.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
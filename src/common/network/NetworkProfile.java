@@ -0,0 +1,138 @@
+package common.network;
+
+import common.Core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * What the browser's network should look like in a test session, put in place by {@link LocalProxy}
+ * Requests can be blocked by URL pattern, static assets served from a local cache and the network slowed down
+ */
+public class NetworkProfile {
+    private static final Pattern STATIC_ASSET = Pattern.compile(
+            "(?i)[^?#]*\\.(css|js|mjs|woff2?|ttf|otf|eot|png|jpe?g|gif|svg|webp|ico)([?#].*)?");
+
+    private final List<Pattern> blocked = new ArrayList<>();
+    private String cacheDirectory;
+    private String cacheKey = "";
+    private long latencyMillis;
+    private long bytesPerSecond;
+
+    /**
+     * Reads the profile from system properties
+     * -Dnetwork.block=*google-analytics.com*,*fonts.googleapis.com* URL patterns to block, * matches anything,
+     * -Dnetwork.cache=true to serve static assets from the local cache, -Dnetwork.cacheDir (default "network-cache"),
+     * -Dnetwork.cacheKey to keep the cached assets of environments or builds on the same host apart,
+     * -Dnetwork.latencyMillis added to every request, -Dnetwork.kbps to limit the bandwidth of every connection
+     *
+     * @return Network profile
+     */
+    public static NetworkProfile fromSystemProperties() {
+        NetworkProfile profile = new NetworkProfile();
+
+        for (String pattern : System.getProperty("network.block", "").split(",")) {
+            if (!pattern.trim().isEmpty()) {
+                profile.block(pattern.trim());
+            }
+        }
+        if (Boolean.getBoolean("network.cache")) {
+            profile.setCacheDirectory(new Core().getFilePath(System.getProperty("network.cacheDir", "network-cache"), ""))
+                    .setCacheKey(System.getProperty("network.cacheKey", ""));
+        }
+
+        return profile
+                .setLatencyMillis(Long.getLong("network.latencyMillis", 0))
+                .setBytesPerSecond(Long.getLong("network.kbps", 0) * 1024 / 8);
+    }
+
+    /**
+     * Blocks every request whose URL matches a pattern, the browser gets an empty response at once
+     * HTTPS requests are matched on scheme and host only, https://host/, the rest of the URL is encrypted
+     *
+     * @param pattern URL pattern where * matches anything, for example *doubleclick.net*
+     *
+     * @return This profile
+     */
+    public NetworkProfile block(String pattern) {
+        StringJoiner regex = new StringJoiner(".*");
+        for (String part : pattern.split("\\*", -1)) {
+            regex.add(Pattern.quote(part));
+        }
+        blocked.add(Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE));
+        return this;
+    }
+
+    public boolean isBlocked(String url) {
+        for (Pattern pattern : blocked) {
+            if (pattern.matcher(url).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** true for plain HTTP requests of stylesheets, scripts, fonts and images when the cache is on */
+    public boolean isCacheable(String url) {
+        return cacheDirectory != null && STATIC_ASSET.matcher(url).matches();
+    }
+
+    public String getCacheDirectory() { return cacheDirectory; }
+
+    public NetworkProfile setCacheDirectory(String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+        return this;
+    }
+
+    public String getCacheKey() { return cacheKey; }
+
+    public NetworkProfile setCacheKey(String cacheKey) {
+        this.cacheKey = cacheKey;
+        return this;
+    }
+
+    public long getLatencyMillis() { return latencyMillis; }
+
+    public NetworkProfile setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    public long getBytesPerSecond() { return bytesPerSecond; }
+
+    public NetworkProfile setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+        return this;
+    }
+
+    /** true if anything differs from the plain network, so a proxy is needed */
+    public boolean isActive() {
+        return !blocked.isEmpty() || cacheDirectory != null || latencyMillis > 0 || bytesPerSecond > 0;
+    }
+
+    /**
+     * Sleeps long enough to keep a connection at the profile's bandwidth
+     *
+     * @param startNanos When the connection started sending
+     * @param bytes Bytes sent so far
+     */
+    void throttle(long startNanos, long bytes) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+
+        long due = startNanos + bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        long wait = due - System.nanoTime();
+
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package common.runners;
+
+import common.Core;
+import common.enums.Browser;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lines up the results of the same test on the same browser across the environments of a matrix run
+ * A test is flagged RESULT when its status differs between environments, and TIMING when the slowest passing run took
+ * -Dmatrix.slowerBy times as long as the fastest (default 1.5) and at least -Dmatrix.slowerMillis more (default 1000)
+ */
+public class EnvironmentComparison {
+    private static final String DIRECTORY = "report";
+
+    private final List<String> environments;
+    private final Map<String, RunContext.Target> targets = new HashMap<>();
+    private final Map<String, Map<String, TestResults.Result>> rows = new TreeMap<>();
+    private final double slowerBy = Double.parseDouble(System.getProperty("matrix.slowerBy", "1.5"));
+    private final long slowerMillis = Long.getLong("matrix.slowerMillis", 1000);
+
+    EnvironmentComparison(List<RunContext.Target> targets) {
+        List<String> names = new ArrayList<>();
+
+        for (RunContext.Target target : targets) {
+            this.targets.put(target.label, target);
+            if (!names.contains(target.environment)) {
+                names.add(target.environment);
+            }
+        }
+        this.environments = names;
+    }
+
+    /**
+     * Adds the results of a run, tests that were not fanned out have nothing to compare and are left out
+     *
+     * @param results Results of every target
+     */
+    public void addAll(List<TestResults.Result> results) {
+        for (TestResults.Result result : results) {
+            String label = FanOut.targetOf(result.getTest());
+            RunContext.Target target = label == null ? null : targets.get(label);
+
+            if (target != null) {
+                rows.computeIfAbsent(key(FanOut.testOf(result.getTest()), target.browser), k -> new HashMap<>())
+                        .put(target.environment, result);
+            }
+        }
+    }
+
+    /**
+     * Returns one line per flagged test and browser
+     *
+     * @return Lines such as "RESULT  Login#testLogin[CHROME] STAGING=PASSED LOCAL=FAILED"
+     */
+    public List<String> getDifferences() {
+        List<String> differences = new ArrayList<>();
+
+        for (Map.Entry<String, Map<String, TestResults.Result>> row : rows.entrySet()) {
+            String flag = flag(row.getValue());
+            if (flag.isEmpty()) {
+                continue;
+            }
+
+            StringBuilder line = new StringBuilder(String.format("%-7s %s", flag, row.getKey()));
+            for (Map.Entry<String, TestResults.Result> cell : cells(row.getValue()).entrySet()) {
+                TestResults.Result result = cell.getValue();
+                line.append(' ').append(cell.getKey()).append('=')
+                        .append(result == null ? "-" : result.getStatus() + "/" + result.getDurationMillis() + "ms");
+            }
+            differences.add(line.toString());
+        }
+        return differences;
+    }
+
+    /**
+     * Writes one line per test and browser with the status and duration in every environment to the report directory
+     *
+     * @param name File name without extension
+     *
+     * @return Full filepath of the file
+     */
+    public String write(String name) throws IOException {
+        String path = new Core().getFilePath(DIRECTORY, name + ".csv");
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            StringBuilder header = new StringBuilder("test,browser");
+            for (String environment : environments) {
+                header.append(',').append(environment).append("_status,").append(environment).append("_ms");
+            }
+            out.println(header.append(",difference"));
+
+            for (Map.Entry<String, Map<String, TestResults.Result>> row : rows.entrySet()) {
+                int bracket = row.getKey().lastIndexOf('[');
+                StringBuilder line = new StringBuilder(row.getKey().substring(0, bracket)).append(',')
+                        .append(row.getKey(), bracket + 1, row.getKey().length() - 1);
+
+                for (TestResults.Result result : cells(row.getValue()).values()) {
+                    line.append(',').append(result == null ? "" : result.getStatus())
+                            .append(',').append(result == null ? "" : result.getDurationMillis());
+                }
+                out.println(line.append(',').append(flag(row.getValue())));
+            }
+        }
+        return path;
+    }
+
+    /** PRIVATE **/
+
+    private static String key(String test, Browser browser) {
+        return test + "[" + browser + "]";
+    }
+
+    // Results in the order of the environments, null where the test did not run
+    private Map<String, TestResults.Result> cells(Map<String, TestResults.Result> row) {
+        Map<String, TestResults.Result> cells = new LinkedHashMap<>();
+
+        for (String environment : environments) {
+            cells.put(environment, row.get(environment));
+        }
+        return cells;
+    }
+
+    private String flag(Map<String, TestResults.Result> row) {
+        TestResults.Status status = null;
+        boolean sameResult = row.size() == environments.size();
+        long fastest = Long.MAX_VALUE;
+        long slowest = -1;
+
+        for (TestResults.Result result : row.values()) {
+            if (status != null && status != result.getStatus()) {
+                sameResult = false;
+            }
+            status = result.getStatus();
+
+            if (result.getStatus() == TestResults.Status.PASSED) {
+                fastest = Math.min(fastest, result.getDurationMillis());
+                slowest = Math.max(slowest, result.getDurationMillis());
+            }
+        }
+
+        if (!sameResult) {
+            return "RESULT";
+        }
+        if (slowest >= 0 && slowest - fastest >= slowerMillis && slowest >= fastest * slowerBy) {
+            return "TIMING";
+        }
+        return "";
+    }
+}
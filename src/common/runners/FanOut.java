@@ -0,0 +1,203 @@
+package common.runners;
+
+import org.junit.AssumptionViolatedException;
+import org.junit.runner.RunWith;
+import org.junit.runner.Runner;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.Suite;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+import org.junit.runners.model.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a suite once per browser and environment of {@link RunContext}, so every test runs on each of them
+ * Test names get the target appended, testLogin[FIREFOX], testLogin[PRODUCTION] or testLogin[FIREFOX@PRODUCTION],
+ * which keeps results and durations apart per target
+ * Classes with their own @RunWith are not fanned out, they run once under the first target
+ * Every test class runner also reruns failed tests up to -Dretry.attempts times and records them in the
+ * {@link FlakinessHistory} when it is enabled, also without fan-out
+ */
+final class FanOut {
+    private FanOut() {}
+
+    /**
+     * Wraps the builder of a suite
+     *
+     * @param builder Builder JUnit gave the suite
+     *
+     * @return Builder that returns one {@link TargetSuite} per target, or the test class runners with a single target
+     */
+    static RunnerBuilder builder(RunnerBuilder builder) {
+        return new RunnerBuilder() {
+            @Override
+            public Runner runnerForClass(Class<?> testClass) throws Throwable {
+                return builder.runnerForClass(testClass);
+            }
+
+            @Override
+            public List<Runner> runners(Class<?> parent, Class<?>[] children) throws InitializationError {
+                List<RunContext.Target> targets = RunContext.getTargets();
+
+                if (targets.size() < 2) {
+                    return classRunners(children, null, true);
+                }
+
+                List<Runner> suites = new ArrayList<>();
+                for (RunContext.Target target : targets) {
+                    suites.add(new TargetSuite(parent, classRunners(children, target, suites.isEmpty()), target));
+                }
+                return suites;
+            }
+
+            private List<Runner> classRunners(Class<?>[] children, RunContext.Target target, boolean first)
+                    throws InitializationError {
+                List<Runner> runners = new ArrayList<>();
+
+                for (Class<?> child : children) {
+                    if (!child.isAnnotationPresent(RunWith.class)) {
+                        runners.add(new TargetClassRunner(child, target));
+                    } else if (first) {
+                        runners.add(builder.safeRunnerForClass(child));
+                    }
+                }
+                return runners;
+            }
+        };
+    }
+
+    /**
+     * Returns the target label of a test
+     *
+     * @param test Test id from {@link TestResults#getTestId}
+     *
+     * @return Label such as FIREFOX or CHROME@STAGING, or null for a test that was not fanned out
+     */
+    static String targetOf(String test) {
+        int start = test.lastIndexOf('[');
+
+        if (start < 0 || !test.endsWith("]")) {
+            return null;
+        }
+        return test.substring(start + 1, test.length() - 1);
+    }
+
+    /**
+     * Returns a test id without its target
+     *
+     * @param test Test id from {@link TestResults#getTestId}
+     *
+     * @return Test id of the test as it is declared
+     */
+    static String testOf(String test) {
+        int start = test.lastIndexOf('[');
+        return start < 0 || !test.endsWith("]") ? test : test.substring(0, start);
+    }
+
+    /** All test classes of a suite for one target */
+    static class TargetSuite extends Suite {
+        private final RunContext.Target target;
+
+        TargetSuite(Class<?> suite, List<Runner> runners, RunContext.Target target) throws InitializationError {
+            super(suite, runners);
+            this.target = target;
+        }
+
+        RunContext.Target getTarget() {
+            return target;
+        }
+
+        List<Runner> getClassRunners() {
+            return getChildren();
+        }
+
+        // Method(Class) form, so the description still names the suite class, which category filtering needs
+        @Override
+        protected String getName() {
+            return target + "(" + getTestClass().getName() + ")";
+        }
+    }
+
+    /**
+     * Test class run on one target, the target is set on the worker thread for the whole test
+     * A failed test is run again on the same worker with a new test instance, so its @Before leases a new session
+     */
+    static class TargetClassRunner extends BlockJUnit4ClassRunner {
+        private final RunContext.Target target;
+
+        /**
+         * @param testClass Test class
+         * @param target Target, or null when the run has a single target and the test names stay as they are
+         */
+        TargetClassRunner(Class<?> testClass, RunContext.Target target) throws InitializationError {
+            super(testClass);
+            this.target = target;
+        }
+
+        @Override
+        protected String testName(FrameworkMethod method) {
+            return target == null ? method.getName() : method.getName() + "[" + target + "]";
+        }
+
+        @Override
+        protected Statement methodBlock(FrameworkMethod method) {
+            String test = TestResults.getTestId(describeChild(method));
+
+            return new Statement() {
+                @Override
+                public void evaluate() throws Throwable {
+                    RunContext.setTarget(target);
+                    ImpactIndex.setTest(getTestClass().getName());
+                    try {
+                        attempt(method, test);
+                    } finally {
+                        RunContext.setTarget(null);
+                        RunContext.setAttempt(1);
+                        ImpactIndex.setTest(null);
+                    }
+                }
+            };
+        }
+
+        /** PRIVATE **/
+
+        private void attempt(FrameworkMethod method, String test) throws Throwable {
+            if (!FlakinessHistory.isEnabled()) {
+                super.methodBlock(method).evaluate();
+                return;
+            }
+
+            FlakinessHistory history = FlakinessHistory.getDefault();
+            int attempts = FlakinessHistory.attempts();
+            Throwable failure = null;
+
+            for (int attempt = 1; attempt <= attempts; attempt++) {
+                RunContext.setAttempt(attempt);
+                try {
+                    super.methodBlock(method).evaluate();
+                    history.record(test, attempt - 1, true);
+                    return;
+                } catch (org.junit.internal.AssumptionViolatedException e) {
+                    throw e;
+                } catch (Throwable t) {
+                    failure = t;
+                    if (attempt < attempts) {
+                        System.out.println("Rerunning " + test + ", attempt " + attempt + " failed. " + t);
+                    }
+                }
+            }
+
+            // Decided from the earlier runs only, so the failure of a stable test is never hidden on the run it starts
+            boolean quarantined = history.isQuarantined(test);
+            history.record(test, attempts, false);
+            if (quarantined) {
+                history.addQuarantined(test);
+                throw new AssumptionViolatedException("Quarantined flaky test failed. " + failure, failure);
+            }
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package common.runners;
+
+import common.Core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Flakiness score per test, kept in report/flakiness.properties or the file set with -Dflakiness.file
+ * A run counts as flaky only when the test failed and then passed on a rerun, a test that fails in one run and passes
+ * in the next may just have been broken and fixed
+ * The score is a moving average of those runs, 0 for a test that never needed a rerun and towards 1 for a test that
+ * needs one every run, older runs fade out so a fixed test leaves quarantine by itself
+ * The history is only kept when it is used, with -Dretry.attempts above 1, -Dflaky.quarantine or -Dflaky.first
+ *
+ * -Dflaky.quarantine=0.3 tests at or above this score still run, but a failure is reported as skipped, and only once
+ *                        the test was flaky in at least -Dflaky.minRuns=3 runs, one unlucky run never hides a failure
+ * -Dflaky.first=true runs the tests with the highest score first, so their reruns do not stretch the end of the run
+ */
+public class FlakinessHistory {
+    // Well below any sensible quarantine threshold, four flaky runs in a row are needed to reach 0.3
+    private static final double WEIGHT = 0.1;
+
+    private static volatile FlakinessHistory shared;
+
+    private final File file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<String> quarantined = new ArrayList<>();
+
+    public FlakinessHistory(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the history shared by all runners, loaded on first use
+     *
+     * @return Shared history
+     */
+    public static FlakinessHistory getDefault() {
+        if (shared == null) {
+            synchronized (FlakinessHistory.class) {
+                if (shared == null) {
+                    shared = new FlakinessHistory(new File(System.getProperty("flakiness.file",
+                            new Core().getFilePath("report", "flakiness.properties"))));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /** true if {@link #getDefault()} has been used, so there is something to save */
+    public static boolean isLoaded() {
+        return shared != null;
+    }
+
+    /**
+     * Tells if the history is used in this run, without reruns or quarantine there is nothing to record
+     *
+     * @return true with -Dretry.attempts above 1, -Dflaky.quarantine or -Dflaky.first set
+     */
+    public static boolean isEnabled() {
+        return attempts() > 1 || System.getProperty("flaky.quarantine") != null || Boolean.getBoolean("flaky.first");
+    }
+
+    /**
+     * Returns how many times a test is run before its failure is reported
+     *
+     * @return Attempts from -Dretry.attempts, at least 1
+     */
+    public static int attempts() {
+        return Math.max(1, Integer.getInteger("retry.attempts", 1));
+    }
+
+    /**
+     * Returns the flakiness score of a test
+     *
+     * @param test Test id from {@link TestResults#getTestId}
+     *
+     * @return Score between 0 and 1, 0 for a test without history
+     */
+    public double getScore(String test) {
+        Entry entry = entries.get(test);
+        return entry != null ? entry.score : 0;
+    }
+
+    /**
+     * Tells if the failure of a test should be reported as skipped
+     *
+     * @param test Test id from {@link TestResults#getTestId}
+     *
+     * @return true if -Dflaky.quarantine is set, the score of the test reaches it and the test was flaky in at least
+     *         -Dflaky.minRuns runs, call it before {@link #record} so the outcome of the current run does not count
+     */
+    public boolean isQuarantined(String test) {
+        String threshold = System.getProperty("flaky.quarantine");
+        Entry entry = entries.get(test);
+
+        return threshold != null && entry != null && entry.flakyRuns >= Integer.getInteger("flaky.minRuns", 3)
+                && entry.score >= Double.parseDouble(threshold);
+    }
+
+    /**
+     * Records the outcome of a test in this run
+     *
+     * @param test Test id from {@link TestResults#getTestId}
+     * @param failures Attempts that failed
+     * @param passed true if the last attempt passed
+     */
+    public void record(String test, int failures, boolean passed) {
+        entries.compute(test, (t, previous) -> {
+            Entry entry = previous != null ? previous : new Entry();
+            // Only a pass after a failed attempt of the same run, a failing run may be a regression and its fix
+            boolean flaky = passed && failures > 0;
+
+            entry.score = entry.score * (1 - WEIGHT) + (flaky ? WEIGHT : 0);
+            entry.passed = passed;
+            entry.runs++;
+            if (flaky) {
+                entry.flakyRuns++;
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Remembers a quarantined test that failed, so it is listed after the run
+     *
+     * @param test Test id from {@link TestResults#getTestId}
+     */
+    public synchronized void addQuarantined(String test) {
+        quarantined.add(test);
+    }
+
+    public synchronized List<String> getQuarantined() {
+        return new ArrayList<>(quarantined);
+    }
+
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            properties.setProperty(entry.getKey(), entry.getValue().toString());
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            properties.store(out, "Flakiness score, outcome of the last run, runs and flaky runs per test");
+        }
+    }
+
+    /** PRIVATE **/
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.out.println("Failed to read flakiness history '" + file + "'. " + e);
+            return;
+        }
+
+        for (String test : properties.stringPropertyNames()) {
+            String[] parts = properties.getProperty(test).split(",");
+            try {
+                Entry entry = new Entry();
+                entry.score = Double.parseDouble(parts[0].trim());
+                entry.passed = parts.length < 2 || parts[1].trim().equals("PASSED");
+                entry.runs = parts.length < 3 ? 1 : Integer.parseInt(parts[2].trim());
+                entry.flakyRuns = parts.length < 4 ? 0 : Integer.parseInt(parts[3].trim());
+                entries.put(test, entry);
+            } catch (NumberFormatException e) {
+                // Skip broken lines, the test then starts without history
+            }
+        }
+    }
+
+    private static class Entry {
+        double score;
+        boolean passed;
+        int runs;
+        int flakyRuns;
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.3f,%s,%d,%d", score, passed ? "PASSED" : "FAILED", runs, flakyRuns);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package common.runners;
+
+import common.locators.LocatorCatalog;
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+import org.openqa.selenium.By;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Keeps the test classes a set of changes can affect according to the {@link ImpactIndex}
+ * A change is a file path as printed by git diff --name-only, a page class name such as LoginPage, a locator such as
+ * "By.id: login" or a key of the locator catalog such as LoginPage.username
+ * Changed page modules and test classes select the tests that use them, changes the index cannot place, such as the
+ * common package, BasePage or a build file, select every test, and so do test classes the index has never seen
+ * Documentation changes (.md and .txt) select nothing
+ */
+class ImpactFilter extends Filter {
+    private final ImpactIndex index;
+    private final Set<String> changed;
+    private final Set<String> pages = new HashSet<>();
+    private final Set<String> locators = new HashSet<>();
+    private final Set<String> testClasses = new HashSet<>();
+    private boolean everything;
+
+    ImpactFilter(ImpactIndex index, Set<String> changed) {
+        this.index = index;
+        this.changed = changed;
+
+        Set<String> knownPages = new HashSet<>();
+        for (String testClass : index.getTestClasses()) {
+            knownPages.addAll(index.getPages(testClass));
+        }
+
+        for (String change : changed) {
+            classify(change.replace('\\', '/'), knownPages);
+        }
+    }
+
+    /**
+     * Tells if the changes make every test run
+     *
+     * @return true if one of the changes cannot be traced to single pages or tests
+     */
+    boolean isEverything() {
+        return everything;
+    }
+
+    @Override
+    public boolean shouldRun(Description description) {
+        if (description.isTest()) {
+            return isAffected(description.getClassName());
+        }
+
+        for (Description child : description.getChildren()) {
+            if (shouldRun(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        return "tests affected by " + changed;
+    }
+
+    /** PRIVATE **/
+
+    private boolean isAffected(String testClass) {
+        if (everything || !index.contains(testClass)) {
+            return true;
+        }
+        if (testClasses.contains(testClass.substring(testClass.lastIndexOf('.') + 1))) {
+            return true;
+        }
+        return !Collections.disjoint(pages, index.getPages(testClass))
+                || !Collections.disjoint(locators, index.getLocators(testClass));
+    }
+
+    private void classify(String change, Set<String> knownPages) {
+        if (change.endsWith(".md") || change.endsWith(".txt")) {
+            return;
+        }
+
+        if (change.contains("/") || change.endsWith(".java") || change.endsWith(".properties")) {
+            classifyFile(change, knownPages);
+        } else if (change.startsWith("By.")) {
+            locators.add(change);
+        } else if (change.contains(".")) {
+            By locator = LocatorCatalog.getDefault().getLocators().get(change);
+            if (locator != null) {
+                locators.add(locator.toString());
+            } else {
+                everything = true;
+            }
+        } else {
+            pages.add(change);
+        }
+    }
+
+    private void classifyFile(String path, Set<String> knownPages) {
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        String type = name.endsWith(".java") ? name.substring(0, name.length() - ".java".length()) : null;
+        if (type != null && path.contains("modules/") && knownPages.contains(type)) {
+            pages.add(type);
+        } else if (type != null && path.contains("tests/") && !path.contains("tests/priority/")
+                && !type.equals("BaseTest")) {
+            testClasses.add(type);
+        } else {
+            everything = true;
+        }
+    }
+}
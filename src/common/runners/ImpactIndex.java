@@ -0,0 +1,220 @@
+package common.runners;
+
+import common.Core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Page classes and locators each test class used in earlier runs, kept in report/impact.properties or the file set
+ * with -Dimpact.file
+ * Recorded while the tests run, every page object created and every page step adds to the test class on the current
+ * thread, turned off with -Dimpact.record=false
+ * Runs only add to the index, so a dependency a test dropped stays until the file is deleted, which makes a selection
+ * run a test too many rather than one too few
+ */
+public class ImpactIndex {
+    private static final boolean enabled = !"false".equalsIgnoreCase(System.getProperty("impact.record"));
+    private static final String SEPARATOR = "\t";
+    private static final ThreadLocal<String> currentTest = new ThreadLocal<>();
+
+    private static volatile ImpactIndex shared;
+
+    private final File file;
+    private final Map<String, Set<String>> pages = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> locators = new ConcurrentHashMap<>();
+
+    public ImpactIndex(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the index shared by all runners, loaded on first use
+     *
+     * @return Shared index
+     */
+    public static ImpactIndex getDefault() {
+        if (shared == null) {
+            synchronized (ImpactIndex.class) {
+                if (shared == null) {
+                    shared = new ImpactIndex(new File(System.getProperty("impact.file",
+                            new Core().getFilePath("report", "impact.properties"))));
+                }
+            }
+        }
+        return shared;
+    }
+
+    /** true if {@link #getDefault()} has been used, so there is something to save */
+    public static boolean isLoaded() {
+        return shared != null;
+    }
+
+    /**
+     * Records the page classes of a page object for the test class running on this thread
+     * Every class between the page class and the given base class counts, a change to a shared parent page affects
+     * every test that uses one of its children
+     *
+     * @param page Class of the page object
+     * @param base Class the page classes extend, not recorded itself
+     */
+    public static void recordPage(Class<?> page, Class<?> base) {
+        String test = currentTest.get();
+        if (!enabled || test == null) {
+            return;
+        }
+
+        Set<String> used = getDefault().pages.computeIfAbsent(test, t -> ConcurrentHashMap.newKeySet());
+        for (Class<?> type = page; type != null && type != base; type = type.getSuperclass()) {
+            used.add(type.getSimpleName());
+        }
+    }
+
+    /**
+     * Records a locator for the test class running on this thread
+     *
+     * @param locator Locator, or null
+     */
+    public static void recordLocator(Object locator) {
+        String test = currentTest.get();
+        if (!enabled || test == null || locator == null) {
+            return;
+        }
+
+        getDefault().locators.computeIfAbsent(test, t -> ConcurrentHashMap.newKeySet()).add(locator.toString());
+    }
+
+    /**
+     * Returns the changes to select tests for
+     *
+     * @return Changed files, page classes or locators from -Dimpact.changed=A,B and the lines of -Dimpact.changedFile,
+     *         or null if neither is set and every test should run
+     */
+    public static Set<String> getChanged() {
+        String list = System.getProperty("impact.changed");
+        String path = System.getProperty("impact.changedFile");
+
+        if (list == null && path == null) {
+            return null;
+        }
+
+        Set<String> changed = new TreeSet<>();
+        if (list != null) {
+            for (String item : list.split(",")) {
+                if (!item.trim().isEmpty()) {
+                    changed.add(item.trim());
+                }
+            }
+        }
+        if (path != null) {
+            try {
+                for (String line : Files.readAllLines(new File(path).toPath())) {
+                    if (!line.trim().isEmpty()) {
+                        changed.add(line.trim());
+                    }
+                }
+            } catch (IOException e) {
+                // Without the list of changes nothing can be left out
+                System.out.println("Failed to read changed files '" + path + "', running every test. " + e);
+                return null;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Tells if a test class has been recorded
+     *
+     * @param testClass Full class name of the test
+     *
+     * @return true if the index knows the pages or locators of the class
+     */
+    public boolean contains(String testClass) {
+        return pages.containsKey(testClass) || locators.containsKey(testClass);
+    }
+
+    public Set<String> getTestClasses() {
+        Set<String> testClasses = new TreeSet<>(pages.keySet());
+        testClasses.addAll(locators.keySet());
+        return testClasses;
+    }
+
+    public Set<String> getPages(String testClass) {
+        return pages.getOrDefault(testClass, Collections.emptySet());
+    }
+
+    public Set<String> getLocators(String testClass) {
+        return locators.getOrDefault(testClass, Collections.emptySet());
+    }
+
+    public void save() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Set<String>> entry : pages.entrySet()) {
+            properties.setProperty(entry.getKey() + ".pages", String.join(SEPARATOR, new TreeSet<>(entry.getValue())));
+        }
+        for (Map.Entry<String, Set<String>> entry : locators.entrySet()) {
+            properties.setProperty(entry.getKey() + ".locators",
+                    String.join(SEPARATOR, new TreeSet<>(entry.getValue())));
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            properties.store(out, "Page classes and locators used per test class, separated by tabs");
+        }
+    }
+
+    /**
+     * Sets the test class that page objects and steps on this thread are recorded for
+     *
+     * @param testClass Full class name of the test, null to clear
+     */
+    static void setTest(String testClass) {
+        if (testClass == null) {
+            currentTest.remove();
+        } else {
+            currentTest.set(testClass);
+        }
+    }
+
+    /** PRIVATE **/
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.out.println("Failed to read impact index '" + file + "'. " + e);
+            return;
+        }
+
+        for (String key : properties.stringPropertyNames()) {
+            int dot = key.lastIndexOf('.');
+            Map<String, Set<String>> target = key.endsWith(".pages") ? pages : key.endsWith(".locators") ? locators : null;
+
+            if (target != null && dot > 0) {
+                Set<String> values = ConcurrentHashMap.newKeySet();
+                values.addAll(Arrays.asList(properties.getProperty(key).split(SEPARATOR)));
+                values.remove("");
+                target.put(key.substring(0, dot), values);
+            }
+        }
+    }
+}
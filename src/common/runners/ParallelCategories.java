@@ -0,0 +1,358 @@
+package common.runners;
+
+import common.Core;
+import common.artifacts.ArtifactWriter;
+import common.artifacts.ScreenshotStore;
+import common.metrics.AdaptiveTimeouts;
+import common.metrics.StepRecorder;
+import common.metrics.StepReport;
+import common.metrics.WaitMetrics;
+import common.network.LocalProxy;
+import org.junit.experimental.categories.Categories;
+import org.junit.runner.Description;
+import org.junit.runner.Runner;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runner.notification.RunNotifier;
+import org.junit.runners.ParentRunner;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a category suite like {@link Categories} but spreads the test methods over a number of worker threads
+ * The worker count is set with -Dworkers=N and defaults to 1, which runs the suite one test after another
+ * With -Dshard=INDEX/COUNT and -Dshard.run=ID only that shard of the suite runs, planned from the durations of earlier
+ * runs
+ * With -Dimpact.changed or -Dimpact.changedFile only the tests the changes can affect run, see {@link ImpactFilter}
+ * Failed tests are rerun with -Dretry.attempts=N, flaky tests can be quarantined or run first, see {@link FlakinessHistory}
+ * After the suite the test results, test durations and a step timing report are written to the report directory, a
+ * sharded run leaves the durations to {@link ShardResults}, and the time spent per kind of wait is printed
+ */
+public class ParallelCategories extends Categories {
+    private ExecutorService classExecutor;
+    private final List<ExecutorService> methodExecutors = new ArrayList<>();
+    private String shardName = "";
+
+    public ParallelCategories(Class<?> klass, RunnerBuilder builder) throws InitializationError {
+        super(klass, FanOut.builder(builder));
+
+        Set<String> changed = ImpactIndex.getChanged();
+        if (changed != null) {
+            applyImpact(changed);
+        }
+
+        int[] shard = ShardPlanner.fromSystemProperties();
+
+        if (shard != null) {
+            applyShard(shard[0], shard[1]);
+        }
+        if (Boolean.getBoolean("flaky.first")) {
+            sort(new Sorter(ParallelCategories::byFlakiness));
+        }
+
+        int workers = workers();
+        boolean fanOut = RunContext.getTargets().size() > 1;
+
+        if (workers > 1 || fanOut) {
+            // Classes only wait for their methods, so they get their own threads and cannot starve the workers
+            classExecutor = Executors.newCachedThreadPool(threadFactory(klass.getSimpleName() + "-class"));
+            setScheduler(new ParallelScheduler(classExecutor));
+
+            if (fanOut) {
+                // Every target has its own workers and its own driver pool, the targets run side by side
+                for (Runner child : getChildren()) {
+                    FanOut.TargetSuite suite = (FanOut.TargetSuite) child;
+                    suite.setScheduler(new ParallelScheduler(classExecutor));
+                    scheduleMethods(suite.getClassRunners(), newMethodExecutor(klass.getSimpleName() + "-"
+                            + suite.getTarget().label.toLowerCase() + "-worker", workers));
+                }
+            } else {
+                scheduleMethods(getChildren(), newMethodExecutor(klass.getSimpleName() + "-worker", workers));
+            }
+        }
+    }
+
+    @Override
+    public void run(RunNotifier notifier) {
+        TestResults results = new TestResults();
+        notifier.addListener(results);
+        StepRecorder.reset();
+        WaitMetrics.reset();
+
+        try {
+            super.run(notifier);
+        } finally {
+            notifier.removeListener(results);
+            if (classExecutor != null) {
+                classExecutor.shutdown();
+                methodExecutors.forEach(ExecutorService::shutdown);
+            }
+            writeResults(results);
+            writeStepReport();
+            printWaitReport();
+
+            // Queued screenshots, failure captures and manifest lines are written before the JVM can exit, then the
+            // backpressure of the writer, dropped artifacts mean the queue or the workers should grow
+            ArtifactWriter artifacts = ArtifactWriter.getDefault();
+            if (artifacts.getSubmitted() > 0) {
+                artifacts.drain();
+                System.out.println(artifacts);
+            }
+            for (LocalProxy proxy : LocalProxy.getStarted()) {
+                System.out.println(proxy);
+            }
+            evictScreenshots();
+            saveTimeouts();
+            saveFlakiness();
+            saveImpact();
+        }
+    }
+
+    /**
+     * Returns the number of tests that may run at the same time, which is also the size of each driver pool
+     *
+     * @return Worker count from -Dworkers, at least 1
+     */
+    public static int workers() {
+        return Math.max(1, Integer.getInteger("workers", 1));
+    }
+
+    /** PRIVATE **/
+
+    private ExecutorService newMethodExecutor(String prefix, int workers) {
+        ExecutorService executor = Executors.newFixedThreadPool(workers, threadFactory(prefix));
+        methodExecutors.add(executor);
+        return executor;
+    }
+
+    private static void scheduleMethods(List<Runner> classRunners, ExecutorService executor) {
+        for (Runner child : classRunners) {
+            if (child instanceof ParentRunner) {
+                ((ParentRunner<?>) child).setScheduler(new ParallelScheduler(executor));
+            }
+        }
+    }
+
+    private void applyImpact(Set<String> changed) {
+        List<String> before = new ArrayList<>();
+        collectTests(getDescription(), before);
+
+        ImpactFilter impact = new ImpactFilter(ImpactIndex.getDefault(), changed);
+        if (impact.isEverything()) {
+            System.out.println("Impact: running every test, the changes are not limited to pages and tests " + changed);
+            return;
+        }
+
+        try {
+            filter(impact);
+        } catch (NoTestsRemainException e) {
+            // None of the changes touches a test of this suite
+        }
+
+        List<String> after = new ArrayList<>();
+        collectTests(getDescription(), after);
+        System.out.println("Impact: running " + after.size() + " of " + before.size() + " tests for " + changed);
+    }
+
+    private void applyShard(int index, int count) {
+        List<String> tests = new ArrayList<>();
+        collectTests(getDescription(), tests);
+
+        Map<String, Integer> plan = new ShardPlanner(new TestDurations()).plan(tests, count);
+        shardName = "_shard-" + index + "-of-" + count + "_run-" + ShardPlanner.runId();
+
+        try {
+            filter(new ShardFilter(plan, index, count));
+        } catch (NoTestsRemainException e) {
+            // More shards than tests, this shard simply has nothing to run
+        }
+    }
+
+    // Most flaky first, a class counts as flaky as its flakiest test
+    private static int byFlakiness(Description d1, Description d2) {
+        return Double.compare(flakiness(d2), flakiness(d1));
+    }
+
+    private static double flakiness(Description description) {
+        if (description.isTest()) {
+            return FlakinessHistory.getDefault().getScore(TestResults.getTestId(description));
+        }
+
+        double max = 0;
+        for (Description child : description.getChildren()) {
+            max = Math.max(max, flakiness(child));
+        }
+        return max;
+    }
+
+    private static void collectTests(Description description, List<String> tests) {
+        if (description.isTest()) {
+            tests.add(TestResults.getTestId(description));
+        }
+        for (Description child : description.getChildren()) {
+            collectTests(child, tests);
+        }
+    }
+
+    private void writeResults(TestResults results) {
+        try {
+            results.write("results_" + getTestClass().getJavaClass().getSimpleName() + shardName);
+            writeTargetResults(results);
+            compareEnvironments(results);
+
+            // A shard only saw its own tests, saving them here would give every machine different durations and so
+            // a different plan, sharded durations are saved once by ShardResults after the merge
+            if (shardName.isEmpty()) {
+                TestDurations durations = new TestDurations();
+                durations.recordAll(results.getResults());
+                durations.save();
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to write test results. " + e);
+        }
+    }
+
+    // With more than one target, the results of each target in their own file under report/targets and one summary
+    // line per target
+    private void writeTargetResults(TestResults results) throws IOException {
+        if (RunContext.getTargets().size() < 2) {
+            return;
+        }
+
+        Map<String, List<TestResults.Result>> byTarget = new TreeMap<>();
+        for (TestResults.Result result : results.getResults()) {
+            String target = FanOut.targetOf(result.getTest());
+            if (target != null) {
+                byTarget.computeIfAbsent(target, t -> new ArrayList<>()).add(result);
+            }
+        }
+
+        for (Map.Entry<String, List<TestResults.Result>> entry : byTarget.entrySet()) {
+            // Own directory, so merging the shard results does not count fanned out tests twice
+            TestResults.write(new Core().getFilePath("report" + File.separator + "targets", "results_"
+                    + getTestClass().getJavaClass().getSimpleName() + shardName + "_" + entry.getKey() + ".csv"),
+                    entry.getValue());
+
+            Map<TestResults.Status, Integer> counts = new EnumMap<>(TestResults.Status.class);
+            long millis = 0;
+            for (TestResults.Result result : entry.getValue()) {
+                counts.merge(result.getStatus(), 1, Integer::sum);
+                millis += result.getDurationMillis();
+            }
+            System.out.println(String.format("%-18s passed=%d failed=%d skipped=%d testTime=%.1fs", entry.getKey(),
+                    counts.getOrDefault(TestResults.Status.PASSED, 0), counts.getOrDefault(TestResults.Status.FAILED, 0),
+                    counts.getOrDefault(TestResults.Status.SKIPPED, 0), millis / 1000.0));
+        }
+    }
+
+    // With more than one environment, the tests whose result or time differs between them
+    private void compareEnvironments(TestResults results) throws IOException {
+        if (RunContext.getEnvironments().size() < 2) {
+            return;
+        }
+
+        EnvironmentComparison comparison = new EnvironmentComparison(RunContext.getTargets());
+        comparison.addAll(results.getResults());
+        comparison.write("compare_" + getTestClass().getJavaClass().getSimpleName() + shardName);
+
+        for (String difference : comparison.getDifferences()) {
+            System.out.println(difference);
+        }
+    }
+
+    private void writeStepReport() {
+        if (!StepRecorder.isEnabled()) {
+            return;
+        }
+
+        try {
+            new StepReport().write(getTestClass().getJavaClass().getSimpleName());
+        } catch (IOException e) {
+            System.out.println("Failed to write step report. " + e);
+        }
+    }
+
+    private static void printWaitReport() {
+        String report = WaitMetrics.report();
+
+        if (!report.isEmpty()) {
+            System.out.print("Waits:" + System.lineSeparator() + report);
+        }
+    }
+
+    private void evictScreenshots() {
+        if (!ScreenshotStore.isLoaded()) {
+            return;
+        }
+
+        try {
+            ScreenshotStore.getDefault().evict();
+        } catch (IOException e) {
+            System.out.println("Failed to evict old screenshots. " + e);
+        }
+    }
+
+    private void saveTimeouts() {
+        if (!AdaptiveTimeouts.isLoaded()) {
+            return;
+        }
+
+        try {
+            AdaptiveTimeouts.getDefault().save();
+        } catch (IOException e) {
+            System.out.println("Failed to save wait durations. " + e);
+        }
+    }
+
+    private void saveFlakiness() {
+        if (!FlakinessHistory.isLoaded()) {
+            return;
+        }
+
+        FlakinessHistory history = FlakinessHistory.getDefault();
+        for (String test : history.getQuarantined()) {
+            System.out.println("Quarantined flaky test failed: " + test);
+        }
+
+        try {
+            history.save();
+        } catch (IOException e) {
+            System.out.println("Failed to save flakiness history. " + e);
+        }
+    }
+
+    private void saveImpact() {
+        if (!ImpactIndex.isLoaded()) {
+            return;
+        }
+
+        try {
+            ImpactIndex.getDefault().save();
+        } catch (IOException e) {
+            System.out.println("Failed to save impact index. " + e);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,37 @@
+package common.runners;
+
+import org.junit.runners.model.RunnerScheduler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+class ParallelScheduler implements RunnerScheduler {
+    private final ExecutorService executor;
+    private final Queue<Future<?>> tasks = new ConcurrentLinkedQueue<>();
+
+    ParallelScheduler(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void schedule(Runnable childStatement) {
+        tasks.add(executor.submit(childStatement));
+    }
+
+    @Override
+    public void finished() {
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+}
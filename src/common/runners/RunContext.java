@@ -0,0 +1,162 @@
+package common.runners;
+
+import common.enums.Browser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Browser and environment the current test runs on, set per worker thread by the fan-out runner and read by the tests
+ * when they start their session
+ * -Dbrowser picks the browser of a plain run (default CHROME, SNAPSHOT runs offline against the saved pages),
+ * -Dbrowsers=CHROME,FIREFOX runs every test on each of the listed browsers at the same time
+ * -Denvironment picks the environment of a plain run (default STAGING), -Denvironments=STAGING,LOCAL runs every test
+ * against each of the listed environments at the same time, see {@link common.EnvironmentProfile}
+ */
+public final class RunContext {
+    private static final ThreadLocal<Target> target = new ThreadLocal<>();
+    private static final ThreadLocal<Integer> attempt = ThreadLocal.withInitial(() -> 1);
+
+    private RunContext() {}
+
+    /**
+     * Returns the browser of the test running on this thread
+     *
+     * @return Browser set by the fan-out runner, otherwise the one from -Dbrowser
+     */
+    public static Browser getBrowser() {
+        Target current = target.get();
+        return current != null ? current.browser : getDefaultBrowser();
+    }
+
+    /**
+     * Returns the environment of the test running on this thread
+     *
+     * @return Environment name set by the fan-out runner, otherwise the one from -Denvironment
+     */
+    public static String getEnvironment() {
+        Target current = target.get();
+        return current != null ? current.environment : getDefaultEnvironment();
+    }
+
+    /**
+     * Returns the attempt of the test running on this thread, see {@link FlakinessHistory#attempts()}
+     *
+     * @return 1 for the first run, higher for a rerun after a failure
+     */
+    public static int getAttempt() {
+        return attempt.get();
+    }
+
+    public static Browser getDefaultBrowser() {
+        return Browser.valueOf(System.getProperty("browser", "CHROME").trim().toUpperCase());
+    }
+
+    public static String getDefaultEnvironment() {
+        return System.getProperty("environment", "STAGING").trim();
+    }
+
+    /**
+     * Returns the browsers to fan every test out to
+     *
+     * @return Browsers from -Dbrowsers, or only the default browser
+     */
+    public static List<Browser> getBrowsers() {
+        List<Browser> browsers = new ArrayList<>();
+
+        for (String name : list("browsers")) {
+            Browser b = Browser.valueOf(name.toUpperCase());
+            if (!browsers.contains(b)) {
+                browsers.add(b);
+            }
+        }
+
+        if (browsers.isEmpty()) {
+            browsers.add(getDefaultBrowser());
+        }
+        return browsers;
+    }
+
+    /**
+     * Returns the environments to fan every test out to
+     *
+     * @return Environment names from -Denvironments, or only the default environment
+     */
+    public static List<String> getEnvironments() {
+        List<String> environments = new ArrayList<>();
+
+        for (String name : list("environments")) {
+            if (!environments.contains(name)) {
+                environments.add(name);
+            }
+        }
+
+        if (environments.isEmpty()) {
+            environments.add(getDefaultEnvironment());
+        }
+        return environments;
+    }
+
+    /**
+     * Returns every browser and environment combination to run each test on
+     *
+     * @return Targets, a single one without fan-out
+     */
+    static List<Target> getTargets() {
+        List<Browser> browsers = getBrowsers();
+        List<String> environments = getEnvironments();
+        List<Target> targets = new ArrayList<>();
+
+        for (Browser b : browsers) {
+            for (String environment : environments) {
+                String label = environments.size() < 2 ? b.name()
+                        : browsers.size() < 2 ? environment : b + "@" + environment;
+                targets.add(new Target(b, environment, label));
+            }
+        }
+        return targets;
+    }
+
+    static void setTarget(Target t) {
+        if (t == null) {
+            target.remove();
+        } else {
+            target.set(t);
+        }
+    }
+
+    static void setAttempt(int a) {
+        attempt.set(a);
+    }
+
+    /** PRIVATE **/
+
+    private static List<String> list(String property) {
+        List<String> values = new ArrayList<>();
+
+        for (String value : System.getProperty(property, "").split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    /** One browser and environment, labelled by the parts that differ between the targets of the run */
+    static final class Target {
+        final Browser browser;
+        final String environment;
+        final String label;
+
+        Target(Browser browser, String environment, String label) {
+            this.browser = browser;
+            this.environment = environment;
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package common.runners;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+
+import java.util.Map;
+
+class ShardFilter extends Filter {
+    private final Map<String, Integer> plan;
+    private final int index;
+    private final int count;
+
+    ShardFilter(Map<String, Integer> plan, int index, int count) {
+        this.plan = plan;
+        this.index = index;
+        this.count = count;
+    }
+
+    @Override
+    public boolean shouldRun(Description description) {
+        if (description.isTest()) {
+            Integer shard = plan.get(TestResults.getTestId(description));
+            return shard != null && shard == index;
+        }
+
+        for (Description child : description.getChildren()) {
+            if (shouldRun(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String describe() {
+        return "shard " + index + " of " + count;
+    }
+}
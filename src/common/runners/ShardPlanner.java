@@ -0,0 +1,100 @@
+package common.runners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Splits tests into shards of about the same total duration with longest processing time first scheduling
+ * Every machine plans the same way from the same durations, so each one can pick its own shard without talking to
+ * the others
+ * All machines must therefore read the same durations file, for example one checked out with the sources or copied
+ * from the last merge and given with -Ddurations.file. Sharded runs do not save durations themselves, only
+ * {@link ShardResults} does after merging all shards
+ */
+public class ShardPlanner {
+    private final TestDurations durations;
+
+    public ShardPlanner(TestDurations durations) {
+        this.durations = durations;
+    }
+
+    /**
+     * Assigns every test to a shard
+     *
+     * @param tests Test ids from {@link TestResults#getTestId}
+     * @param shardCount Number of shards
+     *
+     * @return Shard index (1 - shardCount) per test
+     */
+    public Map<String, Integer> plan(List<String> tests, int shardCount) {
+        List<String> sorted = new ArrayList<>(tests);
+        // Longest first, names break ties so every machine gets the same plan
+        sorted.sort((t1, t2) -> {
+            int byDuration = Long.compare(durations.get(t2), durations.get(t1));
+            return byDuration != 0 ? byDuration : t1.compareTo(t2);
+        });
+
+        // Shard with the least planned time first, lowest index on ties
+        PriorityQueue<long[]> shards = new PriorityQueue<>((s1, s2) ->
+                s1[0] != s2[0] ? Long.compare(s1[0], s2[0]) : Long.compare(s1[1], s2[1]));
+        for (int i = 1; i <= shardCount; i++) {
+            shards.add(new long[] { 0, i });
+        }
+
+        Map<String, Integer> plan = new HashMap<>();
+        for (String test : sorted) {
+            long[] shard = shards.poll();
+            plan.put(test, (int) shard[1]);
+            shard[0] += durations.get(test);
+            shards.add(shard);
+        }
+
+        return plan;
+    }
+
+    /**
+     * Reads the shard to run from -Dshard=INDEX/COUNT, for example -Dshard=3/8, together with -Dshard.run
+     *
+     * @return Index and count, or null if the run is not sharded
+     */
+    public static int[] fromSystemProperties() {
+        String shard = System.getProperty("shard");
+
+        if (shard == null || !shard.matches("\\d+/\\d+")) {
+            return null;
+        }
+
+        String[] parts = shard.split("/");
+        int index = Integer.parseInt(parts[0]);
+        int count = Integer.parseInt(parts[1]);
+
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard must be INDEX/COUNT with 1 <= INDEX <= COUNT, was " + shard);
+        }
+
+        return new int[] { index, count };
+    }
+
+    /**
+     * Reads the id of the sharded run from -Dshard.run, for example the build number of the CI job
+     * Every machine of a run must get the same id, it is part of the shard result file names so
+     * {@link ShardResults} merges only the files of one run
+     *
+     * @return Run id with only letters, digits, dots, underscores and dashes
+     *
+     * @throws IllegalArgumentException if the run is sharded and -Dshard.run is not set
+     */
+    public static String runId() {
+        String run = System.getProperty("shard.run", "").trim();
+
+        if (run.isEmpty()) {
+            throw new IllegalArgumentException("Sharded runs need -Dshard.run=ID, the same on every machine of the run,"
+                    + " for example the CI build number");
+        }
+
+        return run.replaceAll("[^A-Za-z0-9._-]+", "_");
+    }
+}
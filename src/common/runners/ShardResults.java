@@ -0,0 +1,137 @@
+package common.runners;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Merges the result files of all shards of one run into one report
+ * Usage: java common.runners.ShardResults [report directory] [run id]
+ * The run id is the -Dshard.run the shards ran with, by default that of the most recently written shard file
+ * Every suite of the run is merged, RunAll for example leaves shard files of RunHigh, RunMedium and RunLow, while files
+ * of earlier runs are left out so they cannot stand in for a shard that is missing from this one
+ */
+public class ShardResults {
+    public static final String MERGED = "results_merged.csv";
+
+    // results_<Suite>_shard-<index>-of-<count>_run-<id>.csv as written by ParallelCategories
+    private static final Pattern SHARD_FILE =
+            Pattern.compile("results_(.+)_shard-(\\d+)-of-(\\d+)_run-([A-Za-z0-9._-]+)\\.csv");
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "report");
+        List<TestResults.Result> results = merge(dir, args.length > 1 ? args[1] : null);
+
+        int failed = 0;
+        for (TestResults.Result result : results) {
+            if (result.getStatus() == TestResults.Status.FAILED) {
+                failed++;
+            }
+        }
+
+        System.out.println("Merged " + results.size() + " tests, " + failed + " failed: "
+                + new File(dir, MERGED).getAbsolutePath());
+
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the shard result files of one run, writes them as one results_merged.csv and updates the stored test
+     * durations with the measured times
+     * This is the only place the durations of a sharded run are saved, see {@link ShardPlanner}
+     *
+     * @param dir Directory with the shard result files
+     * @param run Run id from -Dshard.run, null for the run of the most recently written shard file
+     *
+     * @return Results of all suites of the run
+     */
+    public static List<TestResults.Result> merge(File dir, String run) throws IOException {
+        File[] files = dir.listFiles((d, name) -> SHARD_FILE.matcher(name).matches());
+        List<TestResults.Result> results = new ArrayList<>();
+
+        if (files == null || files.length == 0) {
+            System.out.println("No shard result files in '" + dir + "'");
+            return results;
+        }
+
+        if (run == null) {
+            File newest = files[0];
+            for (File file : files) {
+                if (file.lastModified() > newest.lastModified()) {
+                    newest = file;
+                }
+            }
+            run = match(newest).group(4);
+        }
+
+        // Shard files of the run per suite, shard index to file
+        Map<String, Map<Integer, File>> suites = new TreeMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (File file : files) {
+            Matcher matcher = match(file);
+            if (!matcher.group(4).equals(run)) {
+                continue;
+            }
+
+            String suite = matcher.group(1);
+            int count = Integer.parseInt(matcher.group(3));
+            Integer known = counts.putIfAbsent(suite, count);
+            if (known != null && known != count) {
+                System.out.println("Shard files of " + suite + " in run " + run + " disagree on the shard count");
+                counts.put(suite, Math.max(known, count));
+            }
+            suites.computeIfAbsent(suite, k -> new TreeMap<>()).put(Integer.parseInt(matcher.group(2)), file);
+        }
+
+        if (suites.isEmpty()) {
+            System.out.println("No shard result files of run '" + run + "' in '" + dir + "'");
+            return results;
+        }
+
+        for (Map.Entry<String, Map<Integer, File>> suite : suites.entrySet()) {
+            int count = counts.get(suite.getKey());
+            Set<Integer> missing = new TreeSet<>();
+
+            for (int i = 1; i <= count; i++) {
+                File file = suite.getValue().get(i);
+                if (file == null) {
+                    missing.add(i);
+                } else {
+                    results.addAll(TestResults.read(file.getPath()));
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                System.out.println("Missing results of " + suite.getKey() + " shards " + missing + " of " + count
+                        + " in run " + run);
+            }
+        }
+
+        System.out.println("Merged suites " + suites.keySet() + " of run " + run);
+        TestResults.write(new File(dir, MERGED).getPath(), results);
+
+        TestDurations durations = new TestDurations();
+        durations.recordAll(results);
+        durations.save();
+
+        return results;
+    }
+
+    /** PRIVATE **/
+
+    private static Matcher match(File file) {
+        Matcher matcher = SHARD_FILE.matcher(file.getName());
+        matcher.matches();
+        return matcher;
+    }
+}
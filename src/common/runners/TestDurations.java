@@ -0,0 +1,110 @@
+package common.runners;
+
+import common.Core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Durations of earlier runs per test, kept in report/durations.properties or the file set with -Ddurations.file
+ * New measurements are averaged with the stored value so one slow run does not move a test around too much
+ */
+public class TestDurations {
+    private static final long DEFAULT_MILLIS = 10000;
+
+    private final File file;
+    private final Map<String, Long> durations = new HashMap<>();
+
+    public TestDurations() {
+        this(new File(System.getProperty("durations.file", new Core().getFilePath("report", "durations.properties"))));
+    }
+
+    public TestDurations(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the expected duration of a test
+     * Tests that never ran get the mean of the known tests, so new tests are spread out instead of piled together
+     *
+     * @param test Test id from {@link TestResults#getTestId}
+     *
+     * @return Expected duration in milliseconds
+     */
+    public synchronized long get(String test) {
+        Long millis = durations.get(test);
+        return millis != null ? millis : mean();
+    }
+
+    public synchronized void record(String test, long millis) {
+        Long previous = durations.get(test);
+        durations.put(test, previous == null ? millis : (previous + millis) / 2);
+    }
+
+    public synchronized void recordAll(Collection<TestResults.Result> results) {
+        for (TestResults.Result result : results) {
+            if (result.getStatus() != TestResults.Status.SKIPPED) {
+                record(result.getTest(), result.getDurationMillis());
+            }
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Long> entry : durations.entrySet()) {
+            properties.setProperty(entry.getKey(), Long.toString(entry.getValue()));
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            properties.store(out, "Test durations in milliseconds");
+        }
+    }
+
+    /** PRIVATE **/
+
+    private long mean() {
+        if (durations.isEmpty()) {
+            return DEFAULT_MILLIS;
+        }
+
+        long total = 0;
+        for (long millis : durations.values()) {
+            total += millis;
+        }
+        return total / durations.size();
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.out.println("Failed to read test durations '" + file + "'. " + e);
+            return;
+        }
+
+        for (String test : properties.stringPropertyNames()) {
+            try {
+                durations.put(test, Long.parseLong(properties.getProperty(test).trim()));
+            } catch (NumberFormatException e) {
+                // Skip broken lines, the test is then planned with the mean duration
+            }
+        }
+    }
+}
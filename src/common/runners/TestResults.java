@@ -0,0 +1,160 @@
+package common.runners;
+
+import common.Core;
+import org.junit.runner.Description;
+import org.junit.runner.notification.Failure;
+import org.junit.runner.notification.RunListener;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Listens to a suite run and keeps the outcome and duration of every test
+ */
+@RunListener.ThreadSafe
+public class TestResults extends RunListener {
+    private static final String DIRECTORY = "report";
+
+    private final Map<String, Long> started = new ConcurrentHashMap<>();
+    private final Map<String, Result> results = new ConcurrentHashMap<>();
+
+    public static String getTestId(Description description) {
+        return description.getClassName() + "#" + description.getMethodName();
+    }
+
+    @Override
+    public void testStarted(Description description) {
+        started.put(getTestId(description), System.nanoTime());
+        results.put(getTestId(description), new Result(getTestId(description), Status.PASSED));
+    }
+
+    @Override
+    public void testFailure(Failure failure) {
+        update(failure.getDescription(), Status.FAILED, failure.getMessage());
+    }
+
+    @Override
+    public void testAssumptionFailure(Failure failure) {
+        update(failure.getDescription(), Status.SKIPPED, failure.getMessage());
+    }
+
+    @Override
+    public void testIgnored(Description description) {
+        results.put(getTestId(description), new Result(getTestId(description), Status.SKIPPED));
+    }
+
+    @Override
+    public void testFinished(Description description) {
+        Long start = started.remove(getTestId(description));
+        Result result = results.get(getTestId(description));
+
+        if (start != null && result != null) {
+            result.durationMillis = (System.nanoTime() - start) / 1000000;
+        }
+    }
+
+    public List<Result> getResults() {
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * Writes one line per test to a CSV file in the report directory
+     *
+     * @param name File name without extension
+     *
+     * @return Full filepath of the file
+     */
+    public String write(String name) throws IOException {
+        String path = new Core().getFilePath(DIRECTORY, name + ".csv");
+        write(path, getResults());
+        return path;
+    }
+
+    static void write(String path, List<Result> results) throws IOException {
+        results.sort((r1, r2) -> r1.test.compareTo(r2.test));
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+            out.println("test,status,duration_ms,message");
+            for (Result result : results) {
+                out.println(result.toCsv());
+            }
+        }
+    }
+
+    static List<Result> read(String path) throws IOException {
+        List<Result> results = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+
+        for (int i = 1; i < lines.size(); i++) {
+            Result result = Result.fromCsv(lines.get(i));
+            if (result != null) {
+                results.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    public enum Status {
+        PASSED,
+        FAILED,
+        SKIPPED
+    }
+
+    public static class Result {
+        private final String test;
+        private volatile Status status;
+        private volatile long durationMillis;
+        private volatile String message;
+
+        Result(String test, Status status) {
+            this.test = test;
+            this.status = status;
+        }
+
+        public String getTest() { return test; }
+
+        public Status getStatus() { return status; }
+
+        public long getDurationMillis() { return durationMillis; }
+
+        public String getMessage() { return message; }
+
+        String toCsv() {
+            String text = message == null ? "" : message.replace("\r", " ").replace("\n", " ").replace("\"", "\"\"");
+            return test + "," + status + "," + durationMillis + ",\"" + text + "\"";
+        }
+
+        static Result fromCsv(String line) {
+            String[] parts = line.split(",", 4);
+            if (parts.length < 3) {
+                return null;
+            }
+
+            Result result = new Result(parts[0], Status.valueOf(parts[1]));
+            result.durationMillis = Long.parseLong(parts[2]);
+
+            if (parts.length == 4 && parts[3].length() >= 2) {
+                String text = parts[3].substring(1, parts[3].length() - 1).replace("\"\"", "\"");
+                result.message = text.isEmpty() ? null : text;
+            }
+
+            return result;
+        }
+    }
+
+    /** PRIVATE **/
+
+    private void update(Description description, Status status, String message) {
+        Result result = results.computeIfAbsent(getTestId(description), id -> new Result(id, status));
+        result.status = status;
+        result.message = message;
+    }
+}
@@ -0,0 +1,307 @@
+package common.snapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Translates CSS selectors to XPath so they can be evaluated against a parsed snapshot
+ * Supports type, universal, id, class and attribute selectors (=, ~=, |=, ^=, $=, *=), the four combinators,
+ * selector groups, :first-child, :last-child, :only-child, :nth-child(n) and :not() of a simple selector
+ * Other pseudo classes depend on browser state and throw {@link UnsupportedOperationException}
+ */
+public final class CssToXPath {
+    private final String css;
+    private int position;
+
+    private CssToXPath(String css) {
+        this.css = css.trim();
+    }
+
+    /**
+     * Translates a selector
+     *
+     * @param css CSS selector
+     *
+     * @return Equivalent XPath expression, selecting from the document root
+     *
+     * @throws IllegalArgumentException if the selector is not valid CSS
+     * @throws UnsupportedOperationException if the selector needs the browser, such as :hover or :checked
+     */
+    public static String translate(String css) {
+        return new CssToXPath(css).selectorGroup();
+    }
+
+    /**
+     * Quotes a string as an XPath literal, with concat() when it holds both kinds of quote
+     *
+     * @param value Value
+     *
+     * @return XPath literal
+     */
+    public static String literal(String value) {
+        if (value.indexOf('\'') < 0) {
+            return "'" + value + "'";
+        }
+        if (value.indexOf('"') < 0) {
+            return "\"" + value + "\"";
+        }
+        return "concat('" + value.replace("'", "', \"'\", '") + "')";
+    }
+
+    /** PRIVATE **/
+
+    private String selectorGroup() {
+        List<String> selectors = new ArrayList<>();
+
+        do {
+            selectors.add(selector());
+            skipWhitespace();
+        } while (accept(','));
+
+        if (position < css.length()) {
+            throw invalid("unexpected '" + css.charAt(position) + "'");
+        }
+        return String.join(" | ", selectors);
+    }
+
+    private String selector() {
+        skipWhitespace();
+        StringBuilder xpath = new StringBuilder("//");
+        xpath.append(compound(false));
+
+        while (true) {
+            boolean whitespace = skipWhitespace();
+
+            if (position >= css.length() || peek() == ',') {
+                return xpath.toString();
+            }
+
+            char c = peek();
+            if (c == '>') {
+                position++;
+                skipWhitespace();
+                xpath.append('/').append(compound(false));
+            } else if (c == '+') {
+                position++;
+                skipWhitespace();
+                xpath.append("/following-sibling::*[1]").append(compound(true));
+            } else if (c == '~') {
+                position++;
+                skipWhitespace();
+                xpath.append("/following-sibling::").append(compound(false));
+            } else if (whitespace) {
+                xpath.append("//").append(compound(false));
+            } else {
+                throw invalid("unexpected '" + c + "'");
+            }
+        }
+    }
+
+    // Type selector and its conditions, as a name test with predicates or, after '+', as predicates on '*'
+    private String compound(boolean predicatesOnly) {
+        String tag = "*";
+        StringBuilder predicates = new StringBuilder();
+        boolean any = true;
+
+        if (accept('*')) {
+            tag = "*";
+        } else if (isNameStart(peek())) {
+            tag = identifier().toLowerCase(Locale.ROOT);
+        } else {
+            any = false;
+        }
+
+        while (true) {
+            char c = peek();
+            if (c == '#') {
+                position++;
+                predicates.append("[@id=").append(literal(identifier())).append(']');
+            } else if (c == '.') {
+                position++;
+                predicates.append(hasWord("@class", identifier()));
+            } else if (c == '[') {
+                position++;
+                predicates.append(attribute());
+            } else if (c == ':') {
+                position++;
+                predicates.append(pseudo());
+            } else {
+                break;
+            }
+            any = true;
+        }
+
+        if (!any) {
+            throw invalid(position < css.length() ? "unexpected '" + peek() + "'" : "selector expected");
+        }
+
+        if (predicatesOnly) {
+            return ("*".equals(tag) ? "" : "[self::" + tag + "]") + predicates;
+        }
+        return tag + predicates;
+    }
+
+    private String attribute() {
+        skipWhitespace();
+        String name = identifier().toLowerCase(Locale.ROOT);
+        skipWhitespace();
+
+        if (accept(']')) {
+            return "[@" + name + "]";
+        }
+
+        String operator;
+        char c = peek();
+        if (c == '=') {
+            operator = "=";
+            position++;
+        } else if (c != 0 && "~|^$*".indexOf(c) >= 0 && css.startsWith("=", position + 1)) {
+            operator = c + "=";
+            position += 2;
+        } else {
+            throw invalid("attribute operator expected");
+        }
+
+        skipWhitespace();
+        String value = peek() == '"' || peek() == '\'' ? string() : identifier();
+        skipWhitespace();
+
+        // Case insensitivity flag
+        if (peek() == 'i' || peek() == 'I') {
+            throw new UnsupportedOperationException("Case insensitive attribute selectors are not supported: " + css);
+        }
+        expect(']');
+
+        String attr = "@" + name;
+        String lit = literal(value);
+
+        switch (operator) {
+            case "=":
+                return "[" + attr + "=" + lit + "]";
+            case "~=":
+                return hasWord(attr, value);
+            case "|=":
+                return "[" + attr + "=" + lit + " or starts-with(" + attr + ", " + literal(value + "-") + ")]";
+            case "^=":
+                return "[starts-with(" + attr + ", " + lit + ")]";
+            case "$=":
+                return "[substring(" + attr + ", string-length(" + attr + ") - string-length(" + lit + ") + 1) = "
+                        + lit + "]";
+            default:
+                return "[contains(" + attr + ", " + lit + ")]";
+        }
+    }
+
+    private String pseudo() {
+        String name = identifier().toLowerCase(Locale.ROOT);
+
+        switch (name) {
+            case "first-child":
+                return "[not(preceding-sibling::*)]";
+            case "last-child":
+                return "[not(following-sibling::*)]";
+            case "only-child":
+                return "[not(preceding-sibling::*) and not(following-sibling::*)]";
+            case "nth-child": {
+                expect('(');
+                skipWhitespace();
+                int start = position;
+                while (Character.isDigit(peek())) {
+                    position++;
+                }
+                if (start == position) {
+                    throw new UnsupportedOperationException("Only :nth-child(n) with a number is supported: " + css);
+                }
+                int n = Integer.parseInt(css.substring(start, position));
+                skipWhitespace();
+                expect(')');
+                return "[count(preceding-sibling::*) = " + (n - 1) + "]";
+            }
+            case "not": {
+                expect('(');
+                skipWhitespace();
+                String inner = compound(false);
+                skipWhitespace();
+                expect(')');
+                return "[not(self::" + inner + ")]";
+            }
+            default:
+                throw new UnsupportedOperationException("Pseudo class :" + name + " needs a browser: " + css);
+        }
+    }
+
+    private static String hasWord(String attr, String word) {
+        return "[contains(concat(' ', normalize-space(" + attr + "), ' '), " + literal(" " + word + " ") + ")]";
+    }
+
+    private String identifier() {
+        StringBuilder name = new StringBuilder();
+
+        while (position < css.length()) {
+            char c = peek();
+            if (c == '\\' && position + 1 < css.length()) {
+                name.append(css.charAt(position + 1));
+                position += 2;
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '_' || c > 127) {
+                name.append(c);
+                position++;
+            } else {
+                break;
+            }
+        }
+
+        if (name.length() == 0) {
+            throw invalid("name expected");
+        }
+        return name.toString();
+    }
+
+    private String string() {
+        char quote = css.charAt(position++);
+        int end = css.indexOf(quote, position);
+
+        if (end < 0) {
+            throw invalid("unclosed string");
+        }
+
+        String value = css.substring(position, end);
+        position = end + 1;
+        return value;
+    }
+
+    private boolean skipWhitespace() {
+        int start = position;
+        while (Character.isWhitespace(peek())) {
+            position++;
+        }
+        return position > start;
+    }
+
+    private boolean accept(char c) {
+        if (peek() == c && position < css.length()) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!accept(c)) {
+            throw invalid("'" + c + "' expected");
+        }
+    }
+
+    // The character at the current position, or 0 at the end
+    private char peek() {
+        return position < css.length() ? css.charAt(position) : 0;
+    }
+
+    private static boolean isNameStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '\\' || c > 127;
+    }
+
+    private IllegalArgumentException invalid(String reason) {
+        return new IllegalArgumentException("Invalid CSS selector '" + css + "' at " + position + ": " + reason);
+    }
+}
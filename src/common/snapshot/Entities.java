@@ -0,0 +1,78 @@
+package common.snapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Character references of HTML text and attribute values, the common named ones and all numeric ones
+final class Entities {
+    private static final Map<String, String> NAMED = new HashMap<>();
+
+    static {
+        NAMED.put("amp", "&");
+        NAMED.put("lt", "<");
+        NAMED.put("gt", ">");
+        NAMED.put("quot", "\"");
+        NAMED.put("apos", "'");
+        NAMED.put("nbsp", "\u00a0");
+        NAMED.put("copy", "\u00a9");
+        NAMED.put("reg", "\u00ae");
+        NAMED.put("hellip", "\u2026");
+        NAMED.put("ndash", "\u2013");
+        NAMED.put("mdash", "\u2014");
+        NAMED.put("euro", "\u20ac");
+        NAMED.put("aring", "\u00e5");
+        NAMED.put("auml", "\u00e4");
+        NAMED.put("ouml", "\u00f6");
+        NAMED.put("Aring", "\u00c5");
+        NAMED.put("Auml", "\u00c4");
+        NAMED.put("Ouml", "\u00d6");
+    }
+
+    private Entities() {}
+
+    static String decode(String text) {
+        int amp = text.indexOf('&');
+        if (amp < 0) {
+            return text;
+        }
+
+        StringBuilder out = new StringBuilder(text.length());
+        int i = 0;
+
+        while (amp >= 0) {
+            out.append(text, i, amp);
+            int semicolon = text.indexOf(';', amp);
+            String replacement = null;
+
+            if (semicolon > amp + 1 && semicolon - amp <= 10) {
+                String name = text.substring(amp + 1, semicolon);
+                if (name.charAt(0) == '#') {
+                    replacement = numeric(name.substring(1));
+                } else {
+                    replacement = NAMED.get(name);
+                }
+            }
+
+            if (replacement == null) {
+                out.append('&');
+                i = amp + 1;
+            } else {
+                out.append(replacement);
+                i = semicolon + 1;
+            }
+            amp = text.indexOf('&', i);
+        }
+
+        return out.append(text, i, text.length()).toString();
+    }
+
+    private static String numeric(String number) {
+        try {
+            int code = number.startsWith("x") || number.startsWith("X")
+                    ? Integer.parseInt(number.substring(1), 16) : Integer.parseInt(number);
+            return Character.isValidCodePoint(code) ? new String(Character.toChars(code)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
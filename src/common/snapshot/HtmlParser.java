@@ -0,0 +1,274 @@
+package common.snapshot;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Forgiving HTML parser that builds a W3C DOM, so saved pages can be queried with XPath without a browser
+ * Handles what page sources look like in practice: void and self closed elements, unclosed paragraphs, list items and
+ * table cells, raw script and style text, comments and character references
+ * Element and attribute names are lower case, as in the browser's HTML DOM
+ */
+public final class HtmlParser {
+    private static final Set<String> VOID = new HashSet<>(Arrays.asList(
+            "area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"));
+    private static final Set<String> RAW_TEXT = new HashSet<>(Arrays.asList(
+            "script", "style", "textarea", "title"));
+    // Elements that end an open paragraph
+    private static final Set<String> BLOCK = new HashSet<>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "div", "dl", "fieldset", "footer", "form", "h1", "h2", "h3",
+            "h4", "h5", "h6", "header", "hr", "main", "nav", "ol", "p", "pre", "section", "table", "ul"));
+    private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_.:-]*");
+
+    private final String html;
+    private final Document document;
+    private final Deque<Node> open = new ArrayDeque<>();
+    private int position;
+
+    private HtmlParser(String html) {
+        this.html = html;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            this.document = factory.newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException("No DOM implementation available", e);
+        }
+        open.push(document);
+    }
+
+    /**
+     * Parses an HTML page
+     *
+     * @param html Page source
+     *
+     * @return Document with an html root element
+     */
+    public static Document parse(String html) {
+        HtmlParser parser = new HtmlParser(html);
+        parser.run();
+        return parser.document;
+    }
+
+    /** PRIVATE **/
+
+    private void run() {
+        int length = html.length();
+
+        while (position < length) {
+            int tag = html.indexOf('<', position);
+
+            if (tag < 0) {
+                text(html.substring(position));
+                break;
+            }
+            if (tag > position) {
+                text(html.substring(position, tag));
+            }
+            position = tag;
+
+            if (html.startsWith("<!--", position)) {
+                int end = html.indexOf("-->", position + 4);
+                position = end < 0 ? length : end + 3;
+            } else if (html.startsWith("</", position)) {
+                endTag();
+            } else if (html.startsWith("<!", position) || html.startsWith("<?", position)) {
+                int end = html.indexOf('>', position);
+                position = end < 0 ? length : end + 1;
+            } else if (position + 1 < length && Character.isLetter(html.charAt(position + 1))) {
+                startTag();
+            } else {
+                // A lone '<' in text
+                text("<");
+                position++;
+            }
+        }
+
+        if (document.getDocumentElement() == null) {
+            document.appendChild(document.createElement("html"));
+        }
+    }
+
+    private void startTag() {
+        int length = html.length();
+        int i = position + 1;
+        int nameStart = i;
+
+        while (i < length && !Character.isWhitespace(html.charAt(i)) && html.charAt(i) != '>' && html.charAt(i) != '/') {
+            i++;
+        }
+
+        String name = html.substring(nameStart, i).toLowerCase(Locale.ROOT);
+        Element element = NAME.matcher(name).matches() ? document.createElement(name) : null;
+        boolean selfClosed = false;
+
+        // Attributes
+        while (i < length) {
+            char c = html.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '>') {
+                i++;
+                break;
+            } else if (c == '/') {
+                selfClosed = true;
+                i++;
+            } else {
+                selfClosed = false;
+                int attrStart = i;
+                while (i < length && !Character.isWhitespace(html.charAt(i)) && "=>/".indexOf(html.charAt(i)) < 0) {
+                    i++;
+                }
+                // Names that start with a slash or quote are junk, step past them
+                if (i == attrStart) {
+                    i++;
+                    continue;
+                }
+                String attrName = html.substring(attrStart, i).toLowerCase(Locale.ROOT);
+                String value = "";
+
+                int j = skipWhitespace(i);
+                if (j < length && html.charAt(j) == '=') {
+                    j = skipWhitespace(j + 1);
+                    if (j < length && (html.charAt(j) == '"' || html.charAt(j) == '\'')) {
+                        char quote = html.charAt(j);
+                        int end = html.indexOf(quote, j + 1);
+                        end = end < 0 ? length : end;
+                        value = html.substring(j + 1, end);
+                        i = Math.min(length, end + 1);
+                    } else {
+                        int end = j;
+                        while (end < length && !Character.isWhitespace(html.charAt(end)) && html.charAt(end) != '>') {
+                            end++;
+                        }
+                        value = html.substring(j, end);
+                        i = end;
+                    }
+                }
+
+                if (element != null && NAME.matcher(attrName).matches() && !element.hasAttribute(attrName)) {
+                    element.setAttribute(attrName, Entities.decode(value));
+                }
+            }
+        }
+        position = i;
+
+        if (element == null) {
+            return;
+        }
+
+        closeImplied(name);
+        append(element);
+
+        if (RAW_TEXT.contains(name)) {
+            int end = indexOfIgnoreCase("</" + name, position);
+            end = end < 0 ? length : end;
+            String text = html.substring(position, end);
+            element.appendChild(document.createTextNode(name.equals("textarea") || name.equals("title")
+                    ? Entities.decode(text) : text));
+            int close = html.indexOf('>', end);
+            position = close < 0 ? length : close + 1;
+        } else if (!VOID.contains(name) && !selfClosed) {
+            open.push(element);
+        }
+    }
+
+    private void endTag() {
+        int end = html.indexOf('>', position);
+        end = end < 0 ? html.length() : end;
+        String name = html.substring(position + 2, end).trim().toLowerCase(Locale.ROOT);
+        position = Math.min(html.length(), end + 1);
+
+        // Close up to the matching element, a stray end tag closes nothing
+        for (Node node : open) {
+            if (node instanceof Element && ((Element) node).getTagName().equals(name)) {
+                while (open.peek() != node) {
+                    open.pop();
+                }
+                open.pop();
+                return;
+            }
+        }
+    }
+
+    private void closeImplied(String name) {
+        String current = currentName();
+
+        if ("p".equals(current) && BLOCK.contains(name)) {
+            open.pop();
+        } else if (name.equals("li") && "li".equals(current)
+                || name.equals("option") && "option".equals(current)
+                || (name.equals("dt") || name.equals("dd")) && ("dt".equals(current) || "dd".equals(current))) {
+            open.pop();
+        } else if (name.equals("td") || name.equals("th")) {
+            if ("td".equals(current) || "th".equals(current)) {
+                open.pop();
+            }
+        } else if (name.equals("tr")) {
+            if ("td".equals(current) || "th".equals(current)) {
+                open.pop();
+            }
+            if ("tr".equals(currentName())) {
+                open.pop();
+            }
+        }
+    }
+
+    private String currentName() {
+        Node top = open.peek();
+        return top instanceof Element ? ((Element) top).getTagName() : null;
+    }
+
+    private void append(Element element) {
+        Node parent = open.peek();
+
+        if (parent == document) {
+            if (document.getDocumentElement() == null) {
+                document.appendChild(element);
+                return;
+            }
+            // A second top level element goes under the first, a document has one root
+            parent = document.getDocumentElement();
+        }
+        parent.appendChild(element);
+    }
+
+    private void text(String text) {
+        Node parent = open.peek();
+
+        if (parent == document) {
+            if (text.trim().isEmpty() || document.getDocumentElement() == null) {
+                return;
+            }
+            parent = document.getDocumentElement();
+        }
+        parent.appendChild(document.createTextNode(Entities.decode(text)));
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < html.length() && Character.isWhitespace(html.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int indexOfIgnoreCase(String target, int from) {
+        for (int i = from; i <= html.length() - target.length(); i++) {
+            if (html.regionMatches(true, i, target, 0, target.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,628 @@
+package common.snapshot;
+
+import common.PageScripts;
+import org.openqa.selenium.Alert;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoAlertPresentException;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.NoSuchFrameException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.NoSuchWindowException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.logging.LogEntries;
+import org.openqa.selenium.logging.Logs;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+
+/**
+ * WebDriver that replays saved pages from {@link Snapshots} instead of starting a browser, for a fast offline tier
+ * A URL opens the snapshot its path is mapped to in snapshots/index.properties, otherwise the snapshot named after the
+ * last path segment without extension, so http://host/app/login.do opens snapshots/login.html
+ * Opening a URL without a snapshot throws a {@link WebDriverException} that names the snapshot file it expected
+ * Finding, clicking, typing, selecting, links and form actions work on the parsed page, there is no layout and no
+ * JavaScript engine, so the {@link PageScripts} the page classes run are answered by Java equivalents and any other
+ * script throws {@link UnsupportedCommandException}
+ */
+public class SnapshotDriver implements WebDriver, JavascriptExecutor, TakesScreenshot {
+    private static final String HANDLE = "snapshot";
+    private static final String BLANK = "about:blank";
+
+    // Sources are read once per run, every navigation parses a fresh copy so pages start unchanged
+    private static final Map<String, String> sources = new ConcurrentHashMap<>();
+    private static volatile Properties index;
+
+    private final Snapshots snapshots = new Snapshots();
+    private final Map<String, Cookie> cookies = new LinkedHashMap<>();
+    private final Map<String, String> localStorage = new LinkedHashMap<>();
+    private final List<String> history = new ArrayList<>();
+    private int historyPosition = -1;
+
+    private String url = BLANK;
+    private String source = "";
+    private Document document = HtmlParser.parse("");
+    private Dimension windowSize;
+    private Point windowPosition = new Point(0, 0);
+    private boolean quit;
+
+    public SnapshotDriver() {
+        this(1280, 1024);
+    }
+
+    /**
+     * @param windowWidth Reported window width
+     * @param windowHeight Reported window height
+     */
+    public SnapshotDriver(int windowWidth, int windowHeight) {
+        windowSize = new Dimension(windowWidth, windowHeight);
+    }
+
+    @Override
+    public void get(String url) {
+        checkSession();
+        String resolved = resolve(url);
+
+        // Opened first, a URL without a snapshot leaves the driver on the page it was on
+        open(resolved);
+
+        while (history.size() > historyPosition + 1) {
+            history.remove(history.size() - 1);
+        }
+        history.add(resolved);
+        historyPosition++;
+    }
+
+    @Override
+    public String getCurrentUrl() {
+        checkSession();
+        return url;
+    }
+
+    @Override
+    public String getTitle() {
+        checkSession();
+        List<Element> title = Snapshots.find(document, "//title");
+        return title.isEmpty() ? "" : title.get(0).getTextContent().trim();
+    }
+
+    @Override
+    public List<WebElement> findElements(By by) {
+        checkSession();
+        List<WebElement> found = new ArrayList<>();
+
+        for (Element element : Snapshots.find(document, by)) {
+            found.add(wrap(element));
+        }
+        return found;
+    }
+
+    @Override
+    public WebElement findElement(By by) {
+        List<WebElement> found = findElements(by);
+
+        if (found.isEmpty()) {
+            throw new NoSuchElementException("No element matches " + by + " in snapshot of " + url);
+        }
+        return found.get(0);
+    }
+
+    /** The saved source of the page, without the changes made by clicking and typing */
+    @Override
+    public String getPageSource() {
+        checkSession();
+        return source;
+    }
+
+    @Override
+    public void close() {
+        quit();
+    }
+
+    @Override
+    public void quit() {
+        quit = true;
+        document = HtmlParser.parse("");
+    }
+
+    @Override
+    public Set<String> getWindowHandles() {
+        checkSession();
+        return Collections.singleton(HANDLE);
+    }
+
+    @Override
+    public String getWindowHandle() {
+        checkSession();
+        return HANDLE;
+    }
+
+    @Override
+    public TargetLocator switchTo() {
+        checkSession();
+        return new SnapshotTargetLocator();
+    }
+
+    @Override
+    public Navigation navigate() {
+        checkSession();
+        return new SnapshotNavigation();
+    }
+
+    @Override
+    public Options manage() {
+        checkSession();
+        return new SnapshotOptions();
+    }
+
+    /**
+     * Runs one of the {@link PageScripts}, answered from the parsed page
+     * Scripts are recognised by comparing them with those constants, there is no layout so rectangles are empty and
+     * scrolling, styling and mouse events do nothing
+     */
+    @Override
+    public Object executeScript(String script, Object... args) {
+        checkSession();
+
+        switch (script) {
+            case PageScripts.FIND_DISPLAYED:
+                return new ArrayList<WebElement>(displayed(args[0]));
+            case PageScripts.FIND_DISPLAYED_BY_ATTRIBUTE:
+                for (SnapshotElement element : displayed(args[0])) {
+                    if (String.valueOf(args[2]).equals(element.getAttribute(String.valueOf(args[1])))) {
+                        return element;
+                    }
+                }
+                return null;
+            case PageScripts.DISPLAYED_ATTRIBUTES:
+                List<String> values = new ArrayList<>();
+                for (SnapshotElement element : displayed(args[0])) {
+                    values.add(element.getAttribute(String.valueOf(args[1])));
+                }
+                return values;
+            case PageScripts.RECTANGLE:
+                Map<String, Object> rectangle = new HashMap<>();
+                for (String key : Arrays.asList("x", "y", "top", "left", "right", "bottom", "width", "height")) {
+                    rectangle.put(key, 0L);
+                }
+                return rectangle;
+            case PageScripts.RECTANGLES:
+                List<List<Long>> rectangles = new ArrayList<>();
+                for (int i = 0; i < ((List<?>) args[0]).size(); i++) {
+                    rectangles.add(Arrays.asList(0L, 0L, 0L, 0L));
+                }
+                return rectangles;
+            case PageScripts.DEVICE_PIXEL_RATIO:
+                return 1L;
+            case PageScripts.READY_STATE:
+                return "complete";
+            case PageScripts.PAGE_METRICS:
+                long width = windowSize.getWidth();
+                long height = windowSize.getHeight();
+                return Arrays.asList(0L, 0L, width, height, width, height);
+            case PageScripts.SCROLL_TO:
+                return Arrays.asList(0L, 0L);
+            case PageScripts.READ_STORAGE:
+                return new HashMap<>(localStorage);
+            case PageScripts.WRITE_STORAGE:
+                for (Map.Entry<?, ?> item : ((Map<?, ?>) args[0]).entrySet()) {
+                    localStorage.put(String.valueOf(item.getKey()), String.valueOf(item.getValue()));
+                }
+                return null;
+            case PageScripts.CLEAR_STORAGE:
+                localStorage.clear();
+                return null;
+            case PageScripts.CLICK:
+                element(args[0]).click();
+                return null;
+            case PageScripts.PARENT:
+                Node parent = element(args[0]).getElement().getParentNode();
+                return parent instanceof Element ? wrap((Element) parent) : null;
+            case PageScripts.SCROLL_TO_TOP:
+            case PageScripts.SCROLL_INTO_VIEW:
+            case PageScripts.MOUSE_OVER:
+                return null;
+            default:
+                break;
+        }
+
+        Matcher value = PageScripts.SET_VALUE.matcher(script);
+        if (value.matches()) {
+            element(args[0]).setValue(value.group(1));
+            return null;
+        }
+        if (PageScripts.SCROLL_BY.matcher(script).matches() || PageScripts.BORDER.matcher(script).matches()) {
+            return null;
+        }
+
+        throw new UnsupportedCommandException("Script is not supported by the snapshot driver: " + abbreviate(script));
+    }
+
+    /**
+     * Runs one of the asynchronous wait scripts of {@link PageScripts}
+     * A saved page does not change by itself, so waits for load and quiet finish at once and a wait for an element
+     * answers with what is on the page now
+     */
+    @Override
+    public Object executeAsyncScript(String script, Object... args) {
+        checkSession();
+
+        switch (script) {
+            case PageScripts.WAIT_FOR_ELEMENT:
+                By locator = toLocator(String.valueOf(args[0]), String.valueOf(args[1]));
+                if (locator == null) {
+                    return null;
+                }
+
+                List<Element> found = Snapshots.find(document, locator);
+                if (found.isEmpty()) {
+                    return null;
+                }
+
+                SnapshotElement element = wrap(found.get(0));
+                return !Boolean.TRUE.equals(args[2]) || element.isDisplayed() ? element : null;
+            case PageScripts.WAIT_FOR_READY:
+            case PageScripts.WAIT_FOR_QUIET:
+                return true;
+            default:
+                throw new UnsupportedCommandException("Script is not supported by the snapshot driver: "
+                        + abbreviate(script));
+        }
+    }
+
+    @Override
+    public <X> X getScreenshotAs(OutputType<X> target) {
+        throw new UnsupportedCommandException("Snapshot pages are not rendered, there is nothing to screenshot");
+    }
+
+    /** Name of the snapshot a URL opens */
+    public String getPageName(String url) {
+        URI uri = URI.create(url);
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        Properties index = getIndex();
+
+        String page = index.getProperty(url);
+        if (page == null) {
+            page = index.getProperty(path);
+        }
+        if (page != null) {
+            return page.trim();
+        }
+
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        name = dot > 0 ? name.substring(0, dot) : name;
+
+        return name.isEmpty() ? "index" : name;
+    }
+
+    @Override
+    public String toString() {
+        return "SnapshotDriver: " + url;
+    }
+
+    SnapshotElement wrap(Element element) {
+        return new SnapshotElement(this, element);
+    }
+
+    // Elements of an earlier page, or removed from this one, are stale
+    boolean isCurrent(Element element) {
+        if (quit || element.getOwnerDocument() != document) {
+            return false;
+        }
+
+        Node node = element;
+        while (node.getParentNode() != null) {
+            node = node.getParentNode();
+        }
+        return node == document;
+    }
+
+    /** PRIVATE **/
+
+    private void open(String url) {
+        String html = BLANK.equals(url) ? "" : read(getPageName(url), url);
+
+        this.url = url;
+        source = html;
+        document = HtmlParser.parse(source);
+    }
+
+    // Only snapshots that were found are kept, so one added during the run is picked up by the next navigation
+    private String read(String page, String url) {
+        String html = sources.get(page);
+
+        if (html == null) {
+            try {
+                html = snapshots.read(page);
+            } catch (IOException e) {
+                throw new WebDriverException("Failed to read snapshot '" + snapshots.getPath(page) + "' of " + url, e);
+            }
+            if (html == null) {
+                throw new WebDriverException("No snapshot of " + url + ", expected '" + snapshots.getPath(page) + "'");
+            }
+            sources.put(page, html);
+        }
+        return html;
+    }
+
+    private String resolve(String url) {
+        try {
+            URI target = new URI(url.trim());
+            if (target.isAbsolute() || BLANK.equals(this.url)) {
+                return target.toString();
+            }
+            return new URI(this.url).resolve(target).toString();
+        } catch (URISyntaxException e) {
+            throw new WebDriverException("Invalid URL '" + url + "'", e);
+        }
+    }
+
+    private Properties getIndex() {
+        if (index == null) {
+            synchronized (SnapshotDriver.class) {
+                if (index == null) {
+                    try {
+                        index = snapshots.loadIndex();
+                    } catch (IOException e) {
+                        System.out.println("Failed to read snapshot index. " + e);
+                        index = new Properties();
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private List<SnapshotElement> displayed(Object list) {
+        List<SnapshotElement> displayed = new ArrayList<>();
+
+        for (Object item : (List<?>) list) {
+            SnapshotElement element = element(item);
+            if (element.isDisplayed()) {
+                displayed.add(element);
+            }
+        }
+        return displayed;
+    }
+
+    private SnapshotElement element(Object argument) {
+        if (!(argument instanceof SnapshotElement)) {
+            throw new WebDriverException("Script argument is not an element of this driver: " + argument);
+        }
+        return (SnapshotElement) argument;
+    }
+
+    private static By toLocator(String mode, String value) {
+        switch (mode) {
+            case "id": return By.id(value);
+            case "name": return By.name(value);
+            case "class": return By.className(value);
+            case "tag": return By.tagName(value);
+            case "css": return By.cssSelector(value);
+            case "xpath": return By.xpath(value);
+            default: return null;
+        }
+    }
+
+    private static String abbreviate(String script) {
+        return script.length() > 80 ? script.substring(0, 77) + "..." : script;
+    }
+
+    private void checkSession() {
+        if (quit) {
+            throw new NoSuchSessionException("Snapshot driver has been quit");
+        }
+    }
+
+    private class SnapshotNavigation implements Navigation {
+        @Override
+        public void back() {
+            if (historyPosition > 0) {
+                open(history.get(--historyPosition));
+            }
+        }
+
+        @Override
+        public void forward() {
+            if (historyPosition < history.size() - 1) {
+                open(history.get(++historyPosition));
+            }
+        }
+
+        @Override
+        public void to(String url) {
+            get(url);
+        }
+
+        @Override
+        public void to(URL url) {
+            get(url.toString());
+        }
+
+        @Override
+        public void refresh() {
+            open(url);
+        }
+    }
+
+    private class SnapshotTargetLocator implements TargetLocator {
+        @Override
+        public WebDriver frame(int index) {
+            throw new NoSuchFrameException("Snapshots do not include frame content");
+        }
+
+        @Override
+        public WebDriver frame(String nameOrId) {
+            throw new NoSuchFrameException("Snapshots do not include frame content");
+        }
+
+        @Override
+        public WebDriver frame(WebElement frameElement) {
+            throw new NoSuchFrameException("Snapshots do not include frame content");
+        }
+
+        @Override
+        public WebDriver parentFrame() {
+            return SnapshotDriver.this;
+        }
+
+        @Override
+        public WebDriver window(String nameOrHandle) {
+            if (!HANDLE.equals(nameOrHandle)) {
+                throw new NoSuchWindowException("No window '" + nameOrHandle + "'");
+            }
+            return SnapshotDriver.this;
+        }
+
+        @Override
+        public WebDriver defaultContent() {
+            return SnapshotDriver.this;
+        }
+
+        @Override
+        public WebElement activeElement() {
+            List<Element> focused = Snapshots.find(document, "//*[@autofocus] | //body");
+            return focused.isEmpty() ? null : wrap(focused.get(0));
+        }
+
+        @Override
+        public Alert alert() {
+            throw new NoAlertPresentException("Snapshots have no alerts");
+        }
+    }
+
+    private class SnapshotOptions implements Options {
+        @Override
+        public void addCookie(Cookie cookie) {
+            cookies.put(cookie.getName(), cookie);
+        }
+
+        @Override
+        public void deleteCookieNamed(String name) {
+            cookies.remove(name);
+        }
+
+        @Override
+        public void deleteCookie(Cookie cookie) {
+            cookies.remove(cookie.getName());
+        }
+
+        @Override
+        public void deleteAllCookies() {
+            cookies.clear();
+        }
+
+        @Override
+        public Set<Cookie> getCookies() {
+            return new LinkedHashSet<>(cookies.values());
+        }
+
+        @Override
+        public Cookie getCookieNamed(String name) {
+            return cookies.get(name);
+        }
+
+        // Nothing loads or runs, so there is nothing to time out
+        @Override
+        public Timeouts timeouts() {
+            return new Timeouts() {
+                @Override
+                public Timeouts implicitlyWait(long time, TimeUnit unit) {
+                    return this;
+                }
+
+                @Override
+                public Timeouts setScriptTimeout(long time, TimeUnit unit) {
+                    return this;
+                }
+
+                @Override
+                public Timeouts pageLoadTimeout(long time, TimeUnit unit) {
+                    return this;
+                }
+            };
+        }
+
+        @Override
+        public ImeHandler ime() {
+            throw new UnsupportedCommandException("Snapshot driver has no input method support");
+        }
+
+        @Override
+        public Window window() {
+            return new Window() {
+                @Override
+                public void setSize(Dimension targetSize) {
+                    windowSize = targetSize;
+                }
+
+                @Override
+                public void setPosition(Point targetPosition) {
+                    windowPosition = targetPosition;
+                }
+
+                @Override
+                public Dimension getSize() {
+                    return windowSize;
+                }
+
+                @Override
+                public Point getPosition() {
+                    return windowPosition;
+                }
+
+                @Override
+                public void maximize() {
+                }
+
+                @Override
+                public void fullscreen() {
+                }
+            };
+        }
+
+        // No script runs, so there is nothing in the console
+        @Override
+        public Logs logs() {
+            return new Logs() {
+                @Override
+                public LogEntries get(String logType) {
+                    return new LogEntries(Collections.emptyList());
+                }
+
+                @Override
+                public Set<String> getAvailableLogTypes() {
+                    return new HashSet<>();
+                }
+            };
+        }
+    }
+}
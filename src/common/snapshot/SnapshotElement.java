@@ -0,0 +1,436 @@
+package common.snapshot;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.ElementNotInteractableException;
+import org.openqa.selenium.Keys;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.WebElement;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Element of a page replayed by {@link SnapshotDriver}
+ * Clicks, typing and selection change the parsed page the same way the browser would change its DOM, there is no layout
+ * so every element is at 0, 0 with no size
+ */
+public class SnapshotElement implements WebElement {
+    private static final Set<String> BOOLEAN_ATTRIBUTES = new HashSet<>(Arrays.asList(
+            "checked", "selected", "disabled", "readonly", "required", "multiple", "hidden", "autofocus"));
+    // Never rendered, so never displayed and without visible text
+    private static final Set<String> NOT_RENDERED = new HashSet<>(Arrays.asList(
+            "head", "script", "style", "title", "meta", "link", "template", "noscript"));
+    // Text of these starts on a new line
+    private static final Set<String> BLOCK = new HashSet<>(Arrays.asList(
+            "address", "article", "aside", "blockquote", "br", "dd", "div", "dl", "dt", "fieldset", "footer", "form",
+            "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "li", "main", "nav", "ol", "p", "pre", "section",
+            "table", "tr", "ul"));
+
+    private final SnapshotDriver driver;
+    private final Element element;
+
+    SnapshotElement(SnapshotDriver driver, Element element) {
+        this.driver = driver;
+        this.element = element;
+    }
+
+    @Override
+    public void click() {
+        checkAttached();
+
+        if (isDisabled()) {
+            return;
+        }
+
+        String tag = getTagName();
+        String type = element.getAttribute("type").toLowerCase(Locale.ROOT);
+
+        if (tag.equals("input") && type.equals("checkbox")) {
+            setBoolean("checked", !element.hasAttribute("checked"));
+        } else if (tag.equals("input") && type.equals("radio")) {
+            for (Element radio : Snapshots.find(element.getOwnerDocument(), "//input[@type='radio'][@name="
+                    + CssToXPath.literal(element.getAttribute("name")) + "]")) {
+                radio.removeAttribute("checked");
+            }
+            element.setAttribute("checked", "");
+        } else if (tag.equals("option")) {
+            select();
+        } else if (tag.equals("label") && element.hasAttribute("for")) {
+            List<Element> target = Snapshots.find(element.getOwnerDocument(),
+                    "//*[@id=" + CssToXPath.literal(element.getAttribute("for")) + "]");
+            if (!target.isEmpty()) {
+                new SnapshotElement(driver, target.get(0)).click();
+            }
+        } else if (tag.equals("a") && element.hasAttribute("href")) {
+            String href = element.getAttribute("href").trim();
+            if (!href.isEmpty() && !href.startsWith("#") && !href.startsWith("javascript:")) {
+                driver.navigate().to(href);
+            }
+        } else if (tag.equals("button") && !type.equals("button") && !type.equals("reset")
+                || tag.equals("input") && (type.equals("submit") || type.equals("image"))) {
+            submit();
+        }
+    }
+
+    @Override
+    public void submit() {
+        checkAttached();
+        Element form = closest("form");
+
+        if (form == null) {
+            throw new UnsupportedCommandException("Element is not in a form: " + this);
+        }
+
+        // Without an action the form posts to the page itself, which only reloads the same snapshot
+        String action = form.getAttribute("action").trim();
+        if (!action.isEmpty()) {
+            driver.navigate().to(action);
+        }
+    }
+
+    @Override
+    public void sendKeys(CharSequence... keysToSend) {
+        checkAttached();
+        checkEditable();
+
+        StringBuilder value = new StringBuilder(getValue());
+        boolean submit = false;
+
+        for (CharSequence keys : keysToSend) {
+            for (int i = 0; i < keys.length(); i++) {
+                char c = keys.charAt(i);
+                if (c == Keys.ENTER.charAt(0) || c == Keys.RETURN.charAt(0) || c == '\n') {
+                    submit = !getTagName().equals("textarea");
+                    if (!submit) {
+                        value.append('\n');
+                    }
+                } else if (c == Keys.BACK_SPACE.charAt(0)) {
+                    value.setLength(Math.max(0, value.length() - 1));
+                } else if (c < Keys.NULL.charAt(0) || c > Keys.ZENKAKU_HANKAKU.charAt(0)) {
+                    // Other special keys move the caret or change modifiers, neither of which changes the value
+                    value.append(c);
+                }
+            }
+        }
+
+        setValue(value.toString());
+
+        if (submit && closest("form") != null) {
+            submit();
+        }
+    }
+
+    @Override
+    public void clear() {
+        checkAttached();
+        checkEditable();
+        setValue("");
+    }
+
+    @Override
+    public String getTagName() {
+        return element.getTagName();
+    }
+
+    @Override
+    public String getAttribute(String name) {
+        checkAttached();
+
+        switch (name) {
+            case "value":
+                return getValue();
+            case "className":
+                return element.getAttribute("class");
+            case "textContent":
+                return element.getTextContent();
+            case "innerText":
+                return getText();
+            case "selected":
+            case "checked":
+                return isSelected() ? "true" : null;
+        }
+
+        if (BOOLEAN_ATTRIBUTES.contains(name)) {
+            return element.hasAttribute(name) ? "true" : null;
+        }
+        return element.hasAttribute(name) ? element.getAttribute(name) : null;
+    }
+
+    @Override
+    public boolean isSelected() {
+        checkAttached();
+        return getTagName().equals("option") ? isSelectedOption(element) : element.hasAttribute("checked");
+    }
+
+    @Override
+    public boolean isEnabled() {
+        checkAttached();
+        return !isDisabled();
+    }
+
+    @Override
+    public String getText() {
+        checkAttached();
+
+        if (!isDisplayed()) {
+            return "";
+        }
+
+        StringBuilder text = new StringBuilder();
+        appendText(element, text);
+
+        // Collapse white space the way rendering does, keeping the line breaks of block elements
+        StringBuilder lines = new StringBuilder();
+        for (String line : text.toString().split("\n")) {
+            String collapsed = line.replaceAll("[ \\t\\r\\f\\u00a0]+", " ").trim();
+            if (!collapsed.isEmpty()) {
+                lines.append(lines.length() > 0 ? "\n" : "").append(collapsed);
+            }
+        }
+        return lines.toString();
+    }
+
+    @Override
+    public List<WebElement> findElements(By by) {
+        checkAttached();
+        List<WebElement> found = new ArrayList<>();
+
+        // XPath is evaluated from this element, as in the browser, other locators match below it
+        if (by instanceof By.ByXPath) {
+            for (Element match : Snapshots.find(element, Snapshots.toXPath(by))) {
+                found.add(driver.wrap(match));
+            }
+        } else {
+            for (Element match : Snapshots.find(element.getOwnerDocument(), by)) {
+                if (match != element && isAncestor(element, match)) {
+                    found.add(driver.wrap(match));
+                }
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public WebElement findElement(By by) {
+        List<WebElement> found = findElements(by);
+
+        if (found.isEmpty()) {
+            throw new NoSuchElementException("No element matches " + by + " below " + this + " in snapshot of "
+                    + driver.getCurrentUrl());
+        }
+        return found.get(0);
+    }
+
+    @Override
+    public boolean isDisplayed() {
+        checkAttached();
+
+        for (Node node = element; node instanceof Element; node = node.getParentNode()) {
+            if (isHidden((Element) node)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Point getLocation() {
+        return new Point(0, 0);
+    }
+
+    @Override
+    public Dimension getSize() {
+        return new Dimension(0, 0);
+    }
+
+    @Override
+    public Rectangle getRect() {
+        return new Rectangle(getLocation(), getSize());
+    }
+
+    @Override
+    public String getCssValue(String propertyName) {
+        checkAttached();
+
+        for (String declaration : element.getAttribute("style").split(";")) {
+            int colon = declaration.indexOf(':');
+            if (colon > 0 && declaration.substring(0, colon).trim().equalsIgnoreCase(propertyName)) {
+                return declaration.substring(colon + 1).trim();
+            }
+        }
+        return "";
+    }
+
+    @Override
+    public <X> X getScreenshotAs(OutputType<X> target) {
+        throw new UnsupportedCommandException("Snapshot pages are not rendered, there is nothing to screenshot");
+    }
+
+    /** Parsed element this element wraps */
+    public Element getElement() {
+        return element;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SnapshotElement && ((SnapshotElement) o).element == element;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(element);
+    }
+
+    @Override
+    public String toString() {
+        String id = element.getAttribute("id");
+        return "<" + getTagName() + (id.isEmpty() ? "" : " id=\"" + id + "\"") + ">";
+    }
+
+    // Sets the value without typing, like assigning the value property from a script
+    void setValue(String value) {
+        if (getTagName().equals("textarea")) {
+            element.setTextContent(value);
+        } else {
+            element.setAttribute("value", value);
+        }
+    }
+
+    /** PRIVATE **/
+
+    private String getValue() {
+        switch (getTagName()) {
+            case "textarea":
+                return element.getTextContent();
+            case "option":
+                return element.hasAttribute("value") ? element.getAttribute("value") : element.getTextContent().trim();
+            case "select":
+                for (Element option : Snapshots.find(element, ".//option")) {
+                    if (isSelectedOption(option)) {
+                        return new SnapshotElement(driver, option).getValue();
+                    }
+                }
+                return "";
+            default:
+                return element.getAttribute("value");
+        }
+    }
+
+    private void select() {
+        Element select = closest("select");
+
+        if (select != null && !select.hasAttribute("multiple")) {
+            for (Element option : Snapshots.find(select, ".//option")) {
+                option.removeAttribute("selected");
+            }
+            element.setAttribute("selected", "");
+        } else {
+            setBoolean("selected", !element.hasAttribute("selected"));
+        }
+    }
+
+    // An option is selected when marked, or when it is the first of a single select where none is marked
+    private boolean isSelectedOption(Element option) {
+        if (option.hasAttribute("selected")) {
+            return true;
+        }
+
+        List<Element> select = Snapshots.find(option, "ancestor::select[1][not(@multiple)]");
+        if (select.isEmpty()) {
+            return false;
+        }
+
+        return Snapshots.find(select.get(0), ".//option").get(0) == option
+                && Snapshots.find(select.get(0), ".//option[@selected]").isEmpty();
+    }
+
+    private void setBoolean(String name, boolean value) {
+        if (value) {
+            element.setAttribute(name, "");
+        } else {
+            element.removeAttribute(name);
+        }
+    }
+
+    private boolean isDisabled() {
+        return element.hasAttribute("disabled") || !Snapshots.find(element, "ancestor::fieldset[@disabled]").isEmpty();
+    }
+
+    private void checkEditable() {
+        String tag = getTagName();
+        String type = element.getAttribute("type").toLowerCase(Locale.ROOT);
+
+        if (!(tag.equals("textarea") || tag.equals("input") && !type.equals("checkbox") && !type.equals("radio")
+                && !type.equals("submit") && !type.equals("button") && !type.equals("hidden"))
+                || isDisabled() || element.hasAttribute("readonly")) {
+            throw new ElementNotInteractableException("Element cannot be typed into: " + this);
+        }
+    }
+
+    private Element closest(String tag) {
+        for (Node node = element; node instanceof Element; node = node.getParentNode()) {
+            if (((Element) node).getTagName().equals(tag)) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private void checkAttached() {
+        if (!driver.isCurrent(element)) {
+            throw new StaleElementReferenceException("Element is no longer on the page: " + this);
+        }
+    }
+
+    private static void appendText(Node node, StringBuilder text) {
+        NodeList children = node.getChildNodes();
+
+        for (int i = 0; i < children.getLength(); i++) {
+            Node child = children.item(i);
+
+            if (child.getNodeType() == Node.TEXT_NODE) {
+                text.append(child.getNodeValue().replace('\n', ' '));
+            } else if (child instanceof Element && !isHidden((Element) child)) {
+                boolean block = BLOCK.contains(((Element) child).getTagName());
+                if (block) {
+                    text.append('\n');
+                }
+                appendText(child, text);
+                if (block) {
+                    text.append('\n');
+                }
+            }
+        }
+    }
+
+    // Hidden by itself, not counting its ancestors
+    private static boolean isHidden(Element e) {
+        String style = e.getAttribute("style").replace(" ", "").toLowerCase(Locale.ROOT);
+
+        return NOT_RENDERED.contains(e.getTagName()) || e.hasAttribute("hidden")
+                || e.getTagName().equals("input") && "hidden".equalsIgnoreCase(e.getAttribute("type"))
+                || style.contains("display:none") || style.contains("visibility:hidden");
+    }
+
+    private static boolean isAncestor(Node ancestor, Node node) {
+        for (Node parent = node.getParentNode(); parent != null; parent = parent.getParentNode()) {
+            if (parent == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
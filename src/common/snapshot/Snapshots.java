@@ -0,0 +1,181 @@
+package common.snapshot;
+
+import common.Core;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Saved HTML of pages, one file per page in the snapshots directory (-Dsnapshots.dir, default "snapshots")
+ * A relative snapshots directory is taken from the working directory, an absolute one is used as it is
+ * Snapshots let locators be checked against a page without a browser, and pages be replayed by {@link SnapshotDriver}
+ * The optional index.properties in the same directory maps URL paths to page names, /login.do = LoginPage
+ */
+public class Snapshots extends Core {
+    private static final String EXTENSION = ".html";
+    private static final String INDEX = "index.properties";
+
+    // XPath factories are not thread safe
+    private static final ThreadLocal<XPathFactory> xpathFactory = ThreadLocal.withInitial(XPathFactory::newInstance);
+
+    private final String directory = System.getProperty("snapshots.dir", "snapshots");
+
+    /**
+     * Saves the source of the page the driver is on
+     *
+     * @param driver Driver
+     * @param page Name of the page, usually the simple name of its page class
+     *
+     * @return Full filepath
+     */
+    public String save(WebDriver driver, String page) throws IOException {
+        String path = getPath(page);
+        Files.write(new File(path).toPath(), driver.getPageSource().getBytes(StandardCharsets.UTF_8));
+        return path;
+    }
+
+    /**
+     * Reads and parses the snapshot of a page
+     *
+     * @param page Name of the page
+     *
+     * @return Parsed page, or null if there is no snapshot of the page
+     */
+    public Document load(String page) throws IOException {
+        String html = read(page);
+        return html == null ? null : HtmlParser.parse(html);
+    }
+
+    /**
+     * Reads the snapshot of a page without parsing it
+     *
+     * @param page Name of the page
+     *
+     * @return Page source, or null if there is no snapshot of the page
+     */
+    public String read(String page) throws IOException {
+        File file = new File(getPath(page));
+
+        if (!file.isFile()) {
+            return null;
+        }
+
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the index that maps URL paths to page names
+     *
+     * @return Page names by URL path, empty if there is no index
+     */
+    public Properties loadIndex() throws IOException {
+        Properties index = new Properties();
+        File file = new File(getSnapshotPath(INDEX));
+
+        if (file.isFile()) {
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                index.load(reader);
+            }
+        }
+        return index;
+    }
+
+    public String getPath(String page) {
+        return getSnapshotPath(page + EXTENSION);
+    }
+
+    /**
+     * Finds the elements a locator matches in a parsed page
+     *
+     * @param document Parsed page
+     * @param locator Locator
+     *
+     * @return Matching elements in document order
+     *
+     * @throws IllegalArgumentException if the locator is not valid
+     * @throws UnsupportedOperationException if the locator can only be evaluated by a browser
+     */
+    public static List<Element> find(Node document, By locator) {
+        return find(document, toXPath(locator));
+    }
+
+    /**
+     * Finds the elements an XPath expression matches below a node
+     *
+     * @param context Document or element to search from
+     * @param xpath XPath expression
+     *
+     * @return Matching elements in document order
+     *
+     * @throws IllegalArgumentException if the expression is not valid XPath
+     */
+    public static List<Element> find(Node context, String xpath) {
+        try {
+            NodeList nodes = (NodeList) xpathFactory.get().newXPath().evaluate(xpath, context, XPathConstants.NODESET);
+            List<Element> elements = new ArrayList<>(nodes.getLength());
+
+            for (int i = 0; i < nodes.getLength(); i++) {
+                if (nodes.item(i) instanceof Element) {
+                    elements.add((Element) nodes.item(i));
+                }
+            }
+            return elements;
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException("Invalid XPath '" + xpath + "'. " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Translates a locator to the XPath expression that finds the same elements in a snapshot
+     *
+     * @param locator Locator
+     *
+     * @return XPath expression from the document root
+     *
+     * @throws UnsupportedOperationException for locators that can only be evaluated by a browser
+     */
+    public static String toXPath(By locator) {
+        String text = locator.toString();
+        String value = text.substring(text.indexOf(':') + 1).trim();
+
+        if (locator instanceof By.ById) return "//*[@id=" + CssToXPath.literal(value) + "]";
+        if (locator instanceof By.ByName) return "//*[@name=" + CssToXPath.literal(value) + "]";
+        if (locator instanceof By.ByClassName) return CssToXPath.translate("." + value);
+        if (locator instanceof By.ByTagName) return "//" + value.toLowerCase();
+        if (locator instanceof By.ByCssSelector) return CssToXPath.translate(value);
+        if (locator instanceof By.ByXPath) return value;
+        if (locator instanceof By.ByLinkText) return "//a[normalize-space(.)=" + CssToXPath.literal(value) + "]";
+        if (locator instanceof By.ByPartialLinkText) return "//a[contains(., " + CssToXPath.literal(value) + ")]";
+
+        throw new UnsupportedOperationException("Locator type cannot be checked offline: " + text);
+    }
+
+    /** PRIVATE **/
+
+    private String getSnapshotPath(String file) {
+        File dir = new File(directory);
+
+        if (!dir.isAbsolute()) {
+            return getFilePath(directory, file);
+        }
+        if (!dir.isDirectory()) {
+            dir.mkdirs();
+        }
+        return new File(dir, file).getAbsolutePath();
+    }
+}
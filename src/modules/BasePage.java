@@ -6,27 +6,58 @@ import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.interactions.HasInputDevices;
 import org.openqa.selenium.interactions.Mouse;
 import org.openqa.selenium.internal.Locatable;
-import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
 import org.openqa.selenium.support.ui.WebDriverWait;
+import common.DiffMask;
+import common.PageScripts;
 import common.enums.*;
+import common.metrics.StepRecorder;
+import common.runners.ImpactIndex;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class BasePage {
     public Integer timeoutInSeconds;
     public WebDriver driver;
     public WebDriverWait wait;
+    public PageWait pageWait;
+
+    // Off by default, turned on per page or for every page with -DelementCache=true
+    public boolean useElementCache = Boolean.getBoolean("elementCache");
+    public ElementCache elementCache = new ElementCache();
+
+    // Areas to leave out when an element, or the whole page under the null key, is compared against a baseline
+    private final Map<Object, List<By>> diffMasks = new ConcurrentHashMap<>();
+    private static final Object FULL_PAGE = new Object();
 
     public BasePage(WebDriver d) {
+        ImpactIndex.recordPage(getClass(), BasePage.class);
         driver = d;
         wait = new WebDriverWait(driver, 15);
+        pageWait = new PageWait(driver);
         timeoutInSeconds = 15;
     }
 
+    /**
+     * Returns a static By field of this page by name, from the table shared by every instance of the page class
+     *
+     * @param name Name of the field
+     *
+     * @return Locator
+     */
+    protected By locator(String name) {
+        return LocatorTable.of(getClass()).get(name);
+    }
+
     // ------------------------------------------------------------------------------------------------------------- //
     // CLICKING
     // ------------------------------------------------------------------------------------------------------------- //
@@ -39,7 +70,10 @@ public class BasePage {
      * @author maer08
      */
     public void clickElement(By locator) {
-        findVisibleElement(locator).click();
+        step("clickElement", locator, () -> onElement(locator, true, we -> {
+            we.click();
+            return we;
+        }));
     }
 
     /**
@@ -53,16 +87,19 @@ public class BasePage {
      * @author maer08
      */
     public void actionClick(By locator) {
-        WebElement we = findVisibleElement(locator);
-
-        actionClick(we);
+        step("actionClick", locator, () -> onElement(locator, true, we -> {
+            actionClick(we);
+            return we;
+        }));
     }
 
     /** See documentation for: {@link #actionClick(By)} */
     public void actionClick(WebElement webElement) {
-        Actions action = new Actions(driver);
+        step("actionClick", null, () -> {
+            Actions action = new Actions(driver);
 
-        action.moveToElement(webElement).click().build().perform();
+            action.moveToElement(webElement).click().build().perform();
+        });
     }
 
     /**
@@ -74,9 +111,13 @@ public class BasePage {
      * @author joni86
      */
     public void hoverMouseClick(By locator) {
-        Actions action = new Actions(driver);
-        WebElement we = findVisibleElement(locator);
-        action.moveToElement(we).click().build().perform();
+        step("hoverMouseClick", locator, () -> {
+            Actions action = new Actions(driver);
+            onElement(locator, true, we -> {
+                action.moveToElement(we).click().build().perform();
+                return we;
+            });
+        });
     }
 
     /**
@@ -89,15 +130,18 @@ public class BasePage {
      * @author joni86
      */
     public void javascriptMouseClick(By locator) {
-        WebElement webElement = findVisibleElement(locator);
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        javascriptexecutor.executeScript("arguments[0].click();", webElement);
+        step("javascriptMouseClick", locator, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            onElement(locator, true, webElement -> javascriptexecutor.executeScript(PageScripts.CLICK, webElement));
+        });
     }
 
     /** See documentation for: {@link #javascriptMouseClick(By)} */
     public void javascriptMouseClick(WebElement webElement) {
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        javascriptexecutor.executeScript("arguments[0].click();", webElement);
+        step("javascriptMouseClick", null, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            javascriptexecutor.executeScript(PageScripts.CLICK, webElement);
+        });
     }
 
     // ------------------------------------------------------------------------------------------------------------- //
@@ -113,16 +157,20 @@ public class BasePage {
      * @author joni86
      */
     public void clearAndEnterText(By locator, String text) {
-        clearTextBox(locator);
-        clickElement(locator);
-        enterText(locator, text);
+        step("clearAndEnterText", locator, () -> {
+            clearTextBox(locator);
+            clickElement(locator);
+            enterText(locator, text);
+        });
     }
 
     /** See documentation for: {@link #clearAndEnterText(By, String)} */
     public void clearAndEnterText(WebElement we, String text) {
-        we.clear();
-        we.click();
-        we.sendKeys(text);
+        step("clearAndEnterText", null, () -> {
+            we.clear();
+            we.click();
+            we.sendKeys(text);
+        });
     }
 
     /**
@@ -133,7 +181,10 @@ public class BasePage {
      * @author maer08
      */
     public void clearTextBox(By locator) {
-        findVisibleElement(locator).clear();
+        step("clearTextBox", locator, () -> onElement(locator, true, we -> {
+            we.clear();
+            return we;
+        }));
     }
 
     /**
@@ -145,7 +196,10 @@ public class BasePage {
      * @author maer08
      */
     public void enterText(By locator, String text) {
-        findVisibleElement(locator).sendKeys(text);
+        step("enterText", locator, () -> onElement(locator, true, we -> {
+            we.sendKeys(text);
+            return we;
+        }));
     }
 
     /**
@@ -158,11 +212,15 @@ public class BasePage {
      * @author joni86
      */
     public void javascriptSendTextAndEnter(By locator, String text) {
-        WebElement we = findVisibleElement(locator);
-
-        javascriptSendText(we, text);
+        step("javascriptSendTextAndEnter", locator, () -> {
+            WebElement we = onElement(locator, true, e -> {
+                javascriptSendText(e, text);
+                return e;
+            });
 
-        we.sendKeys(Keys.RETURN);
+            // Not repeated on a stale element, the text is in and the page may already have moved on
+            we.sendKeys(Keys.RETURN);
+        });
     }
 
     /**
@@ -175,17 +233,21 @@ public class BasePage {
      * @author joni86
      */
     public void javascriptSendText(WebElement we, String text) {
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        javascriptexecutor.executeScript("arguments[0].value='" + text + "';", we);
+        step("javascriptSendText", null, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            javascriptexecutor.executeScript(PageScripts.setValue(text), we);
 
-        sleepSeconds(2);
+            // Give the page up to the old fixed two seconds to react, but return as soon as it stops changing
+            pageWait.untilDomQuiet(200, 2000);
+        });
     }
 
     /** See documentation for: {@link #javascriptSendText(WebElement, String)} */
     public void javascriptSendText(By locator, String text) {
-        WebElement we = findVisibleElement(locator);
-
-        javascriptSendText(we, text);
+        step("javascriptSendText", locator, () -> onElement(locator, true, we -> {
+            javascriptSendText(we, text);
+            return we;
+        }));
     }
 
     // ------------------------------------------------------------------------------------------------------------- //
@@ -193,14 +255,17 @@ public class BasePage {
     // ------------------------------------------------------------------------------------------------------------- //
 
     public void scrollToTop() {
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        javascriptexecutor.executeScript("window.scrollTo(0, 0);");
+        step("scrollToTop", null, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            javascriptexecutor.executeScript(PageScripts.SCROLL_TO_TOP);
+        });
     }
 
     public void scrollDown(int pixels) {
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        String command = "window.scrollBy(0," + pixels + ")";
-        javascriptexecutor.executeScript(command);
+        step("scrollDown", null, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            javascriptexecutor.executeScript(PageScripts.scrollBy(pixels));
+        });
     }
 
     /**
@@ -211,37 +276,51 @@ public class BasePage {
      * @author maer08
      */
     public void scrollToElement(WebElement webElement) {
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        javascriptexecutor.executeScript("arguments[0].scrollIntoView(true);", webElement);
+        step("scrollToElement", null, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            javascriptexecutor.executeScript(PageScripts.SCROLL_INTO_VIEW, webElement);
+        });
     }
 
     /** See documentation for: {@link #scrollToElement(WebElement)} */
     public void scrollToElement(By locator) {
-        WebElement we = findPresentElement(locator);
+        step("scrollToElement", locator, () -> onElement(locator, false, we -> {
+            scrollToElement(we);
+            return we;
+        }));
+    }
 
-        scrollToElement(we);
+    public void goToUrl(String url) {
+        elementCache.clear();
+        step("goToUrl", null, () -> driver.get(url));
     }
 
     public void refreshPage() {
-        driver.navigate().refresh();
+        elementCache.clear();
+        step("refreshPage", null, () -> driver.navigate().refresh());
     }
 
     public void goToWindow(String windowHandle) {
-        driver.switchTo().window(windowHandle);
+        elementCache.clear();
+        step("goToWindow", null, () -> driver.switchTo().window(windowHandle));
     }
 
     public void goToLastOpenedWindow() {
-        driver.switchTo().window(getLastWindowHandle());
+        elementCache.clear();
+        step("goToLastOpenedWindow", null, () -> driver.switchTo().window(getLastWindowHandle()));
     }
 
     public void closeWindow() {
-        driver.close();
+        elementCache.clear();
+        step("closeWindow", null, () -> driver.close());
     }
 
     public void closeLastOpenedTab(String baseTab) {
-        goToLastOpenedWindow();
-        closeWindow();
-        goToWindow(baseTab);
+        step("closeLastOpenedTab", null, () -> {
+            goToLastOpenedWindow();
+            closeWindow();
+            goToWindow(baseTab);
+        });
     }
 
     // ------------------------------------------------------------------------------------------------------------- //
@@ -257,8 +336,10 @@ public class BasePage {
      * @author joni86
      */
     public void selectByText(By locator, String optionText) {
-        Select select = new Select(findVisibleElement(locator));
-        select.selectByVisibleText(optionText);
+        step("selectByText", locator, () -> {
+            Select select = onElement(locator, true, Select::new);
+            select.selectByVisibleText(optionText);
+        });
     }
 
     /**
@@ -270,69 +351,82 @@ public class BasePage {
      * @author joni86
      */
     public void selectByValue(By locator, String optionValue) {
-        Select select = new Select(findVisibleElement(locator));
-        select.selectByValue(optionValue);
+        step("selectByValue", locator, () -> {
+            Select select = onElement(locator, true, Select::new);
+            select.selectByValue(optionValue);
+        });
     }
 
     public void sleepSeconds(int seconds) {
-        //System.out.println("Pausing for " + seconds + "seconds.");
-        try {
-            Thread.sleep(seconds * 1000);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        step("sleepSeconds", null, () -> {
+            //System.out.println("Pausing for " + seconds + "seconds.");
+            try {
+                Thread.sleep(seconds * 1000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        });
     }
 
     /**
-     * Unsure what this does - Ask author
+     * Waits for the page to finish loading (document.readyState is complete)
+     * Returns on the load event instead of polling for it
      *
      * @author maer08
      */
     public void waitForLoad() {
-        new WebDriverWait(driver, 30).until((ExpectedCondition<Boolean>) wd ->
-                ((JavascriptExecutor) wd).executeScript("return document.readyState").equals("complete"));
+        step("waitForLoad", null, () -> pageWait.untilReady(30));
     }
 
     public void hoverMouse(By locator) {
-        WebElement we = findVisibleElement(locator);
-
-        Locatable hoverItem = (Locatable) we;
-        Mouse mouse = ((HasInputDevices) driver).getMouse();
-        mouse.mouseMove(hoverItem.getCoordinates());
-
-        //JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        //javascriptexecutor.executeScript("jQuery(\"arguments[0]\").mouseover();", we);
-
-        /*Actions action = new Actions(driver);
-        WebElement we = findVisibleElement(locator);
-        action.moveToElement(we).build().perform();
-        */
+        step("hoverMouse", locator, () -> {
+            Mouse mouse = ((HasInputDevices) driver).getMouse();
+            onElement(locator, true, we -> {
+                Locatable hoverItem = (Locatable) we;
+                mouse.mouseMove(hoverItem.getCoordinates());
+                return we;
+            });
+
+            //JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            //javascriptexecutor.executeScript("jQuery(\"arguments[0]\").mouseover();", we);
+
+            /*Actions action = new Actions(driver);
+            WebElement we = findVisibleElement(locator);
+            action.moveToElement(we).build().perform();
+            */
+        });
     }
 
     public void mouseOverOnElementUsingRobot(By locator) {
-        try {
-            WebElement we = findVisibleElement(locator);
-            Locatable hoverItem = (Locatable) we;
-            Point coordinates = driver.findElement(locator).getLocation(); // hoverItem.getCoordinates().onScreen();
-            Robot robot = new Robot();
-            //robot.mouseMove(coordinates.getX(), coordinates.getY() );
-            robot.mouseMove(coordinates.getX()+20, coordinates.getY() + 120);
-
-        } catch (AWTException e) {
-            System.out.println("Failed to mouseover on the element '" + locator + "'. " + e);
-        }
+        step("mouseOverOnElementUsingRobot", locator, () -> {
+            try {
+                WebElement we = findVisibleElement(locator);
+                Locatable hoverItem = (Locatable) we;
+                Point coordinates = driver.findElement(locator).getLocation(); // hoverItem.getCoordinates().onScreen();
+                Robot robot = new Robot();
+                //robot.mouseMove(coordinates.getX(), coordinates.getY() );
+                robot.mouseMove(coordinates.getX()+20, coordinates.getY() + 120);
+
+            } catch (AWTException e) {
+                System.out.println("Failed to mouseover on the element '" + locator + "'. " + e);
+            }
+        });
     }
 
     public void getAbsolutePosition(By locator) {
-        WebElement we = findVisibleElement(locator);
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        Object o = javascriptexecutor.executeScript("return arguments[0].getBoundingClientRect()", we);
-        System.out.println(o.toString());
+        step("getAbsolutePosition", locator, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            Object o = onElement(locator, true,
+                    we -> javascriptexecutor.executeScript(PageScripts.RECTANGLE, we));
+            System.out.println(o.toString());
+        });
     }
 
     public void hmouse(String csslocator) {
-        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
-        javascriptexecutor.executeScript("jQuery(\"arguments[0]\").mouseover();", csslocator);
+        step("hmouse", csslocator, () -> {
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+            javascriptexecutor.executeScript(PageScripts.MOUSE_OVER, csslocator);
+        });
     }
 
     /**
@@ -342,17 +436,21 @@ public class BasePage {
      * @param colour Colour to give border
      */
     public void highlightElement(WebElement element, String colour) {
-        String script = "arguments[0].style.border='3px solid " + colour + "'";
-        if (driver instanceof JavascriptExecutor) {
-            ((JavascriptExecutor) driver).executeScript(script, element);
-        }
+        step("highlightElement", null, () -> {
+            String script = PageScripts.border(colour);
+            if (driver instanceof JavascriptExecutor) {
+                ((JavascriptExecutor) driver).executeScript(script, element);
+            }
+        });
     }
 
     /** See documentation for: {@link #highlightElement(WebElement, String)} */
     public void highlightElement(WebElement element) {
-        if (driver instanceof JavascriptExecutor) {
-            ((JavascriptExecutor) driver).executeScript("arguments[0].style.border='3px solid red'", element);
-        }
+        step("highlightElement", null, () -> {
+            if (driver instanceof JavascriptExecutor) {
+                ((JavascriptExecutor) driver).executeScript(PageScripts.border("red"), element);
+            }
+        });
     }
 
     // ------------------------------------------------------------------------------------------------------------- //
@@ -371,8 +469,7 @@ public class BasePage {
      * @author maer08
      */
     public WebElement findPresentElement(By locator, int timeout) {
-        WebDriverWait wait = new WebDriverWait(driver, timeout);
-        return wait.until(ExpectedConditions.presenceOfElementLocated(locator));
+        return step("findPresentElement", locator, () -> pageWait.untilPresent(locator, timeout));
     }
 
     /** See documentation for: {@link #findPresentElement(By, int)} */
@@ -392,8 +489,7 @@ public class BasePage {
      * @author maer08
      */
     public WebElement findVisibleElement(By locator, int timeout) {
-        WebDriverWait wait = new WebDriverWait(driver, timeout);
-        return wait.until(ExpectedConditions.visibilityOfElementLocated(locator));
+        return step("findVisibleElement", locator, () -> pageWait.untilVisible(locator, timeout));
     }
 
     /** See documentation for: {@link #findVisibleElement(By, int)} */
@@ -413,29 +509,54 @@ public class BasePage {
      * @author joni86
      */
     public WebElement findVisibleElementByAttribute(By locator, String attribute, String attributeText) {
-        // Set Up the return Web Element to be nothing
-        WebElement returnElement = null;
+        return step("findVisibleElementByAttribute", locator, () -> {
+            // Set Up the return Web Element to be nothing
+            WebElement returnElement = null;
 
-        // Build a list of all web elements that has the same locator
-        List<WebElement> weList = findAllDisplayedElements(locator);
+            // Build a list of all web elements that has the same locator
+            List<WebElement> weList = findAllDisplayedElements(locator);
 
-        // Check all elements in the list
-        for(WebElement we : weList) {
+            // Check all elements in the list
+            for(WebElement we : weList) {
 
-            // If the element has the attribute we wish, and the value we want we can return that element
-            if(we.getAttribute(attribute).equals(attributeText)) {
-                returnElement = we;
-                break;
+                // If the element has the attribute we wish, and the value we want we can return that element
+                if(we.getAttribute(attribute).equals(attributeText)) {
+                    returnElement = we;
+                    break;
+                }
             }
-        }
 
-        return returnElement;
+            return returnElement;
+        });
+    }
+
+    /**
+     * Finds one visible element that has a specific attribute with a specific value
+     * Same as {@link #findVisibleElementByAttribute(By, String, String)} but checks all elements with one JavaScript
+     * call instead of two WebDriver calls per element
+     *
+     * @param locator Locator
+     * @param attribute Attribute that holds value
+     * @param attributeText The value that the attribute needs to have
+     *
+     * @return Web Element, or null if no visible element has the value
+     */
+    public WebElement javascriptFindVisibleElementByAttribute(By locator, String attribute, String attributeText) {
+        return step("javascriptFindVisibleElementByAttribute", locator, () -> {
+            List<WebElement> weList = findAllPresentElements(locator);
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+
+            return (WebElement) javascriptexecutor.executeScript(PageScripts.FIND_DISPLAYED_BY_ATTRIBUTE,
+                    weList, attribute, attributeText);
+        });
     }
 
     public WebElement getParent(WebElement we) {
-        WebElement parent = (WebElement) ((JavascriptExecutor) driver)
-                .executeScript("return arguments[0].parentNode;", we);
-        return parent;
+        return step("getParent", null, () -> {
+            WebElement parent = (WebElement) ((JavascriptExecutor) driver)
+                    .executeScript(PageScripts.PARENT, we);
+            return parent;
+        });
     }
 
     // ------------------------------------------------------------------------------------------------------------- //
@@ -452,7 +573,7 @@ public class BasePage {
      * @author maer08
      */
     public List<WebElement> findAllPresentElements(By locator) {
-        return wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(locator));
+        return step("findAllPresentElements", locator, () -> wait.until(ExpectedConditions.presenceOfAllElementsLocatedBy(locator)));
     }
 
     /**
@@ -466,7 +587,7 @@ public class BasePage {
      * @author maer08
      */
     public List<WebElement> findAllVisibleElements(By locator) {
-        return wait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator));
+        return step("findAllVisibleElements", locator, () -> wait.until(ExpectedConditions.visibilityOfAllElementsLocatedBy(locator)));
     }
 
     /**
@@ -480,16 +601,55 @@ public class BasePage {
      * @author joni86
      */
     public List<WebElement> findAllDisplayedElements(By locator) {
-        List<WebElement> weList = findAllPresentElements(locator);
-        List<WebElement> visibleList = new ArrayList<>();
-
-        for (WebElement item : weList) {
-            if (item.isDisplayed()) {
-                visibleList.add(item);
+        return step("findAllDisplayedElements", locator, () -> {
+            List<WebElement> weList = findAllPresentElements(locator);
+            List<WebElement> visibleList = new ArrayList<>();
+
+            for (WebElement item : weList) {
+                if (item.isDisplayed()) {
+                    visibleList.add(item);
+                }
             }
-        }
 
-        return visibleList;
+            return visibleList;
+        });
+    }
+
+    /**
+     * Returns a list of elements that are present and visible on the page
+     * Same as {@link #findAllDisplayedElements(By)} but filters the list with one JavaScript call instead of one
+     * WebDriver call per element
+     *
+     * @param locator Locator
+     *
+     * @return List of Web Elements
+     */
+    @SuppressWarnings("unchecked")
+    public List<WebElement> javascriptFindAllDisplayedElements(By locator) {
+        return step("javascriptFindAllDisplayedElements", locator, () -> {
+            List<WebElement> weList = findAllPresentElements(locator);
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+
+            return (List<WebElement>) javascriptexecutor.executeScript(PageScripts.FIND_DISPLAYED, weList);
+        });
+    }
+
+    /**
+     * Returns the value of an attribute for every present and visible element, read with one JavaScript call
+     *
+     * @param locator Locator
+     * @param attribute Attribute that holds value
+     *
+     * @return List of attribute values in page order, null for elements without the attribute
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> javascriptGetDisplayedAttributeValues(By locator, String attribute) {
+        return step("javascriptGetDisplayedAttributeValues", locator, () -> {
+            List<WebElement> weList = findAllPresentElements(locator);
+            JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+
+            return (List<String>) javascriptexecutor.executeScript(PageScripts.DISPLAYED_ATTRIBUTES, weList, attribute);
+        });
     }
 
     // ------------------------------------------------------------------------------------------------------------- //
@@ -507,14 +667,14 @@ public class BasePage {
      * @author maer08
      */
     public boolean isVisibleElement(By locator, int timeout) {
-        WebDriverWait wait = new WebDriverWait(driver, timeout);
-
-        try {
-            wait.until(ExpectedConditions.visibilityOfElementLocated(locator));
-        } catch (Exception e) {
-            return false;
-        }
-        return true;
+        return step("isVisibleElement", locator, () -> {
+            try {
+                pageWait.untilVisible(locator, timeout);
+            } catch (Exception e) {
+                return false;
+            }
+            return true;
+        });
     }
 
     /** See documentation for: {@link #isVisibleElement(By, int)} */
@@ -534,23 +694,39 @@ public class BasePage {
      * @author joni86
      */
     public boolean isVisibleElementByAttribute(By locator, String attribute, String attributeText) {
-        // Set up the return to false
-        boolean isVisible = false;
+        return step("isVisibleElementByAttribute", locator, () -> {
+            // Set up the return to false
+            boolean isVisible = false;
 
-        // Build a list
-        List<WebElement> weList = findAllDisplayedElements(locator);
+            // Build a list
+            List<WebElement> weList = findAllDisplayedElements(locator);
 
-        // Check all elements in the list
-        for(WebElement we : weList) {
+            // Check all elements in the list
+            for(WebElement we : weList) {
 
-            // If the element has the attribute we wish, and the value we want we can set return to true
-            if(we.getAttribute(attribute).equals(attributeText)) {
-                isVisible = true;
-                break;
+                // If the element has the attribute we wish, and the value we want we can set return to true
+                if(we.getAttribute(attribute).equals(attributeText)) {
+                    isVisible = true;
+                    break;
+                }
             }
-        }
 
-        return isVisible;
+            return isVisible;
+        });
+    }
+
+    /**
+     * Verifies if an element that has a specific attribute with a specific value is visible
+     * Same as {@link #isVisibleElementByAttribute(By, String, String)} but checks all elements with one JavaScript call
+     *
+     * @param locator Starting locator from which we will build a list
+     * @param attribute Attribute that holds value
+     * @param attributeText The value that the attribute needs to have
+     *
+     * @return boolean value of element visibility
+     */
+    public boolean javascriptIsVisibleElementByAttribute(By locator, String attribute, String attributeText) {
+        return javascriptFindVisibleElementByAttribute(locator, attribute, attributeText) != null;
     }
 
     // ------------------------------------------------------------------------------------------------------------- //
@@ -565,29 +741,204 @@ public class BasePage {
      * @author maer08
      */
     public String getLastWindowHandle() {
-        String currentWindowHandle = "";
+        return step("getLastWindowHandle", null, () -> {
+            String currentWindowHandle = "";
 
-        for(String winHandle : driver.getWindowHandles()) {
-            currentWindowHandle = winHandle;
-        }
+            for(String winHandle : driver.getWindowHandles()) {
+                currentWindowHandle = winHandle;
+            }
 
-        return currentWindowHandle;
+            return currentWindowHandle;
+        });
     }
 
     public String getText(By locator) {
-        return findVisibleElement(locator).getText();
+        return step("getText", locator, () -> onElement(locator, true, WebElement::getText));
     }
 
     public String getSelectText(By locator ) {
-        Select select = new Select(findVisibleElement(locator));
-        return select.getFirstSelectedOption().getText();
+        return step("getSelectText", locator, () -> {
+            Select select = onElement(locator, true, Select::new);
+            return select.getFirstSelectedOption().getText();
+        });
     }
 
     public String getAttributeValue(By locator) {
-        return findVisibleElement(locator).getAttribute("value");
+        return step("getAttributeValue", locator, () -> onElement(locator, true, we -> we.getAttribute("value")));
     }
 
     public String getAttributeValue(By locator, int timeoutInSeconds) {
-        return findVisibleElement(locator, timeoutInSeconds).getAttribute("value");
+        return step("getAttributeValue", locator, () -> findVisibleElement(locator, timeoutInSeconds).getAttribute("value"));
+    }
+
+    // ------------------------------------------------------------------------------------------------------------- //
+    // GEOMETRY
+    // ------------------------------------------------------------------------------------------------------------- //
+
+    /**
+     * Returns the page area of every present element, read with one JavaScript call
+     *
+     * @param locator Locator
+     *
+     * @return List of rectangles in page coordinates, in page order
+     */
+    public List<java.awt.Rectangle> javascriptGetElementRectangles(By locator) {
+        return step("javascriptGetElementRectangles", locator, () -> getRectangles(findAllPresentElements(locator)));
+    }
+
+    /**
+     * Returns the page area of a visible element
+     *
+     * @param locator Locator
+     *
+     * @return Rectangle in page coordinates
+     */
+    public java.awt.Rectangle getElementRectangle(By locator) {
+        return step("getElementRectangle", locator, () -> onElement(locator, true, we -> {
+            Point point = we.getLocation();
+            org.openqa.selenium.Dimension size = we.getSize();
+
+            return new java.awt.Rectangle(point.getX(), point.getY(), size.getWidth(), size.getHeight());
+        }));
+    }
+
+    /**
+     * Registers elements to ignore when an area is compared against a baseline, e.g. a clock inside a header
+     *
+     * @param area Locator of the compared element, null for the whole page
+     * @param ignored Locators of the dynamic elements to leave out
+     */
+    public void addDiffMask(By area, By... ignored) {
+        diffMasks.computeIfAbsent(area == null ? FULL_PAGE : area, k -> Collections.synchronizedList(new ArrayList<>()))
+                .addAll(Arrays.asList(ignored));
+    }
+
+    /**
+     * Builds the mask for an area from the elements registered with {@link #addDiffMask(By, By...)}
+     * The ignored elements are measured now, relative to the top left corner of the area, so the mask fits a
+     * screenshot of the area taken at the same time
+     * Elements are measured in CSS pixels and screenshots are in device pixels, so the mask is scaled by
+     * window.devicePixelRatio for HiDPI displays and emulated devices
+     *
+     * @param area Locator of the compared element, null for the whole page
+     *
+     * @return Mask excluding the ignored elements, empty if none are registered
+     */
+    public DiffMask getDiffMask(By area) {
+        return step("getDiffMask", area, () -> {
+            DiffMask mask = new DiffMask();
+            List<By> ignored = diffMasks.get(area == null ? FULL_PAGE : area);
+
+            if (ignored == null || ignored.isEmpty()) {
+                return mask;
+            }
+
+            List<WebElement> weList = new ArrayList<>();
+            synchronized (ignored) {
+                for (By locator : ignored) {
+                    weList.addAll(driver.findElements(locator));
+                }
+            }
+
+            for (java.awt.Rectangle rectangle : getRectangles(weList)) {
+                mask.exclude(rectangle);
+            }
+
+            if (area != null) {
+                java.awt.Rectangle origin = getElementRectangle(area);
+                mask = mask.translate(-origin.x, -origin.y);
+            }
+
+            Object ratio = ((JavascriptExecutor) driver).executeScript(PageScripts.DEVICE_PIXEL_RATIO);
+            double scale = ratio instanceof Number ? ((Number) ratio).doubleValue() : 1;
+            return scale == 1 ? mask : mask.scale(scale);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<java.awt.Rectangle> getRectangles(List<WebElement> weList) {
+        List<java.awt.Rectangle> rectangles = new ArrayList<>();
+
+        if (weList.isEmpty()) {
+            return rectangles;
+        }
+
+        JavascriptExecutor javascriptexecutor = (JavascriptExecutor)driver;
+        List<List<Number>> values =
+                (List<List<Number>>) javascriptexecutor.executeScript(PageScripts.RECTANGLES, weList);
+
+        for (List<Number> value : values) {
+            rectangles.add(new java.awt.Rectangle(value.get(0).intValue(), value.get(1).intValue(),
+                    value.get(2).intValue(), value.get(3).intValue()));
+        }
+
+        return rectangles;
+    }
+
+    // ------------------------------------------------------------------------------------------------------------- //
+    // STEP TIMING
+    // ------------------------------------------------------------------------------------------------------------- //
+
+    /**
+     * Runs a page action and records how long it took in {@link StepRecorder}, tagged by locator and current test
+     * Page modules can use it to time their own steps the same way, a step run inside another step is not recorded
+     * on its own, its time is part of the outer step
+     *
+     * @param name Name of the step
+     * @param locator Locator the step works on, or null
+     * @param action Action to run
+     *
+     * @return Value returned by the action
+     */
+    protected <T> T step(String name, Object locator, Supplier<T> action) {
+        boolean outermost = StepRecorder.enter();
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            endStep(outermost, name, locator, System.nanoTime() - start);
+        }
+    }
+
+    /** See documentation for: {@link #step(String, Object, Supplier)} */
+    protected void step(String name, Object locator, Runnable action) {
+        boolean outermost = StepRecorder.enter();
+        long start = System.nanoTime();
+        try {
+            action.run();
+        } finally {
+            endStep(outermost, name, locator, System.nanoTime() - start);
+        }
+    }
+
+    // Runs the first command of an action on the element of a locator, with the cache on on the element found earlier
+    // without asking the browser again. A stale element fails the command before the browser acts on it, so only this
+    // command is run again on a fresh lookup, what the action does afterwards is never repeated
+    private <T> T onElement(By locator, boolean visible, Function<WebElement, T> command) {
+        if (!useElementCache) {
+            return command.apply(visible ? findVisibleElement(locator) : findPresentElement(locator));
+        }
+
+        WebElement we = elementCache.get(locator, visible);
+        if (we != null) {
+            try {
+                return command.apply(we);
+            } catch (StaleElementReferenceException e) {
+                // Replaced since it was cached, look it up again below
+            }
+        }
+
+        we = visible ? findVisibleElement(locator) : findPresentElement(locator);
+        elementCache.put(locator, we, visible);
+        return command.apply(we);
+    }
+
+    // Only the outermost step goes into the histograms and the recent steps, the steps it calls are part of its time
+    private static void endStep(boolean outermost, String name, Object locator, long nanos) {
+        StepRecorder.exit();
+        if (outermost) {
+            StepRecorder.record(name, locator, nanos);
+        }
+        ImpactIndex.recordLocator(locator);
     }
 }
@@ -0,0 +1,180 @@
+package modules;
+
+import common.snapshot.SnapshotDriver;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Counts the WebDriver round trips of the per-element queries of {@link BasePage} against their batched JavaScript
+ * variants, on a local stand-in page replayed by {@link SnapshotDriver} so no browser is needed
+ * Usage: java modules.BatchedQueryBenchmark [rows] [iterations]
+ * Every driver and element call counts as one round trip, as it would be one HTTP call to chromedriver. The times are
+ * those of the snapshot driver, which has no network, the round trips are what a browser session saves
+ */
+public class BatchedQueryBenchmark {
+    private static final By ROWS = By.cssSelector("tr.row");
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        File dir = Files.createTempDirectory("standin").toFile();
+        Files.write(new File(dir, "rows.html").toPath(), page(rows).getBytes(StandardCharsets.UTF_8));
+        System.setProperty("snapshots.dir", dir.getAbsolutePath());
+
+        AtomicLong calls = new AtomicLong();
+        SnapshotDriver snapshotDriver = new SnapshotDriver();
+        snapshotDriver.get("http://standin/rows.html");
+        BasePage page = new BasePage(counting(snapshotDriver, calls));
+
+        // The last visible row, so the per-element search has to walk the whole list
+        String last = "row-" + (rows - 1 - (rows - 1) % 2);
+
+        System.out.println("Stand-in page with " + rows + " rows, every other one hidden");
+        run("findAllDisplayedElements", () -> page.findAllDisplayedElements(ROWS).size(),
+                "javascriptFindAllDisplayedElements", () -> page.javascriptFindAllDisplayedElements(ROWS).size(),
+                calls, iterations);
+        run("findVisibleElementByAttribute", () -> page.findVisibleElementByAttribute(ROWS, "data-id", last) != null,
+                "javascriptFindVisibleElementByAttribute",
+                () -> page.javascriptFindVisibleElementByAttribute(ROWS, "data-id", last) != null, calls, iterations);
+        run("isVisibleElementByAttribute", () -> page.isVisibleElementByAttribute(ROWS, "data-id", last),
+                "javascriptIsVisibleElementByAttribute",
+                () -> page.javascriptIsVisibleElementByAttribute(ROWS, "data-id", last), calls, iterations);
+
+        snapshotDriver.quit();
+    }
+
+    /** PRIVATE **/
+
+    private static void run(String perElementName, Supplier<Object> perElement, String batchedName,
+                            Supplier<Object> batched, AtomicLong calls, int iterations) {
+        Object expected = perElement.get();
+        Object actual = batched.get();
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(batchedName + " returned " + actual + ", " + perElementName + " " + expected);
+        }
+
+        long[] perElementResult = measure(perElement, calls, iterations);
+        long[] batchedResult = measure(batched, calls, iterations);
+
+        System.out.println(String.format("%-40s %6d round trips %8.2f ms", perElementName, perElementResult[0],
+                perElementResult[1] / 1e6));
+        System.out.println(String.format("%-40s %6d round trips %8.2f ms   %d round trips saved", batchedName,
+                batchedResult[0], batchedResult[1] / 1e6, perElementResult[0] - batchedResult[0]));
+    }
+
+    // Round trips of one call and mean nanoseconds per call
+    private static long[] measure(Supplier<Object> query, AtomicLong calls, int iterations) {
+        calls.set(0);
+        query.get();
+        long roundTrips = calls.get();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.get();
+        }
+        return new long[] {roundTrips, (System.nanoTime() - start) / iterations};
+    }
+
+    private static String page(int rows) {
+        StringBuilder html = new StringBuilder("<html><body><table>");
+        for (int i = 0; i < rows; i++) {
+            html.append("<tr class='row' data-id='row-").append(i).append("'")
+                    .append(i % 2 == 1 ? " style='display: none'" : "")
+                    .append("><td>Row ").append(i).append("</td></tr>");
+        }
+        return html.append("</table></body></html>").toString();
+    }
+
+    // Driver that counts every call on itself and on the elements it returns
+    private static WebDriver counting(WebDriver driver, AtomicLong calls) {
+        return (WebDriver) Proxy.newProxyInstance(BatchedQueryBenchmark.class.getClassLoader(),
+                new Class<?>[] {WebDriver.class, JavascriptExecutor.class, TakesScreenshot.class},
+                new Counting(driver, calls));
+    }
+
+    private static class Counting implements InvocationHandler {
+        private final Object target;
+        private final AtomicLong calls;
+
+        Counting(Object target, AtomicLong calls) {
+            this.target = target;
+            this.calls = calls;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(target, args);
+            }
+            if (!Arrays.asList("manage", "navigate", "switchTo").contains(method.getName())) {
+                calls.incrementAndGet();
+            }
+
+            try {
+                return wrap(method.invoke(target, unwrap(args)));
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object wrap(Object value) {
+            if (value instanceof WebElement) {
+                return Proxy.newProxyInstance(BatchedQueryBenchmark.class.getClassLoader(),
+                        new Class<?>[] {WebElement.class}, new Counting(value, calls));
+            }
+            if (value instanceof List) {
+                List<Object> list = new ArrayList<>();
+                for (Object item : (List<?>) value) {
+                    list.add(wrap(item));
+                }
+                return list;
+            }
+            return value;
+        }
+
+        // The snapshot driver only knows its own elements
+        private static Object unwrap(Object value) {
+            if (value != null && Proxy.isProxyClass(value.getClass())
+                    && Proxy.getInvocationHandler(value) instanceof Counting) {
+                return ((Counting) Proxy.getInvocationHandler(value)).target;
+            }
+            if (value instanceof Object[]) {
+                Object[] values = ((Object[]) value).clone();
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = unwrap(values[i]);
+                }
+                return values;
+            }
+            if (value instanceof List) {
+                List<Object> list = new ArrayList<>();
+                for (Object item : (List<?>) value) {
+                    list.add(unwrap(item));
+                }
+                return list;
+            }
+            return value;
+        }
+
+        private static Object[] unwrap(Object[] args) {
+            return args == null ? null : (Object[]) unwrap((Object) args);
+        }
+    }
+}
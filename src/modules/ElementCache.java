@@ -0,0 +1,74 @@
+package modules;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Remembers the element each locator resolved to on the current page
+ * Only the actions of BasePage use it, the public find methods always look elements up
+ * Cached elements are handed out without asking the browser, a check would cost the same round trip as the lookup it
+ * saves. A stale element fails the first command an action runs on it before the browser acts, BasePage then looks
+ * the element up again and repeats only that command
+ * A page object is used by one test thread at a time, so the cache does not need to be thread safe
+ */
+public class ElementCache {
+    private final Map<By, WebElement> elements = new HashMap<>();
+    // Locators whose cached element was found by a visibility wait, a present-only lookup says nothing about visibility
+    private final Set<By> visible = new HashSet<>();
+    private long hits;
+    private long misses;
+
+    /**
+     * Returns the cached element for a locator
+     *
+     * @param locator Locator
+     * @param visible true if the element also has to be visible, only elements cached by a visibility wait are returned
+     *
+     * @return Cached Web Element, or null if the locator has to be resolved
+     */
+    public WebElement get(By locator, boolean visible) {
+        WebElement we = elements.get(locator);
+
+        if (we != null && (!visible || this.visible.contains(locator))) {
+            hits++;
+            return we;
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches the element a locator resolved to
+     *
+     * @param locator Locator
+     * @param we Web Element
+     * @param visible true if the element was found by a visibility wait
+     */
+    public void put(By locator, WebElement we, boolean visible) {
+        elements.put(locator, we);
+        if (visible) {
+            this.visible.add(locator);
+        } else {
+            this.visible.remove(locator);
+        }
+    }
+
+    public void clear() {
+        elements.clear();
+        visible.clear();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+}
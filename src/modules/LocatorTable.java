@@ -0,0 +1,80 @@
+package modules;
+
+import org.openqa.selenium.By;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Static By fields of a page class by field name
+ * Read once per class and shared by every instance of the page, page objects hold no locator state of their own
+ */
+public final class LocatorTable {
+    private static final ClassValue<LocatorTable> tables = new ClassValue<LocatorTable>() {
+        @Override
+        protected LocatorTable computeValue(Class<?> type) {
+            return new LocatorTable(type);
+        }
+    };
+
+    private final Map<String, By> locators;
+
+    private LocatorTable(Class<?> type) {
+        Map<String, By> found = new LinkedHashMap<>();
+
+        // Superclasses first so a page can override a locator of the page it extends
+        if (type.getSuperclass() != null && BasePage.class.isAssignableFrom(type.getSuperclass())) {
+            found.putAll(of(type.getSuperclass()).locators);
+        }
+
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) && Modifier.isFinal(modifiers) && By.class.isAssignableFrom(field.getType())) {
+                try {
+                    field.setAccessible(true);
+                    found.put(field.getName(), (By) field.get(null));
+                } catch (IllegalAccessException | RuntimeException e) {
+                    System.out.println("Skipping locator '" + type.getSimpleName() + "." + field.getName() + "'. " + e);
+                }
+            }
+        }
+
+        locators = Collections.unmodifiableMap(found);
+    }
+
+    /**
+     * Returns the locator table of a page class, built on first use
+     *
+     * @param type Page class
+     *
+     * @return Shared table
+     */
+    public static LocatorTable of(Class<?> type) {
+        return tables.get(type);
+    }
+
+    /**
+     * Returns a locator by field name
+     *
+     * @param name Name of the static field
+     *
+     * @return Locator
+     *
+     * @throws IllegalArgumentException if the page has no such locator
+     */
+    public By get(String name) {
+        By locator = locators.get(name);
+        if (locator == null) {
+            throw new IllegalArgumentException("No locator named '" + name + "'");
+        }
+        return locator;
+    }
+
+    /** All locators in declaration order, superclass locators first */
+    public Map<String, By> getLocators() {
+        return locators;
+    }
+}
@@ -0,0 +1,133 @@
+package modules;
+
+import common.locators.LocatorCatalog;
+import common.snapshot.Snapshots;
+import org.openqa.selenium.By;
+import org.w3c.dom.Document;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks every known locator against the saved snapshot of its page, without a browser
+ * Locators come from the static By fields of the page classes, checked against snapshots/PageClass.html, and from the
+ * {@link LocatorCatalog}, where Page.name is checked against snapshots/Page.html
+ * A locator that matches nothing in its snapshot is reported, pages without a snapshot are skipped
+ * Run from the command line with java modules.LocatorValidator, or before the tests with -Dlocators.validate=true
+ */
+public class LocatorValidator {
+    private final Snapshots snapshots = new Snapshots();
+    private final Map<String, Document> documents = new HashMap<>();
+    private int checked;
+    private int skipped;
+
+    public static void main(String[] args) {
+        LocatorValidator validator = new LocatorValidator();
+        List<String> problems = validator.validate();
+
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        System.out.println("Locators checked: " + validator.getChecked() + ", skipped: " + validator.getSkipped()
+                + ", broken: " + problems.size());
+
+        System.exit(problems.isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * Checks every locator of every page class and of the catalog
+     *
+     * @return One line per broken locator, empty if all are fine
+     */
+    public List<String> validate() {
+        Map<String, Map<String, By>> pages = new LinkedHashMap<>();
+
+        for (Class<? extends BasePage> type : PageRegistry.getPageClasses().values()) {
+            pages.computeIfAbsent(type.getSimpleName(), k -> new LinkedHashMap<>())
+                    .putAll(LocatorTable.of(type).getLocators());
+        }
+
+        try {
+            for (Map.Entry<String, By> entry : LocatorCatalog.getDefault().getLocators().entrySet()) {
+                String key = entry.getKey();
+                int dot = key.indexOf('.');
+                String page = dot < 0 ? "" : key.substring(0, dot);
+                pages.computeIfAbsent(page, k -> new LinkedHashMap<>()).put(key.substring(dot + 1), entry.getValue());
+            }
+        } catch (IllegalArgumentException e) {
+            List<String> problems = new ArrayList<>();
+            problems.add(e.getMessage());
+            return problems;
+        }
+
+        List<String> problems = new ArrayList<>();
+
+        for (Map.Entry<String, Map<String, By>> page : pages.entrySet()) {
+            for (Map.Entry<String, By> locator : page.getValue().entrySet()) {
+                String problem = check(page.getKey(), locator.getKey(), locator.getValue());
+                if (problem != null) {
+                    problems.add(problem);
+                }
+            }
+        }
+
+        return problems;
+    }
+
+    /**
+     * Checks one locator against the snapshot of a page
+     *
+     * @param page Name of the page, the snapshot file name
+     * @param name Name of the locator, used in the report
+     * @param locator Locator
+     *
+     * @return Description of the problem, or null if the locator matches or cannot be checked
+     */
+    public String check(String page, String name, By locator) {
+        Document document = load(page);
+
+        if (document == null) {
+            skipped++;
+            return null;
+        }
+
+        try {
+            int matches = Snapshots.find(document, locator).size();
+            checked++;
+
+            return matches == 0 ? page + "." + name + " (" + locator + ") matches nothing in " + snapshots.getPath(page)
+                    : null;
+        } catch (UnsupportedOperationException e) {
+            skipped++;
+            return null;
+        } catch (IllegalArgumentException e) {
+            checked++;
+            return page + "." + name + " (" + locator + ") is invalid: " + e.getMessage();
+        }
+    }
+
+    public int getChecked() {
+        return checked;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /** PRIVATE **/
+
+    private Document load(String page) {
+        return documents.computeIfAbsent(page, p -> {
+            try {
+                return snapshots.load(p);
+            } catch (IOException e) {
+                System.out.println("Failed to read snapshot of " + p + ". " + e);
+                return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,198 @@
+package modules;
+
+import org.openqa.selenium.WebDriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Page objects of one driver session, each created the first time a test asks for it
+ * Pages a test never touches cost nothing, and the locators of a page class are shared by all its instances through
+ * {@link LocatorTable}
+ * Page classes are found by scanning the modules package, every non abstract BasePage subclass with a
+ * (WebDriver) constructor can be asked for by class or by simple name
+ */
+public class PageRegistry {
+    private static final String PACKAGE = "modules";
+
+    private static final ClassValue<Constructor<?>> constructors = new ClassValue<Constructor<?>>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            try {
+                Constructor<?> constructor = type.getConstructor(WebDriver.class);
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(type.getName() + " has no public (WebDriver) constructor");
+            }
+        }
+    };
+
+    private static volatile Map<String, Class<? extends BasePage>> pageClasses;
+
+    private final WebDriver driver;
+    // Pages are used from the test thread only
+    private final Map<Class<?>, BasePage> pages = new HashMap<>();
+
+    public PageRegistry(WebDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Returns the page object of a class, creating it on first use
+     *
+     * @param type Page class
+     *
+     * @return Page object bound to this registry's driver
+     */
+    public <T extends BasePage> T get(Class<T> type) {
+        BasePage page = pages.get(type);
+
+        if (page == null) {
+            page = create(type);
+            pages.put(type, page);
+        }
+
+        return type.cast(page);
+    }
+
+    /**
+     * Returns the page object of a class found in the modules package, creating it on first use
+     *
+     * @param simpleName Simple name of the page class
+     *
+     * @return Page object bound to this registry's driver
+     *
+     * @throws IllegalArgumentException if there is no such page class
+     */
+    public BasePage get(String simpleName) {
+        Class<? extends BasePage> type = getPageClasses().get(simpleName);
+
+        if (type == null) {
+            throw new IllegalArgumentException("No page class named '" + simpleName + "' in package " + PACKAGE);
+        }
+
+        return get(type);
+    }
+
+    /**
+     * Checks whether a page object has been created, without creating it
+     *
+     * @param type Page class
+     *
+     * @return true if the page was asked for before
+     */
+    public boolean isCreated(Class<? extends BasePage> type) {
+        return pages.containsKey(type);
+    }
+
+    /** Number of page objects created so far */
+    public int size() {
+        return pages.size();
+    }
+
+    /**
+     * Returns the page classes of the modules package by simple name, scanned once and only on first use
+     * Classes are loaded without being initialised, so scanning does not run any page code
+     *
+     * @return Page classes
+     */
+    public static Map<String, Class<? extends BasePage>> getPageClasses() {
+        if (pageClasses == null) {
+            synchronized (PageRegistry.class) {
+                if (pageClasses == null) {
+                    pageClasses = Collections.unmodifiableMap(scan());
+                }
+            }
+        }
+        return pageClasses;
+    }
+
+    /** PRIVATE **/
+
+    private BasePage create(Class<?> type) {
+        try {
+            return (BasePage) constructors.get(type).newInstance(driver);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Failed to create page " + type.getSimpleName(), cause);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Failed to create page " + type.getSimpleName(), e);
+        }
+    }
+
+    private static Map<String, Class<? extends BasePage>> scan() {
+        ClassLoader loader = PageRegistry.class.getClassLoader();
+        List<String> names = new ArrayList<>();
+
+        try {
+            Enumeration<URL> roots = loader.getResources(PACKAGE);
+
+            while (roots.hasMoreElements()) {
+                URL root = roots.nextElement();
+
+                if ("file".equals(root.getProtocol())) {
+                    File dir = new File(URLDecoder.decode(root.getPath(), StandardCharsets.UTF_8.name()));
+                    String[] files = dir.list();
+                    if (files != null) {
+                        for (String file : files) {
+                            names.add(file);
+                        }
+                    }
+                } else if ("jar".equals(root.getProtocol())) {
+                    JarFile jar = ((JarURLConnection) root.openConnection()).getJarFile();
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        String name = entries.nextElement().getName();
+                        if (name.startsWith(PACKAGE + "/") && name.indexOf('/', PACKAGE.length() + 1) < 0) {
+                            names.add(name.substring(PACKAGE.length() + 1));
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Failed to scan package " + PACKAGE + " for pages. " + e);
+        }
+
+        Map<String, Class<? extends BasePage>> found = new HashMap<>();
+
+        for (String name : names) {
+            // Top level classes only, nested classes are not pages
+            if (!name.endsWith(".class") || name.indexOf('$') >= 0) {
+                continue;
+            }
+
+            String className = PACKAGE + "." + name.substring(0, name.length() - ".class".length());
+
+            try {
+                Class<?> type = Class.forName(className, false, loader);
+                if (BasePage.class.isAssignableFrom(type) && type != BasePage.class
+                        && !Modifier.isAbstract(type.getModifiers())) {
+                    found.put(type.getSimpleName(), type.asSubclass(BasePage.class));
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.out.println("Skipping class '" + className + "'. " + e);
+            }
+        }
+
+        return found;
+    }
+}
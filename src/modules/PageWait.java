@@ -0,0 +1,281 @@
+package modules;
+
+import common.PageScripts;
+import common.metrics.AdaptiveTimeouts;
+import common.metrics.WaitMetrics;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+public class PageWait {
+    // Script timeout applied per session, it is a setting of the session and not of one page object, so every
+    // PageWait on the same driver sees what the others set and it only ever grows
+    private static final Map<WebDriver, Long> scriptTimeouts = new WeakHashMap<>();
+
+    private final WebDriver driver;
+    private long pollMillis = Long.getLong("wait.pollMillis", 50);
+    private long maxPollMillis = Long.getLong("wait.maxPollMillis", 1000);
+
+    public PageWait(WebDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Sets the polling used when a wait cannot be done in the page, for example while the page is navigating
+     * The interval starts at initialMillis and doubles after every poll up to maxMillis
+     *
+     * @param initialMillis First polling interval
+     * @param maxMillis Longest polling interval
+     */
+    public void setPolling(long initialMillis, long maxMillis) {
+        this.pollMillis = initialMillis;
+        this.maxPollMillis = maxMillis;
+    }
+
+    /**
+     * Waits for the first element matching a locator to be visible
+     *
+     * @param locator Locator
+     * @param timeoutSeconds Timeout in Seconds
+     *
+     * @return Web Element
+     *
+     * @throws TimeoutException if the element is not visible in time
+     */
+    public WebElement untilVisible(By locator, int timeoutSeconds) {
+        return untilElement("visible", locator, true, timeoutSeconds);
+    }
+
+    /**
+     * Waits for the first element matching a locator to be present in the DOM
+     *
+     * @param locator Locator
+     * @param timeoutSeconds Timeout in Seconds
+     *
+     * @return Web Element
+     *
+     * @throws TimeoutException if the element is not present in time
+     */
+    public WebElement untilPresent(By locator, int timeoutSeconds) {
+        return untilElement("present", locator, false, timeoutSeconds);
+    }
+
+    /**
+     * Waits for document.readyState to be complete, returning on the load event instead of polling for it
+     *
+     * @param timeoutSeconds Timeout in Seconds
+     *
+     * @throws TimeoutException if the page does not finish loading in time
+     */
+    public void untilReady(int timeoutSeconds) {
+        long start = System.nanoTime();
+        long requestedMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        long timeoutMillis = adapt("ready", requestedMillis);
+
+        try {
+            ensureScriptTimeout(timeoutMillis);
+            Object ready = ((JavascriptExecutor) driver).executeAsyncScript(PageScripts.WAIT_FOR_READY, timeoutMillis);
+
+            if (Boolean.TRUE.equals(ready)) {
+                record("ready", start, true, false);
+                learn("ready", start, true, timeoutMillis < requestedMillis);
+                return;
+            }
+        } catch (WebDriverException e) {
+            // The page navigated while the script ran, poll for the rest of the time
+        }
+
+        try {
+            poll("ready", d -> "complete".equals(((JavascriptExecutor) d).executeScript(PageScripts.READY_STATE)),
+                    start, start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+            learn("ready", start, true, timeoutMillis < requestedMillis);
+        } catch (TimeoutException e) {
+            learn("ready", start, false, timeoutMillis < requestedMillis);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until the page has not changed its DOM for a while, useful after setting values through JavaScript
+     * Never fails, it returns after timeoutMillis even if the page keeps changing
+     *
+     * @param quietMillis How long the DOM has to stay unchanged
+     * @param timeoutMillis Longest time to wait
+     */
+    public void untilDomQuiet(long quietMillis, long timeoutMillis) {
+        long start = System.nanoTime();
+
+        try {
+            ensureScriptTimeout(timeoutMillis);
+            ((JavascriptExecutor) driver).executeAsyncScript(PageScripts.WAIT_FOR_QUIET, quietMillis, timeoutMillis);
+        } catch (WebDriverException e) {
+            // A navigation is as good as a quiet DOM here
+        }
+
+        record("quiet", start, true, false);
+    }
+
+    /**
+     * Polls a condition with back-off until it returns something other than null or false
+     *
+     * @param waitName Name the timing is recorded under in {@link WaitMetrics}
+     * @param condition Condition to check
+     * @param timeoutSeconds Timeout in Seconds
+     *
+     * @return The value returned by the condition
+     *
+     * @throws TimeoutException if the condition does not hold in time
+     */
+    public <T> T until(String waitName, Function<WebDriver, T> condition, int timeoutSeconds) {
+        long start = System.nanoTime();
+        return poll(waitName, condition, start, start + TimeUnit.SECONDS.toNanos(timeoutSeconds));
+    }
+
+    /** PRIVATE **/
+
+    private WebElement untilElement(String waitName, By locator, boolean visible, int timeoutSeconds) {
+        long start = System.nanoTime();
+        String key = waitName + " " + locator;
+        long requestedMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        long timeoutMillis = adapt(key, requestedMillis);
+        String[] query = toQuery(locator);
+
+        if (query != null && driver instanceof JavascriptExecutor) {
+            Object found = null;
+            boolean answered = false;
+
+            try {
+                ensureScriptTimeout(timeoutMillis);
+                found = ((JavascriptExecutor) driver).executeAsyncScript(PageScripts.WAIT_FOR_ELEMENT,
+                        query[0], query[1], visible, timeoutMillis);
+                answered = true;
+            } catch (WebDriverException e) {
+                // The page navigated while the script ran, poll for the rest of the time
+            }
+
+            if (found instanceof WebElement) {
+                record(waitName, start, true, false);
+                learn(key, start, true, timeoutMillis < requestedMillis);
+                return (WebElement) found;
+            }
+            if (answered) {
+                record(waitName, start, false, false);
+                learn(key, start, false, timeoutMillis < requestedMillis);
+                throw new TimeoutException("Timed out after " + timeoutMillis + " ms waiting for "
+                        + waitName + " element " + locator);
+            }
+        }
+
+        try {
+            WebElement we = poll(waitName, d -> {
+                WebElement e = d.findElement(locator);
+                return !visible || e.isDisplayed() ? e : null;
+            }, start, start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+
+            learn(key, start, true, timeoutMillis < requestedMillis);
+            return we;
+        } catch (TimeoutException e) {
+            learn(key, start, false, timeoutMillis < requestedMillis);
+            throw e;
+        }
+    }
+
+    // With -Dtimeouts.adaptive=true the timeout is learnt from earlier waits for the same locator
+    private static long adapt(String key, long requestedMillis) {
+        return AdaptiveTimeouts.isEnabled()
+                ? AdaptiveTimeouts.getDefault().getTimeoutMillis(key, requestedMillis) : requestedMillis;
+    }
+
+    // Only timeouts that were shortened say something about the locator, a full length timeout is a real failure
+    private static void learn(String key, long start, boolean satisfied, boolean adapted) {
+        if (!AdaptiveTimeouts.isEnabled()) {
+            return;
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (satisfied) {
+            AdaptiveTimeouts.getDefault().record(key, millis);
+        } else if (adapted) {
+            AdaptiveTimeouts.getDefault().recordTimeout(key, millis);
+        }
+    }
+
+    private <T> T poll(String waitName, Function<WebDriver, T> condition, long start, long deadline) {
+        long sleep = pollMillis;
+        RuntimeException last = null;
+
+        while (true) {
+            try {
+                T value = condition.apply(driver);
+                if (value != null && !Boolean.FALSE.equals(value)) {
+                    record(waitName, start, true, true);
+                    return value;
+                }
+            } catch (NotFoundException | StaleElementReferenceException e) {
+                last = e;
+            }
+
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                record(waitName, start, false, true);
+                throw new TimeoutException("Timed out waiting for " + waitName, last);
+            }
+
+            try {
+                Thread.sleep(Math.max(1, Math.min(sleep, TimeUnit.NANOSECONDS.toMillis(left))));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TimeoutException("Interrupted while waiting for " + waitName, e);
+            }
+            sleep = Math.min(sleep * 2, maxPollMillis);
+        }
+    }
+
+    // Async scripts are cut off by the session script timeout, so it has to outlast the wait itself
+    private void ensureScriptTimeout(long timeoutMillis) {
+        long needed = timeoutMillis + 2000;
+
+        Long applied;
+        synchronized (scriptTimeouts) {
+            applied = scriptTimeouts.get(driver);
+        }
+        if (applied != null && applied >= needed) {
+            return;
+        }
+
+        // A session is used by one test thread at a time, so only the map is shared between threads
+        driver.manage().timeouts().setScriptTimeout(needed, TimeUnit.MILLISECONDS);
+        synchronized (scriptTimeouts) {
+            scriptTimeouts.put(driver, needed);
+        }
+    }
+
+    // Translates the locator types the browser can resolve by itself, other locators fall back to polling
+    private static String[] toQuery(By locator) {
+        String text = locator.toString();
+        String value = text.substring(text.indexOf(':') + 1).trim();
+
+        if (locator instanceof By.ById) return new String[] { "id", value };
+        if (locator instanceof By.ByName) return new String[] { "name", value };
+        if (locator instanceof By.ByClassName) return new String[] { "class", value };
+        if (locator instanceof By.ByTagName) return new String[] { "tag", value };
+        if (locator instanceof By.ByCssSelector) return new String[] { "css", value };
+        if (locator instanceof By.ByXPath) return new String[] { "xpath", value };
+
+        return null;
+    }
+
+    private static void record(String waitName, long start, boolean satisfied, boolean polled) {
+        WaitMetrics.record(waitName, System.nanoTime() - start, satisfied, polled);
+    }
+}
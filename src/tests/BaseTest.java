@@ -2,26 +2,51 @@ package tests;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TestName;
+import org.junit.rules.TestWatcher;
+import org.junit.runner.Description;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.openqa.selenium.firefox.FirefoxDriver;
-import org.openqa.selenium.ie.InternetExplorerDriver;
-import org.openqa.selenium.remote.CapabilityType;
-import org.openqa.selenium.remote.DesiredCapabilities;
-import org.openqa.selenium.safari.SafariDriver;
+import common.EnvironmentProfile;
 import common.TestData;
+import common.artifacts.FailureCapture;
+import common.driver.DriverFactory;
+import common.driver.DriverPool;
+import common.driver.DriverProfile;
+import common.driver.SessionSnapshot;
+import common.metrics.StepRecorder;
 import common.enums.Browser;
-import common.enums.TestEnvironment;
+import common.runners.ParallelCategories;
+import common.runners.RunContext;
 import modules.*;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.fail;
 
-class BaseTest {
+public class BaseTest {
+
+    // POOLS
+
+    private static final int MAX_DRIVER_USES = Integer.getInteger("driver.maxUses", 50);
+    private static final DriverProfile profile = DriverProfile.fromSystemProperties();
+    // One pool per browser and environment, so a matrix run never hands a session of one environment to another
+    private static final Map<String, DriverPool> pools = new ConcurrentHashMap<>();
+
+    // Authenticated sessions, taken once per worker thread and restored into every session it leases
+    private static final ThreadLocal<Map<String, SessionSnapshot>> sessions = ThreadLocal.withInitial(HashMap::new);
+
+    // With -Dlocators.validate=true every locator is checked against the page snapshots once, before any browser starts
+    private static final List<String> brokenLocators = Boolean.getBoolean("locators.validate")
+            ? new LocatorValidator().validate() : Collections.emptyList();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> pools.values().forEach(DriverPool::shutdown)));
+    }
 
     // CORE
 
@@ -31,93 +56,121 @@ class BaseTest {
 
     // MODULES
 
-    //protected ModuleName moduleName;
+    // Page objects are created on first use, e.g. page(ModuleName.class).doSomething()
+    protected PageRegistry pages;
 
     // GENERAL
 
     protected StringBuffer verificationErrors = new StringBuffer();
 
-    private String osName = System.getProperty("os.name").toUpperCase();
+    @Rule
+    public TestName testName = new TestName();
+
+    // Runs around @Before and @After, so the session is only handed back once a failure has been captured from it
+    @Rule
+    public TestWatcher sessionWatcher = new TestWatcher() {
+        @Override
+        protected void failed(Throwable e, Description description) {
+            if (FailureCapture.isEnabled()) {
+                new FailureCapture().capture(driver, BaseTest.this.getClass().getSimpleName() + "." + testName.getMethodName()
+                        + "_attempt-" + RunContext.getAttempt(), e);
+            }
+        }
+
+        @Override
+        protected void finished(Description description) {
+            if (driver != null) {
+                pools.get(poolKey).release(driver);
+                driver = null;
+                pages = null;
+            }
+        }
+    };
+
+    private String poolKey;
 
     // METHODS
 
     @Before
     public void setUp() throws Exception {
-        startup(TestEnvironment.STAGING, Browser.CHROME);
+        if (!brokenLocators.isEmpty()) {
+            fail("Broken locators:\n" + String.join("\n", brokenLocators));
+        }
+        StepRecorder.setTest(getClass().getSimpleName() + "." + testName.getMethodName());
+        startup(RunContext.getEnvironment(), RunContext.getBrowser());
     }
 
     @After
     public void tearDown() throws Exception {
-        //driver.quit();
+        StepRecorder.setTest(null);
+
         String verificationErrorString = verificationErrors.toString();
         if (!"".equals(verificationErrorString)) {
             fail(verificationErrorString);
         }
     }
 
-    // PRIVATE
-
-    void startup(TestEnvironment testEnvironment, Browser browser) {
-        DesiredCapabilities capa = new DesiredCapabilities();
-        capa.setCapability(CapabilityType.ACCEPT_SSL_CERTS, true);
-        capa.setCapability("nativeEvents", true);
-
-        if (browser == Browser.FIREFOX) {
-            // todo let us use this when actions is not broken in driver anymore
-            driver = new FirefoxDriver();
-        }
-
-        if (browser == Browser.SAFARI) {
-            // todo actions broken in safari? investigate
-            driver = new SafariDriver();
-        }
-
-        if (browser == Browser.IEXPLORER) {
-            driver = new InternetExplorerDriver();
-        }
-
-        if (browser == Browser.CHROME) {
-            if(isMac()) System.setProperty("webdriver.chrome.driver", "./lib/chromedriver-osx");
-            if(isWindows()) System.setProperty("webdriver.chrome.driver", "./lib/chromedriver-win.exe");
-            if(isNix()) System.setProperty("webdriver.chrome.driver", "./lib/chromedriver-nix");
-
-            ChromeOptions options = new ChromeOptions();
+    /**
+     * Logs in on a fresh session that is on the login page
+     * Override and return true to have the session snapshotted, later tests on the same worker then restore the
+     * cookies and localStorage and start on {@link #landingPage()} instead of the login page
+     *
+     * @return true if the session is authenticated and should be reused
+     */
+    protected boolean login() {
+        return false;
+    }
 
-            Map<String, Object> prefs = new HashMap<>();
+    /** Page tests start on when an authenticated session is restored, relative to the base URL */
+    protected String landingPage() {
+        return "";
+    }
 
-            prefs.put("credentials_enable_service", false);
-            prefs.put("profile.password_manager_enabled", false);
-            options.setExperimentalOption("prefs", prefs);
+    // PRIVATE
 
-            capa.setCapability(ChromeOptions.CAPABILITY, options);
+    void startup(String environment, Browser browser) {
+        poolKey = browser + "@" + environment;
 
-            driver = new ChromeDriver(capa);
-        }
+        // Sessions are kept warm between tests and reset by the pool when they are released, a rerun starts a new one
+        DriverPool pool = pools.computeIfAbsent(poolKey, k ->
+                new DriverPool(() -> DriverFactory.create(browser, profile), ParallelCategories.workers(), MAX_DRIVER_USES));
+        driver = RunContext.getAttempt() > 1 ? pool.leaseFresh() : pool.lease();
 
         // environment setup
-        data = new TestData(testEnvironment);
+        // Seeded by run and test, so every browser and environment the test is fanned out to gets the same data
+        data = new TestData(EnvironmentProfile.get(environment), TestData.seedOf(getClass().getName() + "#"
+                + testName.getMethodName().replaceAll("\\[[^\\]]+\\]$", "")));
 
         // general setup
         verificationErrors.setLength(0);
 
         baseUrl = data.getTestEnvironmentURL();
-        driver.manage().timeouts().pageLoadTimeout(60, TimeUnit.SECONDS);
-        verificationErrors.setLength(0);
-        driver.get(baseUrl + "login.do");
-
-        // objects setup
-        //moduleName = new ModuleName(driver);
-    }
 
-    private boolean isMac() {
-        return osName.contains("MAC");
-    }
+        String sessionKey = browser + " " + baseUrl;
+        SessionSnapshot session = sessions.get().get(sessionKey);
+
+        if (session != null) {
+            session.restore(driver);
+            driver.get(baseUrl + landingPage());
+        } else {
+            driver.get(baseUrl + "login.do");
+            if (login()) {
+                sessions.get().put(sessionKey, SessionSnapshot.take(driver));
+            }
+        }
 
-    private boolean isWindows() {
-        return osName.contains("WIN");
+        // objects setup
+        pages = new PageRegistry(driver);
     }
 
-    private boolean isNix() {
-        return osName.contains("NIX") || osName.contains("NUX") || osName.contains("AIX");
+    /**
+     * Returns the page object of a class for this test's driver, created the first time it is asked for
+     *
+     * @param type Page class
+     *
+     * @return Page object
+     */
+    protected <T extends BasePage> T page(Class<T> type) {
+        return pages.get(type);
     }
 }
@@ -1,12 +1,13 @@
 package tests.priority;
 
 import common.categories.Medium;
+import common.runners.ParallelCategories;
 import org.junit.experimental.categories.Categories;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import tests.*;
 
-@RunWith(Categories.class)
+@RunWith(ParallelCategories.class)
 @Categories.IncludeCategory(Medium.class)
 @Suite.SuiteClasses({
         //TestName.class